@@ -0,0 +1,281 @@
+package com.ilamstone.publicfortests.processor;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.FilerException;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.ilamstone.publicfortests.PublicForTests;
+
+/**
+ * Annotation processor that records every {@literal @}PublicForTests method and field in a registry, so
+ * that `PFTGen` doesn't have to scan classes to find them. It's picked up automatically by `javac` when
+ * publicfortests is on the (test) compile classpath.
+ * 
+ * For each class with annotated members, a resource named `META-INF/publicfortests/<binary name>` is
+ * written, with one line per member: `<name> <descriptor> <interface binary name>`. The binary names
+ * of all such classes are listed in `META-INF/publicfortests/index`.
+ * 
+ * Testing interfaces that can be seen at compile time are checked, and a warning given for any 
+ * annotated instance method that the interface doesn't declare, or annotated field it declares no getter for.
+ */
+public class PublicForTestsProcessor extends AbstractProcessor {
+  /* Must match PFTRegistry */
+  static final String PREFIX = "META-INF/publicfortests/";
+  static final String INDEX = PREFIX + "index";
+  
+  /* Registry lines, by owner binary name, for all rounds so far */
+  final Map<String, List<String>> entries = new LinkedHashMap<String, List<String>>();
+  final Map<String, TypeElement> owners = new LinkedHashMap<String, TypeElement>();
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(PublicForTests.class.getName());
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getElementsAnnotatedWith(PublicForTests.class)) {
+      if (element.getKind() == ElementKind.METHOD || element.getKind() == ElementKind.CONSTRUCTOR) {
+        record((ExecutableElement)element);
+      } else if (element.getKind() == ElementKind.FIELD) {
+        record((VariableElement)element);
+      } else {
+        processingEnv.getMessager().printMessage(Kind.WARNING, "@PublicForTests only applies to methods and fields, and will be ignored here", element);
+      }
+    }
+
+    if (roundEnv.processingOver() && !entries.isEmpty()) {
+      write();
+    }
+    
+    return false;
+  }
+
+  void record(ExecutableElement method) {
+    TypeElement owner = (TypeElement)method.getEnclosingElement();
+    String ownerName = processingEnv.getElementUtils().getBinaryName(owner).toString();
+    String iface = method.getAnnotation(PublicForTests.class).value();
+    
+    check(method, iface);
+    
+    owners.put(ownerName, owner);
+    entries.computeIfAbsent(ownerName, k -> new ArrayList<String>())
+           .add(method.getSimpleName() + " " + descriptor(method) + " " + iface);
+  }
+  
+  /*
+   * Fields get accessors in the testing class: `getName()`, and `setName(value)` unless final.
+   */
+  void record(VariableElement field) {
+    TypeElement owner = (TypeElement)field.getEnclosingElement();
+    String ownerName = processingEnv.getElementUtils().getBinaryName(owner).toString();
+    String iface = field.getAnnotation(PublicForTests.class).value();
+    
+    check(field, iface);
+    
+    StringBuilder descriptor = new StringBuilder();
+    appendDescriptor(descriptor, field.asType());
+    owners.put(ownerName, owner);
+    entries.computeIfAbsent(ownerName, k -> new ArrayList<String>())
+           .add(field.getSimpleName() + " " + descriptor + " " + iface);
+  }
+  
+  /*
+   * Warn if the testing interface is visible, but doesn't declare the method. Static methods are only
+   * made public, since no interface can declare them, so there's nothing to check for those.
+   */
+  void check(ExecutableElement method, String iface) {
+    TypeElement ifaceElement = interfaceElement(method, iface);
+    if (ifaceElement == null || method.getModifiers().contains(Modifier.STATIC)) {
+      return;
+    }
+    
+    for (ExecutableElement candidate : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(ifaceElement))) {
+      if (candidate.getSimpleName().equals(method.getSimpleName()) && sameParameters(candidate, method)) {
+        return;
+      }
+    }
+    
+    processingEnv.getMessager().printMessage(Kind.WARNING, iface + " doesn't declare " + method.getSimpleName() + ", so it can't be called through it", method);
+  }
+  
+  /*
+   * Warn if the testing interface is visible, but doesn't declare a getter for the field.
+   */
+  void check(VariableElement field, String iface) {
+    TypeElement ifaceElement = interfaceElement(field, iface);
+    if (ifaceElement == null) {
+      return;
+    }
+    
+    String name = field.getSimpleName().toString();
+    String getter = "get" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    for (ExecutableElement candidate : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(ifaceElement))) {
+      if (candidate.getSimpleName().contentEquals(getter) && candidate.getParameters().isEmpty()) {
+        return;
+      }
+    }
+    
+    processingEnv.getMessager().printMessage(Kind.WARNING, iface + " doesn't declare " + getter + "(), so " + name + " can't be read through it", field);
+  }
+  
+  /*
+   * @return The testing interface, or `null` if it can't be seen or (after reporting an error) isn't an interface.
+   */
+  TypeElement interfaceElement(Element annotated, String iface) {
+    TypeElement ifaceElement = processingEnv.getElementUtils().getTypeElement(iface.replace('$', '.'));
+    if (ifaceElement == null) {
+      // May well be in test sources, when this is in main.
+      return null;
+    }
+    
+    if (ifaceElement.getKind() != ElementKind.INTERFACE) {
+      processingEnv.getMessager().printMessage(Kind.ERROR, iface + " is not an interface", annotated);
+      return null;
+    }
+    return ifaceElement;
+  }
+  
+  boolean sameParameters(ExecutableElement a, ExecutableElement b) {
+    List<? extends TypeMirror> pa = ((ExecutableType)a.asType()).getParameterTypes();
+    List<? extends TypeMirror> pb = ((ExecutableType)b.asType()).getParameterTypes();
+    if (pa.size() != pb.size()) {
+      return false;
+    }
+    
+    for (int i = 0; i < pa.size(); i++) {
+      if (!processingEnv.getTypeUtils().isSameType(processingEnv.getTypeUtils().erasure(pa.get(i)), 
+                                                   processingEnv.getTypeUtils().erasure(pb.get(i)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  /*
+   * @return The JVM descriptor of the given method, as it will appear in the class file.
+   */
+  String descriptor(ExecutableElement method) {
+    StringBuilder sb = new StringBuilder("(");
+    for (VariableElement p : method.getParameters()) {
+      appendDescriptor(sb, p.asType());
+    }
+    sb.append(')');
+    appendDescriptor(sb, method.getReturnType());
+    return sb.toString();
+  }
+  
+  void appendDescriptor(StringBuilder sb, TypeMirror type) {
+    TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+    switch (erased.getKind()) {
+      case BOOLEAN: sb.append('Z'); break;
+      case BYTE:    sb.append('B'); break;
+      case CHAR:    sb.append('C'); break;
+      case SHORT:   sb.append('S'); break;
+      case INT:     sb.append('I'); break;
+      case LONG:    sb.append('J'); break;
+      case FLOAT:   sb.append('F'); break;
+      case DOUBLE:  sb.append('D'); break;
+      case VOID:    sb.append('V'); break;
+      case ARRAY:
+        sb.append('[');
+        appendDescriptor(sb, ((ArrayType)erased).getComponentType());
+        break;
+      case DECLARED:
+        TypeElement element = (TypeElement)((DeclaredType)erased).asElement();
+        sb.append('L').append(processingEnv.getElementUtils().getBinaryName(element).toString().replace('.', '/')).append(';');
+        break;
+      default:
+        throw new IllegalArgumentException("Unexpected type in signature: " + type);
+    }
+  }
+  
+  void write() {
+    Filer filer = processingEnv.getFiler();
+    
+    try {
+      for (Map.Entry<String, List<String>> e : entries.entrySet()) {
+        FileObject resource = filer.createResource(StandardLocation.CLASS_OUTPUT, "", PREFIX + e.getKey(), owners.get(e.getKey()));
+        try (Writer w = new OutputStreamWriter(resource.openOutputStream(), StandardCharsets.UTF_8)) {
+          for (String line : e.getValue()) {
+            w.write(line);
+            w.write('\n');
+          }
+        }
+      }
+      
+      // Keep classes from earlier (e.g. incremental) compiles in the index. Any that no longer exist, or
+      // are no longer annotated, are harmless: their resource will be missing or stale, and PFTGen
+      // checks for that.
+      Set<String> index = new TreeSet<String>(readIndex(filer));
+      index.addAll(entries.keySet());
+      
+      FileObject resource = filer.createResource(StandardLocation.CLASS_OUTPUT, "", INDEX, owners.values().toArray(new Element[owners.size()]));
+      try (Writer w = new OutputStreamWriter(resource.openOutputStream(), StandardCharsets.UTF_8)) {
+        for (String name : index) {
+          w.write(name);
+          w.write('\n');
+        }
+      }
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Kind.ERROR, "Unable to write @PublicForTests registry: " + e);
+    }
+  }
+  
+  List<String> readIndex(Filer filer) {
+    List<String> result = new ArrayList<String>();
+    try {
+      FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", INDEX);
+      try (BufferedReader r = new BufferedReader(new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = r.readLine()) != null) {
+          if (!line.isEmpty()) {
+            result.add(line);
+          }
+        }
+      }
+    } catch (FileNotFoundException | NoSuchFileException | FilerException e) {
+      // No earlier index
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Kind.WARNING, "Unable to read existing @PublicForTests registry index: " + e);
+    }
+    return result;
+  }
+}
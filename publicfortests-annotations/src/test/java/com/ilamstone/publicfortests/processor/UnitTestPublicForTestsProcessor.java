@@ -0,0 +1,145 @@
+package com.ilamstone.publicfortests.processor;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ilamstone.publicfortests.PublicForTests;
+
+public class UnitTestPublicForTestsProcessor {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+  
+  File out;
+  StringWriter diagnostics;
+
+  @Before
+  public void setup() throws IOException {
+    out = tmp.newFolder("out");
+    diagnostics = new StringWriter();
+  }
+  
+  boolean compile(String className, String source) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return source;
+      }
+    };
+    
+    String classpath = new File(PublicForTests.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+    List<String> options = Arrays.asList("-d", out.getPath(), "-classpath", classpath, "-processor", PublicForTestsProcessor.class.getName());
+    return compiler.getTask(diagnostics, null, null, options, null, Arrays.asList(file)).call();
+  }
+  
+  String resource(String name) throws IOException {
+    return new String(Files.readAllBytes(new File(out, name).toPath()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testRecordsAnnotatedMethodsWithDescriptors() throws Exception {
+    assertThat(compile("p.Model", 
+        "package p;\n" +
+        "import com.ilamstone.publicfortests.PublicForTests;\n" +
+        "public class Model<T extends Number> {\n" +
+        "  public interface Testing { int[] foo(Number n, java.util.List<?>[] l, long x); }\n" +
+        "  @PublicForTests(\"p.Model$Testing\") private int[] foo(T t, java.util.List<String>[] l, long x) { return null; }\n" +
+        "  private void notAnnotated() { }\n" +
+        "}\n")).as(diagnostics.toString()).isTrue();
+
+    assertThat(resource("META-INF/publicfortests/p.Model"))
+        .isEqualTo("foo (Ljava/lang/Number;[Ljava/util/List;J)[I p.Model$Testing\n");
+    assertThat(resource("META-INF/publicfortests/index")).isEqualTo("p.Model\n");
+    assertThat(diagnostics.toString()).isEmpty();
+  }
+
+  @Test
+  public void testRecordsAnnotatedFields() throws Exception {
+    assertThat(compile("p.Model", 
+        "package p;\n" +
+        "import com.ilamstone.publicfortests.PublicForTests;\n" +
+        "public class Model {\n" +
+        "  public interface Testing { long getCount(); java.util.List<String> getNames(); }\n" +
+        "  @PublicForTests(\"p.Model$Testing\") private long count;\n" +
+        "  @PublicForTests(\"p.Model$Testing\") private static java.util.List<String> names;\n" +
+        "}\n")).as(diagnostics.toString()).isTrue();
+
+    assertThat(resource("META-INF/publicfortests/p.Model"))
+        .isEqualTo("count J p.Model$Testing\nnames Ljava/util/List; p.Model$Testing\n");
+    assertThat(diagnostics.toString()).isEmpty();
+  }
+
+  @Test
+  public void testWarnsWhenInterfaceDoesNotDeclareGetter() throws Exception {
+    assertThat(compile("p.Model", 
+        "package p;\n" +
+        "public class Model {\n" +
+        "  public interface Testing { void setCount(int c); }\n" +
+        "  @com.ilamstone.publicfortests.PublicForTests(\"p.Model$Testing\") private int count;\n" +
+        "}\n")).isTrue();
+
+    assertThat(diagnostics.toString()).contains("p.Model$Testing doesn't declare getCount()");
+  }
+
+  @Test
+  public void testIndexKeepsEarlierClasses() throws Exception {
+    assertThat(compile("p.First", "package p; public class First { @com.ilamstone.publicfortests.PublicForTests(\"p.Missing\") private void a() { } }")).isTrue();
+    assertThat(compile("p.Second", "package p; public class Second { @com.ilamstone.publicfortests.PublicForTests(\"p.Missing\") private void b() { } }")).isTrue();
+
+    assertThat(resource("META-INF/publicfortests/index")).isEqualTo("p.First\np.Second\n");
+  }
+
+  @Test
+  public void testWarnsWhenInterfaceDoesNotDeclareMethod() throws Exception {
+    assertThat(compile("p.Model", 
+        "package p;\n" +
+        "public class Model {\n" +
+        "  public interface Testing { void other(); }\n" +
+        "  @com.ilamstone.publicfortests.PublicForTests(\"p.Model$Testing\") private void foo() { }\n" +
+        "}\n")).isTrue();
+
+    assertThat(diagnostics.toString()).contains("p.Model$Testing doesn't declare foo");
+  }
+
+  @Test
+  public void testDoesNotWarnForStaticMethods() throws Exception {
+    assertThat(compile("p.Model", 
+        "package p;\n" +
+        "public class Model {\n" +
+        "  public interface Testing { void other(); }\n" +
+        "  @com.ilamstone.publicfortests.PublicForTests(\"p.Model$Testing\") private static void foo() { }\n" +
+        "}\n")).isTrue();
+
+    assertThat(resource("META-INF/publicfortests/p.Model")).isEqualTo("foo ()V p.Model$Testing\n");
+    assertThat(diagnostics.toString()).isEmpty();
+  }
+
+  @Test
+  public void testFailsWhenInterfaceIsAClass() throws Exception {
+    assertThat(compile("p.Model", 
+        "package p;\n" +
+        "public class Model {\n" +
+        "  @com.ilamstone.publicfortests.PublicForTests(\"java.lang.String\") private void foo() { }\n" +
+        "}\n")).isFalse();
+
+    assertThat(diagnostics.toString()).contains("java.lang.String is not an interface");
+  }
+}
@@ -0,0 +1,90 @@
+package com.ilamstone.publicfortests;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+
+/*
+ * Define latency and metaspace growth for each {@link DefineStrategy}. Each measurement defines a batch
+ * of classes, all generated (with their own names) beforehand. The `metaspaceBytes` and `classes` 
+ * counters give metaspace growth per class.
+ *
+ * Strategies that aren't available in the running JVM fail; pick the ones to run with `-p strategy=...`.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, batchSize = DefineBenchmark.CLASSES)
+@Measurement(iterations = 5, batchSize = DefineBenchmark.CLASSES)
+@Fork(1)
+public class DefineBenchmark {
+  static final int CLASSES = 1000;
+
+  @Param({ "CLASS_LOADER", "LOOKUP", "HIDDEN" })
+  public DefineStrategy strategy;
+
+  List<String> names = new ArrayList<String>(CLASSES);
+  List<byte[]> code = new ArrayList<byte[]>(CLASSES);
+  int next;
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Metaspace {
+    public long metaspaceBytes;
+    public long classes;
+  }
+
+  @Setup(Level.Iteration)
+  public void generate() throws Exception {
+    if (!strategy.isAvailable()) {
+      throw new IllegalStateException(strategy + " is not available in this JVM");
+    }
+
+    names.clear();
+    code.clear();
+    next = 0;
+    for (int i = 0; i < CLASSES; i++) {
+      ClassNode node = PFTGen.generateNewClassNode(Class1.class, null, null, null);
+      names.add(node.name);
+      code.add(PFTGen.generateBytecode(node));
+    }
+  }
+
+  @Benchmark
+  public void define(Metaspace metaspace, Blackhole bh) {
+    long before = metaspaceUsed();
+    bh.consume(strategy.define(Class1.class.getClassLoader(), Class1.class, names.get(next), code.get(next)));
+    next++;
+    metaspace.metaspaceBytes += metaspaceUsed() - before;
+    metaspace.classes++;
+  }
+
+  static long metaspaceUsed() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if ("Metaspace".equals(pool.getName())) {
+        return pool.getUsage().getUsed();
+      }
+    }
+    return 0;
+  }
+}
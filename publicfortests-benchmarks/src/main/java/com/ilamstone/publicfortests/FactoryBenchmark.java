@@ -0,0 +1,81 @@
+package com.ilamstone.publicfortests;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.ConstructedClass1;
+
+/*
+ * Cost of creating a testing instance through a {@link PFTGen#factory(Class, Class)} factory, against
+ * `Class.newInstance`, `Constructor.newInstance` and `new` on the original class.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FactoryBenchmark {
+  public interface Factory {
+    Class1Testing create();
+    Class1Testing create(String name, int count);
+  }
+
+  Class<Class1Testing> clz;
+  Constructor<Class1Testing> noArgs;
+  Constructor<Class1Testing> withArgs;
+  Factory factory;
+  String name = "name";
+  int count = 1;
+
+  @Setup
+  public void setup() throws Exception {
+    clz = PFTGen.getTestingClass(ConstructedClass1.class);
+    noArgs = clz.getConstructor();
+    withArgs = clz.getConstructor(String.class, int.class);
+    factory = PFTGen.factory(ConstructedClass1.class, Factory.class);
+  }
+
+  @Benchmark
+  public Object originalNew() {
+    return new ConstructedClass1(name, count);
+  }
+
+  @Benchmark
+  @SuppressWarnings("deprecation")
+  public Object classNewInstance() throws Exception {
+    return clz.newInstance();
+  }
+
+  @Benchmark
+  public Object constructorNewInstance() throws Exception {
+    return noArgs.newInstance();
+  }
+
+  @Benchmark
+  public Object constructorNewInstanceWithArgs() throws Exception {
+    return withArgs.newInstance(name, count);
+  }
+
+  @Benchmark
+  public Object factory() {
+    return factory.create();
+  }
+
+  @Benchmark
+  public Object factoryWithArgs() {
+    return factory.create(name, count);
+  }
+}
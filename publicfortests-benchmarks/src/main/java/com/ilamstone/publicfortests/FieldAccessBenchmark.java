@@ -0,0 +1,75 @@
+package com.ilamstone.publicfortests;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ilamstone.publicfortests.testmodel.FieldClass1;
+import com.ilamstone.publicfortests.testmodel.FieldClass1Testing;
+
+/*
+ * Cost of reading and writing private fields through generated accessors (on a testing class, and
+ * through a view) against reflection. Run with `-prof gc` to see reflection boxing primitives.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldAccessBenchmark {
+  FieldClass1 original;
+  FieldClass1Testing testingClass;
+  FieldClass1Testing view;
+  Field count;
+  int value = 1;
+
+  @Setup
+  public void setup() throws Exception {
+    original = new FieldClass1();
+    testingClass = PFTGen.<FieldClass1Testing>getTestingClass(FieldClass1.class).newInstance();
+    view = PFTGen.view(new FieldClass1(), FieldClass1Testing.class);
+    count = FieldClass1.class.getDeclaredField("count");
+    count.setAccessible(true);
+  }
+
+  @Benchmark
+  public int testingClassGet() {
+    return testingClass.getCount();
+  }
+
+  @Benchmark
+  public void testingClassSet() {
+    testingClass.setCount(value);
+  }
+
+  @Benchmark
+  public int viewGet() {
+    return view.getCount();
+  }
+
+  @Benchmark
+  public int fieldGetInt() throws Exception {
+    return count.getInt(original);
+  }
+
+  @Benchmark
+  public int fieldGet() throws Exception {
+    return (Integer)count.get(original);
+  }
+
+  @Benchmark
+  public void fieldSet() throws Exception {
+    count.set(original, value);
+  }
+}
@@ -0,0 +1,133 @@
+package com.ilamstone.publicfortests;
+
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ilamstone.publicfortests.PFTGen.PftMethodsAndInterfaces;
+import com.ilamstone.publicfortests.PFTGen.TransformVisitor;
+
+/*
+ * Latency of generating a testing class, end-to-end and stage by stage. Run with `-prof gc` to see
+ * allocation per call (`gc.alloc.rate.norm`).
+ *
+ * The stages are, in order: reading the class file (`classReader`), finding the annotated methods
+ * (`findPftMethodsAndInterfaces`), transforming into a `ClassNode` (`transformVisitor`), writing that with
+ * `COMPUTE_FRAMES` (`generateBytecode`) and defining the result (`defineClass`). `streaming` is the
+ * single pass that normally replaces the middle three.
+ *
+ * `getTestingClass` defines into a fresh loader each time, so every call is one cold generation, however many
+ * have run before. That's `ClassLoader.defineClass`, so on Java 9+ it needs `--add-opens java.base/java.lang=ALL-UNNAMED`.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationBenchmark {
+  @Param({ "LambdaClass1", "SelfCallClass1", "InvokeDynamicNoLambdaClass1", "Large100", "Large1000" })
+  public String subject;
+
+  Class<?> clz;
+  byte[] original;
+  ClassReader reader;
+  String newName;
+  PftMethodsAndInterfaces pftmi;
+  ClassNode node;
+  byte[] generated;
+
+  /*
+   * Exposes `defineClass`, so defining can be timed without reflection. A new one is needed for each class.
+   */
+  static final class DefiningLoader extends ClassLoader {
+    DefiningLoader(ClassLoader parent) {
+      super(parent);
+    }
+
+    Class<?> define(String name, byte[] code) {
+      return defineClass(name, code, 0, code.length);
+    }
+  }
+
+  /*
+   * A new loader for each invocation, so testing classes never pile up in (or take names from) one loader.
+   */
+  @State(Scope.Thread)
+  public static class FreshLoader {
+    ClassLoader loader;
+
+    @Setup(Level.Invocation)
+    public void newLoader(GenerationBenchmark benchmark) {
+      loader = new DefiningLoader(benchmark.clz.getClassLoader());
+    }
+  }
+
+  @Setup
+  public void setup() throws Exception {
+    clz = Subjects.forName(subject);
+    original = PFTGen.readClassBytes(clz);
+    reader = new ClassReader(original);
+    newName = PFTGen.newClassInternalName(clz);
+    pftmi = PFTGen.findPftMethodsAndInterfaces(clz, reader);
+    node = transformVisitor();
+    generated = PFTGen.generateBytecode(node, clz.getClassLoader());
+  }
+
+  @Benchmark
+  public Class<?> getTestingClass(FreshLoader fresh) {
+    PFTGen.invalidate(clz);
+    return PFTGen.getTestingClass(fresh.loader, clz, null, null, PFTOptions.DEFAULT);
+  }
+
+  @Benchmark
+  public ClassReader classReader() {
+    ClassReader result = new ClassReader(original);
+    result.accept(new ClassVisitor(Opcodes.ASM5) { }, 0);
+    return result;
+  }
+
+  @Benchmark
+  public PftMethodsAndInterfaces findPftMethodsAndInterfaces() {
+    PFTGen.invalidate(clz);
+    return PFTGen.findPftMethodsAndInterfaces(clz, reader);
+  }
+
+  @Benchmark
+  public ClassNode transformVisitor() {
+    TransformVisitor visitor = new TransformVisitor(new ClassNode(), clz, Type.getInternalName(clz), newName, pftmi, null, PFTOptions.DEFAULT);
+    reader.accept(visitor, ClassReader.SKIP_DEBUG);
+    return visitor.getNode();
+  }
+
+  @Benchmark
+  public byte[] generateBytecode() {
+    return PFTGen.generateBytecode(node, clz.getClassLoader());
+  }
+
+  @Benchmark
+  public byte[] streaming() {
+    return PFTGen.generateBytecode(clz, reader, newName, null, null, PFTOptions.DEFAULT);
+  }
+
+  @Benchmark
+  public Class<?> defineClass() {
+    return new DefiningLoader(clz.getClassLoader()).define(node.name.replace('/', '.'), generated);
+  }
+}
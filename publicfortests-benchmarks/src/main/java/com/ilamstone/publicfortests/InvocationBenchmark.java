@@ -0,0 +1,78 @@
+package com.ilamstone.publicfortests;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ilamstone.publicfortests.testmodel.CounterClass1;
+import com.ilamstone.publicfortests.testmodel.CounterClass1Testing;
+
+/*
+ * Cost of calling a private method through each of the ways publicfortests offers, against calling a
+ * public method of the original class directly and against `Method.invoke`. `probedTestingClass` is
+ * the testing class generated with probes, so the difference from `testingClass` is what a probe costs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvocationBenchmark {
+  CounterClass1 original;
+  CounterClass1Testing testingClass;
+  CounterClass1Testing probedTestingClass;
+  CounterClass1Testing view;
+  Method increment;
+  int by = 1;
+
+  @Setup
+  public void setup() throws Exception {
+    original = new CounterClass1();
+    testingClass = PFTGen.<CounterClass1Testing>getTestingClass(CounterClass1.class).newInstance();
+    probedTestingClass = PFTGen.<CounterClass1Testing>getTestingClass(CounterClass1.class, PFTOptions.DEFAULT.withProbes(true)).newInstance();
+    view = PFTGen.view(new CounterClass1(), CounterClass1Testing.class);
+    increment = CounterClass1.class.getDeclaredMethod("increment", int.class);
+    increment.setAccessible(true);
+  }
+
+  @Benchmark
+  public int originalPublicMethod() {
+    return original.getCount();
+  }
+
+  @Benchmark
+  public int testingClassPublicMethod() {
+    return testingClass.getCount();
+  }
+
+  @Benchmark
+  public int testingClass() {
+    return testingClass.increment(by);
+  }
+
+  @Benchmark
+  public int probedTestingClass() {
+    return probedTestingClass.increment(by);
+  }
+
+  @Benchmark
+  public int view() {
+    return view.increment(by);
+  }
+
+  @Benchmark
+  public int methodInvoke() throws Exception {
+    return (Integer)increment.invoke(original, by);
+  }
+}
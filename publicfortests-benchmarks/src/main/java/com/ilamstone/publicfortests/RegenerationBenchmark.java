@@ -0,0 +1,97 @@
+package com.ilamstone.publicfortests;
+
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Latency of generating a testing class for a class that has just had one method changed, from scratch
+ * (`generate`) and from the testing class generated for the earlier version (`regenerate`). `fingerprint`
+ * is the part of `regenerate` that compares the versions, for each of them.
+ *
+ * The subjects are synthetic classes (see {@link SyntheticClasses}) with a field of their own type added,
+ * so that their frames have to be computed. The change is to the constant in `m0`.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegenerationBenchmark {
+  @Param({ "Large100", "Large1000" })
+  public String subject;
+
+  Class<?> clz;
+  String newName;
+  ClassReader before;
+  ClassReader after;
+  ClassReader previous;
+
+  @Setup
+  public void setup() throws Exception {
+    clz = Subjects.forName(subject);
+    newName = PFTGen.newClassInternalName(clz);
+    byte[] original = PFTGen.readClassBytes(clz);
+    before = new ClassReader(selfTyped(original, 0));
+    after = new ClassReader(selfTyped(original, 7));
+    previous = new ClassReader(PFTGen.generateBytecode(clz, before, "synthetic/Previous", null, null, PFTOptions.DEFAULT));
+  }
+
+  /*
+   * The class, with a field of its own type, and `m0` multiplying by `m0Constant` rather than 0.
+   */
+  static byte[] selfTyped(byte[] original, int m0Constant) {
+    ClassReader reader = new ClassReader(original);
+    ClassWriter writer = new ClassWriter(reader, 0);
+    reader.accept(new ClassVisitor(Opcodes.ASM5, writer) {
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+        return !"m0".equals(name) ? mv : new MethodVisitor(Opcodes.ASM5, mv) {
+          @Override
+          public void visitLdcInsn(Object cst) {
+            super.visitLdcInsn(m0Constant);
+          }
+        };
+      }
+
+      @Override
+      public void visitEnd() {
+        super.visitField(Opcodes.ACC_PRIVATE, "other", "L" + reader.getClassName() + ";", null, null).visitEnd();
+        super.visitEnd();
+      }
+    }, 0);
+    return writer.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] generate() {
+    return PFTGen.generateBytecode(clz, after, newName, null, null, PFTOptions.DEFAULT);
+  }
+
+  @Benchmark
+  public Fingerprint fingerprint() {
+    return Fingerprint.of(after);
+  }
+
+  @Benchmark
+  public byte[] regenerate() {
+    return PFTGen.regenerateBytecode(clz, after, newName, null, null, PFTOptions.DEFAULT, before, previous);
+  }
+}
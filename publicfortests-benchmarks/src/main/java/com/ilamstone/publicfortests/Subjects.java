@@ -0,0 +1,29 @@
+package com.ilamstone.publicfortests;
+
+import com.ilamstone.publicfortests.testmodel.InvokeDynamicNoLambdaClass1;
+import com.ilamstone.publicfortests.testmodel.LambdaClass1;
+import com.ilamstone.publicfortests.testmodel.SelfCallClass1;
+
+/*
+ * The classes benchmarks can be run against, by `@Param` name: the test model classes by simple name,
+ * and synthetic classes as `LargeN`, for N methods (see {@link SyntheticClasses}).
+ */
+final class Subjects {
+  private Subjects() { }
+
+  static Class<?> forName(String name) {
+    switch (name) {
+      case "LambdaClass1":
+        return LambdaClass1.class;
+      case "SelfCallClass1":
+        return SelfCallClass1.class;
+      case "InvokeDynamicNoLambdaClass1":
+        return InvokeDynamicNoLambdaClass1.class;
+      default:
+        if (name.startsWith("Large")) {
+          return SyntheticClasses.load(Integer.parseInt(name.substring("Large".length())));
+        }
+        throw new IllegalArgumentException("Unknown subject: " + name);
+    }
+  }
+}
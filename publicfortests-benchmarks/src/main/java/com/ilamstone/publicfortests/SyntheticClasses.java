@@ -0,0 +1,137 @@
+package com.ilamstone.publicfortests;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/*
+ * Generates large classes to benchmark against, with a given number of {@literal @}PublicForTests methods.
+ * Each class is defined in its own loader, which also serves its class file (and its testing interface's)
+ * as a resource, so PFTGen can read it like any other.
+ *
+ * Each method has a loop (so needs frames) and calls the previous method (so needs its owner rewriting):
+ *
+ *     @PublicForTests("synthetic.LargeNTesting")
+ *     private int mI(int x) {
+ *       int t = 0;
+ *       for (int i = 0; i < x; i++) { t += i * I; }
+ *       return t + mI-1(x - 1);       // (or just t, for m0)
+ *     }
+ */
+final class SyntheticClasses {
+  static final String PFT_DESCRIPTOR = Type.getDescriptor(PublicForTests.class);
+
+  private SyntheticClasses() { }
+
+  static final class Loader extends ClassLoader {
+    final Map<String, byte[]> classes = new HashMap<String, byte[]>();
+
+    Loader() {
+      super(SyntheticClasses.class.getClassLoader());
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      byte[] code = classes.get(name.replace('.', '/'));
+      if (code == null) {
+        throw new ClassNotFoundException(name);
+      }
+      return defineClass(name, code, 0, code.length);
+    }
+
+    @Override
+    public InputStream getResourceAsStream(String name) {
+      byte[] code = name.endsWith(".class") ? classes.get(name.substring(0, name.length() - ".class".length())) : null;
+      return code != null ? new ByteArrayInputStream(code) : super.getResourceAsStream(name);
+    }
+  }
+
+  /*
+   * @return A new class named `synthetic.LargeN`, with `methods` annotated methods.
+   */
+  static Class<?> load(int methods) {
+    String name = "synthetic/Large" + methods;
+    Loader loader = new Loader();
+    loader.classes.put(name + "Testing", testingInterface(name + "Testing", methods));
+    loader.classes.put(name, largeClass(name, methods));
+    try {
+      return loader.loadClass(name.replace('/', '.'));
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static byte[] testingInterface(String name, int methods) {
+    ClassWriter cw = new ClassWriter(0);
+    cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, name, null, "java/lang/Object", null);
+    for (int i = 0; i < methods; i++) {
+      cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "m" + i, "(I)I", null, null).visitEnd();
+    }
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  static byte[] largeClass(String name, int methods) {
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+    cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+    mv.visitInsn(Opcodes.RETURN);
+    mv.visitMaxs(1, 1);
+    mv.visitEnd();
+
+    for (int m = 0; m < methods; m++) {
+      mv = cw.visitMethod(Opcodes.ACC_PRIVATE, "m" + m, "(I)I", null, null);
+      AnnotationVisitor av = mv.visitAnnotation(PFT_DESCRIPTOR, true);
+      av.visit("value", name.replace('/', '.') + "Testing");
+      av.visitEnd();
+
+      mv.visitCode();
+      mv.visitInsn(Opcodes.ICONST_0);
+      mv.visitVarInsn(Opcodes.ISTORE, 2);
+      mv.visitInsn(Opcodes.ICONST_0);
+      mv.visitVarInsn(Opcodes.ISTORE, 3);
+      Label test = new Label();
+      Label body = new Label();
+      mv.visitJumpInsn(Opcodes.GOTO, test);
+      mv.visitLabel(body);
+      mv.visitVarInsn(Opcodes.ILOAD, 2);
+      mv.visitVarInsn(Opcodes.ILOAD, 3);
+      mv.visitLdcInsn(m);
+      mv.visitInsn(Opcodes.IMUL);
+      mv.visitInsn(Opcodes.IADD);
+      mv.visitVarInsn(Opcodes.ISTORE, 2);
+      mv.visitIincInsn(3, 1);
+      mv.visitLabel(test);
+      mv.visitVarInsn(Opcodes.ILOAD, 3);
+      mv.visitVarInsn(Opcodes.ILOAD, 1);
+      mv.visitJumpInsn(Opcodes.IF_ICMPLT, body);
+      mv.visitVarInsn(Opcodes.ILOAD, 2);
+      if (m > 0) {
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.ISUB);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, name, "m" + (m - 1), "(I)I", false);
+        mv.visitInsn(Opcodes.IADD);
+      }
+      mv.visitInsn(Opcodes.IRETURN);
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+    }
+
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+}
@@ -0,0 +1,190 @@
+package com.ilamstone.publicfortests.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import com.ilamstone.publicfortests.PFTGen;
+
+/**
+ * Pre-generates testing classes for every class with {@literal @}PublicForTests methods or fields, so that tests
+ * don't have to generate them at runtime.
+ *
+ * Both the main and test output directories are scanned. Each testing class is written to the test output
+ * directory, named as per {@link PFTGen#getPregeneratedClassName(Class)}, where `PFTGen.getTestingClass`
+ * will find and load it instead of generating a new class.
+ *
+ * If `jarFile` is set, the testing classes are written to that jar instead, which then needs adding to the
+ * test class path (e.g. with surefire's `additionalClasspathElements`). The JVM can only put classes from
+ * jars into a class data sharing (AppCDS) archive, so this lets forked test JVMs map testing classes from
+ * an archive, already parsed and verified. The jar's contents only depend on the classes it's generated
+ * from, so an archive stays valid until they change.
+ */
+@Mojo(name = "generate",
+      defaultPhase = LifecyclePhase.PROCESS_TEST_CLASSES,
+      requiresDependencyResolution = ResolutionScope.TEST,
+      threadSafe = true)
+public class GenerateTestingClassesMojo extends AbstractMojo {
+  /* 1980-01-02: early enough for any jar, late enough to be valid in zip files in any time zone */
+  static final long ENTRY_TIME = 315619200000L;
+
+  @Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+  private File classesDirectory;
+
+  @Parameter(defaultValue = "${project.build.testOutputDirectory}", required = true)
+  private File testClassesDirectory;
+
+  @Parameter(defaultValue = "${project.testClasspathElements}", required = true, readonly = true)
+  private List<String> classpathElements;
+
+  @Parameter(property = "publicfortests.skip", defaultValue = "false")
+  private boolean skip;
+
+  @Parameter(property = "publicfortests.jarFile")
+  private File jarFile;
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    if (skip) {
+      getLog().info("Skipping testing class generation");
+      return;
+    }
+
+    List<URL> urls = new ArrayList<URL>();
+    for (String element : classpathElements) {
+      try {
+        urls.add(new File(element).toURI().toURL());
+      } catch (MalformedURLException e) {
+        throw new MojoExecutionException("Bad classpath element: " + element, e);
+      }
+    }
+
+    try (URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[urls.size()]), getClass().getClassLoader())) {
+      Map<String, byte[]> classes = new TreeMap<String, byte[]>();
+      for (File dir : new File[] { classesDirectory, testClassesDirectory }) {
+        generate(dir, loader, classes);
+      }
+
+      if (jarFile != null) {
+        writeJar(jarFile, classes);
+        getLog().info("Generated " + classes.size() + " testing class(es) into " + jarFile);
+      } else {
+        writeDirectory(testClassesDirectory, classes);
+        getLog().info("Generated " + classes.size() + " testing class(es) into " + testClassesDirectory);
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Failed to generate testing classes", e);
+    }
+  }
+
+  /*
+   * Generate testing classes for all annotated classes found in `scanDirectory`, writing them into `outputDirectory`.
+   *
+   * @return The number of classes generated.
+   */
+  int generate(File scanDirectory, File outputDirectory, ClassLoader loader) throws IOException, MojoExecutionException {
+    Map<String, byte[]> classes = new TreeMap<String, byte[]>();
+    generate(scanDirectory, loader, classes);
+    writeDirectory(outputDirectory, classes);
+    return classes.size();
+  }
+
+  /*
+   * Generate testing classes for all annotated classes found in `scanDirectory`, adding them to `result`
+   * keyed by class file name.
+   */
+  void generate(File scanDirectory, ClassLoader loader, Map<String, byte[]> result) throws IOException, MojoExecutionException {
+    if (!scanDirectory.isDirectory()) {
+      return;
+    }
+
+    List<String> classNames = new ArrayList<String>();
+    findAnnotatedClasses(scanDirectory, classNames);
+
+    for (String className : classNames) {
+      Class<?> clz;
+      try {
+        clz = Class.forName(className, false, loader);
+      } catch (ClassNotFoundException | LinkageError e) {
+        throw new MojoExecutionException("Unable to load " + className, e);
+      }
+
+      result.put(PFTGen.getPregeneratedClassName(clz).replace('.', '/') + ".class", PFTGen.generatePregeneratedClass(clz));
+    }
+  }
+
+  void writeDirectory(File outputDirectory, Map<String, byte[]> classes) throws IOException {
+    for (Map.Entry<String, byte[]> e : classes.entrySet()) {
+      File out = new File(outputDirectory, e.getKey().replace('/', File.separatorChar));
+      out.getParentFile().mkdirs();
+      try (OutputStream os = new FileOutputStream(out)) {
+        os.write(e.getValue());
+      }
+      getLog().debug("Generated " + out);
+    }
+  }
+
+  /*
+   * Write the classes to a jar. Entries are in name order and all have the same time, so the same
+   * classes always give the same jar.
+   */
+  static void writeJar(File jar, Map<String, byte[]> classes) throws IOException {
+    if (jar.getParentFile() != null) {
+      jar.getParentFile().mkdirs();
+    }
+
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+      for (Map.Entry<String, byte[]> e : new TreeMap<String, byte[]>(classes).entrySet()) {
+        JarEntry entry = new JarEntry(e.getKey());
+        entry.setTime(ENTRY_TIME);
+        out.putNextEntry(entry);
+        out.write(e.getValue());
+        out.closeEntry();
+      }
+    }
+  }
+
+  void findAnnotatedClasses(File dir, List<String> result) throws IOException {
+    findAnnotatedClasses(dir, "", result);
+  }
+
+  /*
+   * Class files in an output directory are always at their package's path, so `prefix` is the package
+   * name (with a trailing '.') of the classes directly in `dir`.
+   */
+  void findAnnotatedClasses(File dir, String prefix, List<String> result) throws IOException {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    for (File f : files) {
+      String name = f.getName();
+      if (f.isDirectory()) {
+        findAnnotatedClasses(f, prefix + name + ".", result);
+      } else if (name.endsWith(".class") && !name.endsWith(PFTGen.PREGENERATED_SUFFIX + ".class")) {
+        if (PFTGen.hasPublicForTestsMembers(Files.readAllBytes(f.toPath()))) {
+          result.add(prefix + name.substring(0, name.length() - ".class".length()));
+        }
+      }
+    }
+  }
+}
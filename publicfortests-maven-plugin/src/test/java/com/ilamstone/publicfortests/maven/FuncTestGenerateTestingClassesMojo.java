@@ -0,0 +1,97 @@
+package com.ilamstone.publicfortests.maven;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarFile;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ilamstone.publicfortests.PFTGen;
+import com.ilamstone.publicfortests.maven.testmodel.NotAnnotated;
+import com.ilamstone.publicfortests.maven.testmodel.PregenClass;
+import com.ilamstone.publicfortests.maven.testmodel.PregenClassTesting;
+import com.ilamstone.publicfortests.maven.testmodel.PregenFieldClass;
+import com.ilamstone.publicfortests.maven.testmodel.PregenFieldClassTesting;
+
+public class FuncTestGenerateTestingClassesMojo {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static File testClasses;
+  private static int generated;
+
+  @BeforeClass
+  public static void generate() throws Exception {
+    testClasses = new File(PregenClass.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    generated = new GenerateTestingClassesMojo().generate(testClasses, testClasses, FuncTestGenerateTestingClassesMojo.class.getClassLoader());
+  }
+
+  @Test
+  public void testFindsOnlyAnnotatedClasses() throws Exception {
+    List<String> found = new ArrayList<String>();
+    new GenerateTestingClassesMojo().findAnnotatedClasses(testClasses, found);
+
+    assertThat(found).contains(PregenClass.class.getName(), PregenFieldClass.class.getName())
+                     .doesNotContain(NotAnnotated.class.getName(), PFTGen.getPregeneratedClassName(PregenClass.class));
+    assertThat(generated).isEqualTo(2);
+  }
+
+  @Test
+  public void testWritesPregeneratedClass() throws Exception {
+    File out = new File(testClasses, PFTGen.getPregeneratedClassName(PregenClass.class).replace('.', File.separatorChar) + ".class");
+
+    assertThat(out).exists();
+  }
+
+  @Test
+  public void testWritesReproducibleJar() throws Exception {
+    Map<String, byte[]> classes = new TreeMap<String, byte[]>();
+    new GenerateTestingClassesMojo().generate(testClasses, FuncTestGenerateTestingClassesMojo.class.getClassLoader(), classes);
+    File first = tmp.newFile("first.jar");
+    File second = tmp.newFile("second.jar");
+
+    GenerateTestingClassesMojo.writeJar(first, classes);
+    Thread.sleep(1000);
+    GenerateTestingClassesMojo.writeJar(second, classes);
+
+    try (JarFile jar = new JarFile(first)) {
+      assertThat(jar.getEntry(PFTGen.getPregeneratedClassName(PregenClass.class).replace('.', '/') + ".class")).isNotNull();
+    }
+    assertThat(Files.readAllBytes(second.toPath())).isEqualTo(Files.readAllBytes(first.toPath()));
+  }
+
+  @Test
+  public void testGetTestingClassUsesPregeneratedClass() throws Exception {
+    long pregeneratedHits = PFTGen.getCacheStats().getPregeneratedHits();
+    long misses = PFTGen.getCacheStats().getMisses();
+
+    Class<PregenClassTesting> clz = PFTGen.getTestingClass(PregenClass.class);
+
+    assertThat(clz.getName()).isEqualTo(PFTGen.getPregeneratedClassName(PregenClass.class));
+    assertThat(clz.newInstance().somePrivateMethod()).isEqualTo(PregenClass.PRIVATE_EXPECTATION);
+    assertThat(PFTGen.getCacheStats().getPregeneratedHits() - pregeneratedHits).isEqualTo(1);
+    assertThat(PFTGen.getCacheStats().getMisses() - misses).isEqualTo(0);
+  }
+
+  @Test
+  public void testFieldOnlyClassIsPregenerated() throws Exception {
+    long pregeneratedHits = PFTGen.getCacheStats().getPregeneratedHits();
+
+    Class<PregenFieldClassTesting> clz = PFTGen.getTestingClass(PregenFieldClass.class);
+    PregenFieldClassTesting obj = clz.newInstance();
+    obj.setName("changed");
+
+    assertThat(clz.getName()).isEqualTo(PFTGen.getPregeneratedClassName(PregenFieldClass.class));
+    assertThat(obj.getName()).isEqualTo("changed");
+    assertThat(PFTGen.getCacheStats().getPregeneratedHits() - pregeneratedHits).isEqualTo(1);
+  }
+}
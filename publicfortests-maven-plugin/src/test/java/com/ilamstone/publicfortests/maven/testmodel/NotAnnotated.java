@@ -0,0 +1,8 @@
+package com.ilamstone.publicfortests.maven.testmodel;
+
+public class NotAnnotated {
+  @SuppressWarnings("unused")
+  private String somePrivateMethod() {
+    return "Not annotated";
+  }
+}
@@ -0,0 +1,7 @@
+package com.ilamstone.publicfortests.maven.testmodel;
+
+class PackagePrivateHelper {
+  String help() {
+    return PregenClass.PRIVATE_EXPECTATION;
+  }
+}
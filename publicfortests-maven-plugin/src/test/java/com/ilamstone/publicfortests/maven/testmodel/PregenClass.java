@@ -0,0 +1,14 @@
+package com.ilamstone.publicfortests.maven.testmodel;
+
+import com.ilamstone.publicfortests.PublicForTests;
+
+public class PregenClass {
+  public static final String PRIVATE_EXPECTATION = "Hello from Private";
+
+  PackagePrivateHelper helper = new PackagePrivateHelper();
+
+  @PublicForTests("com.ilamstone.publicfortests.maven.testmodel.PregenClassTesting")
+  private String somePrivateMethod() {
+    return helper.help();
+  }
+}
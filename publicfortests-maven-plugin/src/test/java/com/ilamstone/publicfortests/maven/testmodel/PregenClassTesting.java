@@ -0,0 +1,5 @@
+package com.ilamstone.publicfortests.maven.testmodel;
+
+public interface PregenClassTesting {
+  String somePrivateMethod();
+}
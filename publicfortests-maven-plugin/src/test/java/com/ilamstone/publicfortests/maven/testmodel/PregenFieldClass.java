@@ -0,0 +1,8 @@
+package com.ilamstone.publicfortests.maven.testmodel;
+
+import com.ilamstone.publicfortests.PublicForTests;
+
+public class PregenFieldClass {
+  @PublicForTests("com.ilamstone.publicfortests.maven.testmodel.PregenFieldClassTesting")
+  private String name = "pregenerated";
+}
@@ -0,0 +1,6 @@
+package com.ilamstone.publicfortests.maven.testmodel;
+
+public interface PregenFieldClassTesting {
+  String getName();
+  void setName(String name);
+}
@@ -0,0 +1,208 @@
+package com.ilamstone.publicfortests;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+/*
+ * Writes generated testing classes to a directory, for debugging. Enabled by setting the
+ * `publicfortests.dump.dir` system property.
+ *
+ * Generating threads only check the filter and sampling, and queue the bytes; a single background
+ * thread writes each class as `<internal name>.class` and, unless `publicfortests.dump.text` is false,
+ * a textified `<internal name>.txt` next to it. If the queue (`publicfortests.dump.queueSize` entries,
+ * default 256) is full, classes are dropped rather than holding up generation.
+ *
+ * `publicfortests.dump.filter` is a regular expression, found in the original class's name, that classes
+ * must match to be dumped. `publicfortests.dump.sampleEvery` dumps only every nth matching class.
+ */
+class BytecodeDumper implements AutoCloseable {
+  private static final Logger log = Logger.getLogger(BytecodeDumper.class.getName());
+
+  static final String DIR_PROPERTY = "publicfortests.dump.dir";
+  static final String FILTER_PROPERTY = "publicfortests.dump.filter";
+  static final String SAMPLE_EVERY_PROPERTY = "publicfortests.dump.sampleEvery";
+  static final String QUEUE_SIZE_PROPERTY = "publicfortests.dump.queueSize";
+  static final String TEXT_PROPERTY = "publicfortests.dump.text";
+  static final int DEFAULT_QUEUE_SIZE = 256;
+
+  /* How long a shutting-down JVM waits for queued classes to be written */
+  static final long SHUTDOWN_WAIT_MILLIS = 5000;
+
+  static final class Entry {
+    final String internalName;
+    final byte[] code;
+
+    Entry(String internalName, byte[] code) {
+      this.internalName = internalName;
+      this.code = code;
+    }
+  }
+
+  final Path dir;
+  final Pattern filter;
+  final int sampleEvery;
+  final boolean text;
+  final LongAdder dumped = new LongAdder();
+  final LongAdder dropped = new LongAdder();
+
+  private final AtomicLong matched = new AtomicLong();
+  private final BlockingQueue<Entry> queue;
+  private final Thread writer;
+
+  /* Entries queued or being written. Waiters for this to reach zero wait on `this` */
+  private final AtomicInteger pending = new AtomicInteger();
+
+  /*
+   * @param filter Classes whose (original) name doesn't contain a match aren't dumped. May be null.
+   * @param sampleEvery Dump every nth class that passes the filter.
+   */
+  BytecodeDumper(Path dir, Pattern filter, int sampleEvery, int queueSize, boolean text) throws IOException {
+    if (sampleEvery < 1) {
+      throw new IllegalArgumentException("sampleEvery must be at least 1");
+    }
+    this.dir = Files.createDirectories(dir);
+    this.filter = filter;
+    this.sampleEvery = sampleEvery;
+    this.text = text;
+    this.queue = new ArrayBlockingQueue<Entry>(queueSize);
+    this.writer = new Thread(this::run, "publicfortests-dump");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /*
+   * @return A dumper as configured by system properties, or `null` if none is configured (or the
+   *         directory can't be created).
+   */
+  static BytecodeDumper fromProperties() {
+    String dir = System.getProperty(DIR_PROPERTY);
+    if (dir == null || dir.isEmpty()) {
+      return null;
+    }
+
+    String filter = System.getProperty(FILTER_PROPERTY);
+    try {
+      BytecodeDumper dumper = new BytecodeDumper(Paths.get(dir),
+                                                 filter == null || filter.isEmpty() ? null : Pattern.compile(filter),
+                                                 Integer.getInteger(SAMPLE_EVERY_PROPERTY, 1),
+                                                 Integer.getInteger(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE),
+                                                 !"false".equals(System.getProperty(TEXT_PROPERTY)));
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> dumper.awaitIdle(SHUTDOWN_WAIT_MILLIS, TimeUnit.MILLISECONDS)));
+      log.info(() -> "Dumping generated classes to '" + dumper.dir + "'");
+      return dumper;
+    } catch (IOException | RuntimeException e) {
+      log.warning(() -> "Not dumping generated classes to '" + dir + "': " + e);
+      return null;
+    }
+  }
+
+  /*
+   * Queue a generated class to be written, if it passes the filter and sampling. Never blocks.
+   *
+   * @param original The class it was generated from.
+   * @param internalName The generated class's internal name.
+   * @param code The generated class. It must not be changed afterwards.
+   */
+  void offer(Class<?> original, String internalName, byte[] code) {
+    if (filter != null && !filter.matcher(original.getName()).find()) {
+      return;
+    }
+    if (sampleEvery > 1 && matched.getAndIncrement() % sampleEvery != 0) {
+      return;
+    }
+
+    pending.incrementAndGet();
+    if (!queue.offer(new Entry(internalName, code))) {
+      dropped.increment();
+      done();
+    }
+  }
+
+  private void done() {
+    if (pending.decrementAndGet() == 0) {
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+  }
+
+  /*
+   * Wait for everything queued so far to be written.
+   *
+   * @return Whether it was, before the timeout.
+   */
+  boolean awaitIdle(long timeout, TimeUnit unit) {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (this) {
+      while (pending.get() > 0) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+          return false;
+        }
+        try {
+          wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /*
+   * Stop the writer thread. Anything not yet written is discarded.
+   */
+  @Override
+  public void close() {
+    writer.interrupt();
+  }
+
+  private void run() {
+    while (true) {
+      Entry entry;
+      try {
+        entry = queue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      try {
+        write(entry.internalName, entry.code);
+        dumped.increment();
+      } catch (IOException | RuntimeException e) {
+        log.warning(() -> "Failed to dump '" + entry.internalName + "': " + e);
+      } finally {
+        done();
+      }
+    }
+  }
+
+  void write(String internalName, byte[] code) throws IOException {
+    Path file = dir.resolve(internalName + ".class");
+    Files.createDirectories(file.getParent());
+    Files.write(file, code);
+
+    if (text) {
+      StringWriter out = new StringWriter();
+      new ClassReader(code).accept(new TraceClassVisitor(new PrintWriter(out)), 0);
+      Files.write(dir.resolve(internalName + ".txt"), out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.ilamstone.publicfortests;
+
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Supplies the original class file bytes that testing classes are generated from. Set one with
+ * {@link PFTOptions#withClassBytesSource(ClassBytesSource)}; the default, {@link #DEFAULT}, reads class
+ * files through each class's own loader and keeps them for as long as the class is around.
+ * 
+ * Other sources are useful where a class's loader can't (or can't cheaply) supply its class file,
+ * e.g. custom or container loaders that don't expose resources, or classes defined from generated bytes.
+ * Sources can be combined with {@link #firstOf(ClassBytesSource...)} and {@link #cached(ClassBytesSource)}.
+ */
+public interface ClassBytesSource {
+  /**
+   * Reads class files through each class's own loader (or the system loader, for bootstrap classes), 
+   * caching them per class.
+   */
+  ClassBytesSource DEFAULT = cached(fromLoader());
+
+  /**
+   * @param clz The original class.
+   * 
+   * @return The class file bytes for `clz`, or `null` if this source doesn't have them. Callers must not
+   *         modify the returned array.
+   * 
+   * @throws IOException If the bytes should be available, but can't be read.
+   */
+  byte[] getClassBytes(Class<?> clz) throws IOException;
+
+  /**
+   * Forget anything held for `clz`, e.g. because it has been redefined. Does nothing by default.
+   */
+  default void invalidate(Class<?> clz) {
+  }
+
+  /**
+   * Forget everything held for any class. Does nothing by default.
+   */
+  default void invalidateAll() {
+  }
+
+  /**
+   * @return A source that reads class files as resources through each class's own loader.
+   */
+  static ClassBytesSource fromLoader() {
+    return new ClassBytesSources.LoaderSource(null);
+  }
+
+  /**
+   * @param loader The loader to read through.
+   * 
+   * @return A source that reads class files as resources through the given loader.
+   */
+  static ClassBytesSource fromLoader(ClassLoader loader) {
+    if (loader == null) {
+      throw new IllegalArgumentException("loader cannot be null");
+    }
+    return new ClassBytesSources.LoaderSource(loader);
+  }
+
+  /**
+   * @param classes Class file bytes, keyed by class binary name (as `Class.getName()`).
+   * 
+   * @return A source that supplies bytes from the given map. The map is not copied, so it can be added to later.
+   */
+  static ClassBytesSource fromBytes(Map<String, byte[]> classes) {
+    return clz -> classes.get(clz.getName());
+  }
+
+  /**
+   * Reads class files from a jar (or zip) through a zip file system, which stays open for the life of the
+   * returned source. This avoids going through (and re-inflating entries in) the class's loader.
+   * 
+   * @param jar The jar file.
+   * 
+   * @return A source that reads class files from the jar.
+   * 
+   * @throws IOException If the jar can't be opened.
+   */
+  static ClassBytesSource fromJar(Path jar) throws IOException {
+    return new ClassBytesSources.JarSource(jar);
+  }
+
+  /**
+   * Captures class file bytes as they are loaded, through a `ClassFileTransformer` registered with the 
+   * given `Instrumentation` (e.g. from a Java agent). Only classes with {@literal @}PublicForTests methods
+   * are captured at load time; any other class is captured on demand by retransforming it, if the JVM 
+   * supports that.
+   * 
+   * @param inst The instrumentation.
+   * 
+   * @return A source that supplies captured bytes.
+   */
+  static ClassBytesSource fromInstrumentation(Instrumentation inst) {
+    return new ClassBytesSources.InstrumentationSource(inst);
+  }
+
+  /**
+   * @param sources Sources to try, in order.
+   * 
+   * @return A source that supplies the bytes from the first of `sources` that has them.
+   */
+  static ClassBytesSource firstOf(ClassBytesSource... sources) {
+    return new ClassBytesSources.FirstOfSource(sources.clone());
+  }
+
+  /**
+   * @param source The source to cache.
+   * 
+   * @return A source that keeps the bytes `source` supplies for each class, for as long as the class is
+   *         around (or until {@link #invalidate(Class)}).
+   */
+  static ClassBytesSource cached(ClassBytesSource source) {
+    return new ClassBytesSources.CachedSource(source);
+  }
+}
@@ -0,0 +1,252 @@
+package com.ilamstone.publicfortests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+import org.objectweb.asm.Type;
+
+/*
+ * Implementations of {@link ClassBytesSource}. See the factory methods there.
+ */
+final class ClassBytesSources {
+  private static final Logger log = Logger.getLogger(ClassBytesSources.class.getName());
+
+  private ClassBytesSources() { }
+
+  static String resourceName(Class<?> clz) {
+    return Type.getInternalName(clz) + ".class";
+  }
+
+  /*
+   * Reads through a fixed loader, or (if that's null) through each class's own loader.
+   */
+  static final class LoaderSource implements ClassBytesSource {
+    final ClassLoader loader;
+
+    LoaderSource(ClassLoader loader) {
+      this.loader = loader;
+    }
+
+    @Override
+    public byte[] getClassBytes(Class<?> clz) throws IOException {
+      ClassLoader from = loader != null ? loader : clz.getClassLoader();
+      String resource = resourceName(clz);
+      InputStream in = from == null ? ClassLoader.getSystemResourceAsStream(resource) : from.getResourceAsStream(resource);
+      if (in == null) {
+        return null;
+      }
+
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(in.available() > 0 ? in.available() : 4096);
+        byte[] buf = new byte[4096];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+          out.write(buf, 0, read);
+        }
+        return out.toByteArray();
+      } finally {
+        in.close();
+      }
+    }
+  }
+
+  static final class JarSource implements ClassBytesSource {
+    final FileSystem fs;
+
+    JarSource(Path jar) throws IOException {
+      this.fs = FileSystems.newFileSystem(URI.create("jar:" + jar.toUri()), Collections.<String, Object>emptyMap());
+    }
+
+    @Override
+    public byte[] getClassBytes(Class<?> clz) throws IOException {
+      try {
+        return Files.readAllBytes(fs.getPath("/" + resourceName(clz)));
+      } catch (NoSuchFileException e) {
+        return null;
+      }
+    }
+  }
+
+  static final class FirstOfSource implements ClassBytesSource {
+    final ClassBytesSource[] sources;
+
+    FirstOfSource(ClassBytesSource[] sources) {
+      this.sources = sources;
+    }
+
+    @Override
+    public byte[] getClassBytes(Class<?> clz) throws IOException {
+      for (ClassBytesSource source : sources) {
+        byte[] result = source.getClassBytes(clz);
+        if (result != null) {
+          return result;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public void invalidate(Class<?> clz) {
+      for (ClassBytesSource source : sources) {
+        source.invalidate(clz);
+      }
+    }
+
+    @Override
+    public void invalidateAll() {
+      for (ClassBytesSource source : sources) {
+        source.invalidateAll();
+      }
+    }
+  }
+
+  /*
+   * Holds bytes through a `ClassValue`, so they go when the class does. Misses aren't cached.
+   */
+  static final class CachedSource implements ClassBytesSource {
+    final ClassBytesSource source;
+    private volatile ClassValue<byte[][]> bytes = newBytesValue();
+
+    CachedSource(ClassBytesSource source) {
+      this.source = source;
+    }
+
+    @Override
+    public byte[] getClassBytes(Class<?> clz) throws IOException {
+      byte[][] holder = bytes.get(clz);
+      synchronized (holder) {
+        if (holder[0] == null) {
+          holder[0] = source.getClassBytes(clz);
+        }
+        return holder[0];
+      }
+    }
+
+    @Override
+    public void invalidate(Class<?> clz) {
+      bytes.remove(clz);
+      source.invalidate(clz);
+    }
+
+    @Override
+    public void invalidateAll() {
+      bytes = newBytesValue();
+      source.invalidateAll();
+    }
+
+    private static ClassValue<byte[][]> newBytesValue() {
+      return new ClassValue<byte[][]>() {
+        @Override
+        protected byte[][] computeValue(Class<?> type) {
+          return new byte[1][];
+        }
+      };
+    }
+  }
+
+  /*
+   * Captures bytes through a `ClassFileTransformer`, which never actually transforms anything.
+   */
+  static final class InstrumentationSource implements ClassBytesSource, ClassFileTransformer {
+    static final byte[] PFT_DESCRIPTOR = PFTGen.PftAnnotationScanner.PFT_DESCRIPTOR.getBytes(StandardCharsets.UTF_8);
+
+    /* Stands in for the bootstrap loader, which WeakHashMap can't key on */
+    private static final Object BOOTSTRAP = new Object();
+
+    final Instrumentation inst;
+    final Map<Object, Map<String, byte[]>> captured = new WeakHashMap<Object, Map<String, byte[]>>();
+
+    /* Classes being retransformed to capture them, by internal name */
+    final Set<String> wanted = Collections.synchronizedSet(new HashSet<String>());
+
+    InstrumentationSource(Instrumentation inst) {
+      this.inst = inst;
+      inst.addTransformer(this, inst.isRetransformClassesSupported());
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+      if (className != null && (wanted.contains(className) || contains(classfileBuffer, PFT_DESCRIPTOR))) {
+        synchronized (captured) {
+          captured.computeIfAbsent(loader == null ? BOOTSTRAP : loader, k -> new HashMap<String, byte[]>())
+                  .put(className, classfileBuffer.clone());
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public byte[] getClassBytes(Class<?> clz) throws IOException {
+      byte[] result = lookup(clz);
+      if (result == null && inst.isRetransformClassesSupported() && inst.isModifiableClass(clz)) {
+        String name = Type.getInternalName(clz);
+        wanted.add(name);
+        try {
+          inst.retransformClasses(clz);
+        } catch (UnmodifiableClassException | RuntimeException e) {
+          log.fine(() -> "Unable to capture " + clz.getName() + " by retransforming it: " + e);
+        } finally {
+          wanted.remove(name);
+        }
+        result = lookup(clz);
+      }
+      return result;
+    }
+
+    @Override
+    public void invalidate(Class<?> clz) {
+      synchronized (captured) {
+        Map<String, byte[]> classes = captured.get(clz.getClassLoader() == null ? BOOTSTRAP : clz.getClassLoader());
+        if (classes != null) {
+          classes.remove(Type.getInternalName(clz));
+        }
+      }
+    }
+
+    @Override
+    public void invalidateAll() {
+      synchronized (captured) {
+        captured.clear();
+      }
+    }
+
+    private byte[] lookup(Class<?> clz) {
+      synchronized (captured) {
+        Map<String, byte[]> classes = captured.get(clz.getClassLoader() == null ? BOOTSTRAP : clz.getClassLoader());
+        return classes == null ? null : classes.get(Type.getInternalName(clz));
+      }
+    }
+
+    static boolean contains(byte[] haystack, byte[] needle) {
+      outer:
+      for (int i = 0; i <= haystack.length - needle.length; i++) {
+        for (int j = 0; j < needle.length; j++) {
+          if (haystack[i + j] != needle[j]) {
+            continue outer;
+          }
+        }
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package com.ilamstone.publicfortests;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.logging.Logger;
+
+/**
+ * The ways in which PFTGen can define a generated testing class in the JVM.
+ *
+ * `CLASS_LOADER` is the original approach, calling the protected `ClassLoader.defineClass` reflectively. It
+ * can define into any loader, but needs `--add-opens java.base/java.lang=ALL-UNNAMED` on JDK 16 and up,
+ * and classes defined this way live as long as their loader does. (Defining into a {@link PFTScope}'s loader
+ * needs no reflection.)
+ *
+ * `LOOKUP` uses `MethodHandles.privateLookupIn(original, ...).defineClass(...)` (JDK 9 and up). It doesn't
+ * need any reflective access to JDK internals, but can only define into the original class's own loader.
+ *
+ * `HIDDEN` uses `Lookup.defineHiddenClass` (JDK 15 and up), again in the original class's loader. Hidden
+ * classes are not registered with their loader, and can be unloaded as soon as they are unreachable, even
+ * while the loader is alive. They don't have a usable binary name, so code can only get to them through
+ * the returned `Class` object. For the same reason, lambdas whose bodies live in the original class
+ * (as opposed to method references to other classes) won't link in a hidden testing class.
+ *
+ * `AUTO` (the default) picks `LOOKUP` when it's available and the target loader is the original class's
+ * loader, and `CLASS_LOADER` otherwise.
+ */
+public enum DefineStrategy {
+  AUTO {
+    @Override
+    public boolean isAvailable() {
+      return true;
+    }
+
+    @Override
+    ClassLoader targetLoader(ClassLoader requested, Class<?> original) {
+      return resolve(requested, original).targetLoader(requested, original);
+    }
+
+    @Override
+    Class<?> define(ClassLoader loader, Class<?> original, String internalName, byte[] code) {
+      return resolve(loader, original).define(loader, original, internalName, code);
+    }
+  },
+
+  CLASS_LOADER {
+    @Override
+    public boolean isAvailable() {
+      return ClassLoaderHandles.DEFINE != null;
+    }
+
+    @Override
+    Class<?> define(ClassLoader loader, Class<?> original, String internalName, byte[] code) {
+      if (loader instanceof PFTScope.ScopeLoader) {
+        return ((PFTScope.ScopeLoader)loader).define(internalName, code);
+      }
+      if (ClassLoaderHandles.DEFINE == null) {
+        throw new UnsupportedOperationException("ClassLoader.defineClass is not accessible", ClassLoaderHandles.FAILURE);
+      }
+
+      try {
+        return (Class<?>)ClassLoaderHandles.DEFINE.invokeExact(loader, internalName.replace('/', '.'), code, 0, code.length);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        System.err.println("Throwable: in defineClass: " + t.getMessage());
+        throw new RuntimeException("Unrecoverable Error", t);
+      }
+    }
+  },
+
+  LOOKUP {
+    @Override
+    public boolean isAvailable() {
+      return LookupHandles.DEFINE_CLASS != null;
+    }
+
+    @Override
+    ClassLoader targetLoader(ClassLoader requested, Class<?> original) {
+      return original.getClassLoader();
+    }
+
+    @Override
+    Class<?> define(ClassLoader loader, Class<?> original, String internalName, byte[] code) {
+      if (LookupHandles.DEFINE_CLASS == null) {
+        throw new UnsupportedOperationException("Lookup.defineClass requires JDK 9 or later", LookupHandles.FAILURE);
+      }
+      checkLoader(loader, original);
+
+      try {
+        return (Class<?>)LookupHandles.DEFINE_CLASS.invokeExact(privateLookupIn(original), code);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        System.err.println("Throwable: in defineClass: " + t.getMessage());
+        throw new RuntimeException("Unrecoverable Error", t);
+      }
+    }
+  },
+
+  HIDDEN {
+    @Override
+    public boolean isAvailable() {
+      return LookupHandles.DEFINE_HIDDEN_CLASS != null;
+    }
+
+    @Override
+    ClassLoader targetLoader(ClassLoader requested, Class<?> original) {
+      return original.getClassLoader();
+    }
+
+    @Override
+    Class<?> define(ClassLoader loader, Class<?> original, String internalName, byte[] code) {
+      if (LookupHandles.DEFINE_HIDDEN_CLASS == null) {
+        throw new UnsupportedOperationException("Lookup.defineHiddenClass requires JDK 15 or later", LookupHandles.FAILURE);
+      }
+      checkLoader(loader, original);
+
+      try {
+        Lookup hidden = (Lookup)LookupHandles.DEFINE_HIDDEN_CLASS.invokeExact(privateLookupIn(original), code, true, LookupHandles.NO_OPTIONS);
+        return hidden.lookupClass();
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        System.err.println("Throwable: in defineClass: " + t.getMessage());
+        throw new RuntimeException("Unrecoverable Error", t);
+      }
+    }
+  };
+
+  private static final Logger log = Logger.getLogger(DefineStrategy.class.getName());
+
+  /**
+   * @return `true` if this strategy can be used in the running JVM.
+   */
+  public abstract boolean isAvailable();
+
+  /*
+   * The loader a class defined with this strategy will actually end up in, given the
+   * loader that was asked for.
+   */
+  ClassLoader targetLoader(ClassLoader requested, Class<?> original) {
+    return requested;
+  }
+
+  /*
+   * Define the given bytecode, which must be a class in the same package as `original`.
+   */
+  abstract Class<?> define(ClassLoader loader, Class<?> original, String internalName, byte[] code);
+
+  static DefineStrategy resolve(ClassLoader loader, Class<?> original) {
+    if (LOOKUP.isAvailable() && loader == original.getClassLoader()) {
+      return LOOKUP;
+    } else {
+      return CLASS_LOADER;
+    }
+  }
+
+  static void checkLoader(ClassLoader loader, Class<?> original) {
+    if (loader != original.getClassLoader()) {
+      throw new IllegalArgumentException("Can only define testing classes for " + original.getName()
+          + " in its own class loader (" + original.getClassLoader() + ") with Lookup-based strategies");
+    }
+  }
+
+  static Lookup privateLookupIn(Class<?> original) throws Throwable {
+    return (Lookup)LookupHandles.PRIVATE_LOOKUP_IN.invokeExact(original, MethodHandles.lookup());
+  }
+
+  /*
+   * Handle on `ClassLoader.defineClass`. This is resolved lazily, the first time `CLASS_LOADER` is used,
+   * since on newer JDKs `setAccessible` will fail without `--add-opens`.
+   */
+  static final class ClassLoaderHandles {
+    static final MethodHandle DEFINE;
+    static final Throwable FAILURE;
+
+    static {
+      MethodHandle define = null;
+      Throwable failure = null;
+      try {
+        Method m = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class);
+        m.setAccessible(true);
+        define = MethodHandles.lookup().unreflect(m);
+      } catch (Exception e) {
+        log.warning(() -> "ClassLoader.defineClass is not accessible (" + e + "); the CLASS_LOADER strategy is unavailable");
+        failure = e;
+      }
+      DEFINE = define;
+      FAILURE = failure;
+    }
+  }
+
+  /*
+   * Handles on the `MethodHandles.Lookup` methods. These don't exist in JDK 8 (and `defineHiddenClass`
+   * not before JDK 15) so they are looked up reflectively, leaving `null`s where they're missing.
+   */
+  static final class LookupHandles {
+    static final MethodHandle PRIVATE_LOOKUP_IN;
+    static final MethodHandle DEFINE_CLASS;
+    static final MethodHandle DEFINE_HIDDEN_CLASS;
+    static final Object NO_OPTIONS;
+    static final Throwable FAILURE;
+
+    static {
+      Lookup lookup = MethodHandles.lookup();
+      MethodHandle privateLookupIn = null;
+      MethodHandle defineClass = null;
+      MethodHandle defineHiddenClass = null;
+      Object noOptions = null;
+      Throwable failure = null;
+
+      try {
+        privateLookupIn = lookup.findStatic(MethodHandles.class, "privateLookupIn",
+                                            MethodType.methodType(Lookup.class, Class.class, Lookup.class));
+        defineClass = lookup.findVirtual(Lookup.class, "defineClass", MethodType.methodType(Class.class, byte[].class));
+
+        Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+        noOptions = Array.newInstance(option, 0);
+        defineHiddenClass = lookup.findVirtual(Lookup.class, "defineHiddenClass",
+                                               MethodType.methodType(Lookup.class, byte[].class, boolean.class, noOptions.getClass()))
+                                  .asFixedArity()
+                                  .asType(MethodType.methodType(Lookup.class, Lookup.class, byte[].class, boolean.class, Object.class));
+      } catch (ReflectiveOperationException e) {
+        failure = e;
+      }
+
+      PRIVATE_LOOKUP_IN = privateLookupIn;
+      DEFINE_CLASS = privateLookupIn == null ? null : defineClass;
+      DEFINE_HIDDEN_CLASS = privateLookupIn == null ? null : defineHiddenClass;
+      NO_OPTIONS = noOptions;
+      FAILURE = failure;
+    }
+  }
+}
@@ -0,0 +1,343 @@
+package com.ilamstone.publicfortests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/*
+ * Persistent bytecode cache, so that separate JVMs (e.g. surefire forks) generating the same testing
+ * classes only pay for generation once. Enabled by setting the `publicfortests.cache.dir` system property.
+ *
+ * Each entry is one file, named for a digest of the generator itself, the original class bytes and
+ * the request `Config`. Files are written to a temporary file and then atomically moved into place, so
+ * concurrent JVMs sharing a directory never see partial entries, and read through a memory mapping.
+ *
+ * Each hit touches its file's modification time. Once the directory grows past `maxBytes`, the least
+ * recently used files are deleted until it's back under 90% of that. Temporary files count toward
+ * `maxBytes` too, and any left behind by a writer that died (older than `TMP_GRACE_MILLIS`) are deleted
+ * by the same cleanup.
+ */
+class DiskCache {
+  private static final Logger log = Logger.getLogger(DiskCache.class.getName());
+
+  static final String DIR_PROPERTY = "publicfortests.cache.dir";
+  static final String MAX_BYTES_PROPERTY = "publicfortests.cache.maxDiskBytes";
+  static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  static final String SUFFIX = ".pftc";
+  static final String TMP_SUFFIX = ".tmp";
+  static final long TMP_GRACE_MILLIS = 60_000;
+  static final int MAGIC = 0x50465443;    // "PFTC"
+
+  /* 
+   * The classes that decide what's generated: the transform itself, slim filtering, probes, the fingerprints
+   * incremental regeneration relies on, and the options. Any change to one of these (or their nested or 
+   * anonymous classes) changes the generator digest, and so invalidates everything generated before it.
+   */
+  static final Class<?>[] GENERATOR_CLASSES = { PFTGen.class, Reachability.class, PFTProbes.class, Fingerprint.class, PFTOptions.class };
+  private static final String GENERATOR_DIGEST = generatorDigest();
+
+  final Path dir;
+  final long maxBytes;
+  final LongAdder hits = new LongAdder();
+  final LongAdder misses = new LongAdder();
+  final LongAdder writes = new LongAdder();
+  final LongAdder evictions = new LongAdder();
+
+  /* Approximate size of the directory; only this JVM's writes are counted between cleanups */
+  private final AtomicLong size = new AtomicLong(-1);
+
+  DiskCache(Path dir, long maxBytes) throws IOException {
+    this.dir = Files.createDirectories(dir);
+    this.maxBytes = maxBytes;
+  }
+
+  /*
+   * @return A disk cache as configured by system properties, or `null` if none is configured (or the
+   *         directory can't be created).
+   */
+  static DiskCache fromProperties() {
+    String dir = System.getProperty(DIR_PROPERTY);
+    if (dir == null || dir.isEmpty()) {
+      return null;
+    }
+
+    try {
+      return new DiskCache(Paths.get(dir), Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+    } catch (IOException e) {
+      log.warning(() -> "Not using disk cache in '" + dir + "': " + e);
+      return null;
+    }
+  }
+
+  /*
+   * @return The cached bytecode for `key`, or `null` on a miss. Unreadable entries count as misses
+   *         (and are deleted).
+   */
+  GenerationCache.Generated get(GenerationCache.BytecodeKey key) {
+    Path file = file(key);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      GenerationCache.Generated result = decode(buf);
+      if (result == null) {
+        log.warning(() -> "Deleting corrupt disk cache entry " + file);
+        Files.deleteIfExists(file);
+        misses.increment();
+        return null;
+      }
+
+      touch(file);
+      hits.increment();
+      return result;
+    } catch (NoSuchFileException e) {
+      misses.increment();
+      return null;
+    } catch (IOException e) {
+      log.warning(() -> "Unable to read disk cache entry " + file + ": " + e);
+      misses.increment();
+      return null;
+    }
+  }
+
+  /*
+   * Store bytecode for `key`. Failures are logged, but otherwise ignored; the cache is only an optimization.
+   */
+  void put(GenerationCache.BytecodeKey key, GenerationCache.Generated generated) {
+    Path file = file(key);
+    Path tmp = null;
+    try {
+      byte[] bytes = encode(generated);
+      tmp = Files.createTempFile(dir, file.getFileName().toString(), TMP_SUFFIX);
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        out.write(bytes);
+      }
+
+      try {
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+      tmp = null;
+      writes.increment();
+
+      if (size() + bytes.length > maxBytes) {
+        cleanup();
+      } else {
+        size.addAndGet(bytes.length);
+      }
+    } catch (IOException e) {
+      log.warning(() -> "Unable to write disk cache entry " + file + ": " + e);
+    } finally {
+      if (tmp != null) {
+        try {
+          Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+          // Nothing more we can do
+        }
+      }
+    }
+  }
+
+  /*
+   * Delete abandoned temporary files, then the least recently used entries until the directory is under
+   * 90% of `maxBytes`. Temporary files still being written count toward the total, but are left alone.
+   */
+  synchronized void cleanup() throws IOException {
+    List<Entry> entries = new ArrayList<Entry>();
+    long total = 0;
+    long abandoned = System.currentTimeMillis() - TMP_GRACE_MILLIS;
+    for (Entry e : list()) {
+      if (e.temporary && e.lastModified.toMillis() < abandoned) {
+        try {
+          Files.deleteIfExists(e.path);
+          continue;
+        } catch (IOException ex) {
+          // Still open somewhere after all; count it like any other.
+        }
+      }
+      total += e.size;
+      if (!e.temporary) {
+        entries.add(e);
+      }
+    }
+
+    if (total > maxBytes) {
+      entries.sort(Comparator.comparing((Entry e) -> e.lastModified));
+      long target = maxBytes / 10 * 9;
+      for (Entry e : entries) {
+        if (total <= target) {
+          break;
+        }
+        try {
+          if (Files.deleteIfExists(e.path)) {
+            evictions.increment();
+          }
+          total -= e.size;
+        } catch (IOException ex) {
+          // Probably in use (e.g. still mapped, on Windows); try the next one.
+        }
+      }
+    }
+
+    size.set(total);
+  }
+
+  long size() throws IOException {
+    long current = size.get();
+    if (current < 0) {
+      current = 0;
+      for (Entry e : list()) {
+        current += e.size;
+      }
+      size.compareAndSet(-1, current);
+    }
+    return current;
+  }
+
+  private static final class Entry {
+    final Path path;
+    final long size;
+    final FileTime lastModified;
+    final boolean temporary;
+
+    Entry(Path path, BasicFileAttributes attrs) {
+      this.path = path;
+      this.size = attrs.size();
+      this.lastModified = attrs.lastModifiedTime();
+      this.temporary = path.getFileName().toString().endsWith(TMP_SUFFIX);
+    }
+  }
+
+  /*
+   * @return Both entries and temporary files (named `<entry><random>.tmp` by `put`).
+   */
+  private List<Entry> list() throws IOException {
+    List<Entry> result = new ArrayList<Entry>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX + "{,*" + TMP_SUFFIX + "}")) {
+      for (Path p : files) {
+        try {
+          result.add(new Entry(p, Files.readAttributes(p, BasicFileAttributes.class)));
+        } catch (NoSuchFileException e) {
+          // Deleted by someone else since listing
+        }
+      }
+    }
+    return result;
+  }
+
+  private static void touch(Path file) {
+    try {
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      // Only affects which entries are evicted first
+    }
+  }
+
+  Path file(GenerationCache.BytecodeKey key) {
+    StringBuilder sb = new StringBuilder(GENERATOR_DIGEST).append('\n').append(key.digest);
+    for (String m : key.config.methods) {
+      sb.append("\nm ").append(m);
+    }
+    for (String i : key.config.interfaces) {
+      sb.append("\ni ").append(i);
+    }
+    if (key.config.slim) {
+      sb.append("\nslim");
+    }
+    if (key.config.probes) {
+      sb.append("\nprobes");
+    }
+    return dir.resolve(GenerationCache.digest(sb.toString().getBytes(StandardCharsets.UTF_8)) + SUFFIX);
+  }
+
+  /*
+   * Entry format: magic, class internal name (modified UTF-8, as DataOutput.writeUTF), code length, code.
+   */
+  static byte[] encode(GenerationCache.Generated generated) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(generated.code.length + generated.name.length() + 16);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeUTF(generated.name);
+    out.writeInt(generated.code.length);
+    out.write(generated.code);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  static GenerationCache.Generated decode(ByteBuffer buf) {
+    try {
+      if (buf.getInt() != MAGIC) {
+        return null;
+      }
+
+      int nameLength = buf.getShort() & 0xffff;
+      byte[] name = new byte[nameLength + 2];
+      name[0] = (byte)(nameLength >> 8);
+      name[1] = (byte)nameLength;
+      buf.get(name, 2, nameLength);
+      byte[] code = new byte[buf.getInt()];
+      buf.get(code);
+      if (buf.hasRemaining()) {
+        return null;
+      }
+
+      return new GenerationCache.Generated(new DataInputStream(new ByteArrayInputStream(name)).readUTF(), code);
+    } catch (RuntimeException | IOException e) {
+      // Truncated (BufferUnderflowException), a silly length (NegativeArraySizeException) or a bad name
+      return null;
+    }
+  }
+
+  private static String generatorDigest() {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      for (Class<?> clz : GENERATOR_CLASSES) {
+        addClassBytes(bytes, clz);
+      }
+      return GenerationCache.digest(bytes.toByteArray());
+    } catch (IOException e) {
+      // Can't tell which generator this is, so don't share with anyone else.
+      return "unknown-" + System.nanoTime();
+    }
+  }
+
+  private static void addClassBytes(ByteArrayOutputStream bytes, Class<?> clz) throws IOException {
+    bytes.write(PFTGen.readClassBytes(clz));
+    for (Class<?> nested : clz.getDeclaredClasses()) {
+      addClassBytes(bytes, nested);
+    }
+    // Anonymous classes aren't declared, but javac numbers them from 1 within each class.
+    for (int i = 1; ; i++) {
+      Class<?> anonymous;
+      try {
+        anonymous = Class.forName(clz.getName() + "$" + i, false, clz.getClassLoader());
+      } catch (ClassNotFoundException e) {
+        break;
+      }
+      addClassBytes(bytes, anonymous);
+    }
+  }
+}
@@ -0,0 +1,440 @@
+package com.ilamstone.publicfortests;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+
+/*
+ * A summary of a class file, split into the code of each method and everything else, so two versions of a
+ * class can be compared method by method. Debug info and frames are left out, as neither survives into testing
+ * classes that have their frames computed (which are the only ones regenerated incrementally).
+ *
+ * The `header` covers the class itself, its annotations, its fields and the headers (access, name,
+ * descriptor, signature, exceptions and annotations) of all of its methods; if that's the same for two
+ * versions, they have exactly the same members, {@literal @}PublicForTests and all, and only method code
+ * can differ.
+ *
+ * The header is written out compactly, and method code hashed, as they're visited. Printing them (e.g.
+ * with a `Textifier`) costs more than the frames that comparing them saves. Strings are length-prefixed,
+ * so different headers never come out the same.
+ */
+final class Fingerprint {
+  final String header;
+
+  /*
+   * A hash of each method's code (see {@link CodeVisitor}), by name + descriptor. Null for code that can't
+   * be compared, which always counts as changed.
+   */
+  final Map<String, long[]> methods;
+
+  private Fingerprint(String header, Map<String, long[]> methods) {
+    this.header = header;
+    this.methods = methods;
+  }
+
+  static Fingerprint of(ClassReader reader) {
+    Scanner scanner = new Scanner();
+    reader.accept(scanner, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+    Map<String, long[]> methods = new HashMap<String, long[]>();
+    for (Map.Entry<String, CodeVisitor> e : scanner.methods.entrySet()) {
+      methods.put(e.getKey(), e.getValue().comparable ? e.getValue().hash() : null);
+    }
+    return new Fingerprint(scanner.header.toString(), methods);
+  }
+
+  /*
+   * @return The methods whose code differs from that in `previous`, as name + descriptor, or `null` if
+   *         the headers differ (so the classes can't be compared method by method).
+   */
+  Set<String> changedMethods(Fingerprint previous) {
+    if (!header.equals(previous.header)) {
+      return null;
+    }
+
+    Set<String> result = new HashSet<String>();
+    for (Map.Entry<String, long[]> e : methods.entrySet()) {
+      if (e.getValue() == null || !Arrays.equals(e.getValue(), previous.methods.get(e.getKey()))) {
+        result.add(e.getKey());
+      }
+    }
+    return result;
+  }
+
+  static StringBuilder add(StringBuilder sb, int i) {
+    return sb.append(' ').append(i);
+  }
+
+  static StringBuilder add(StringBuilder sb, String s) {
+    return s == null ? sb.append(" -") : sb.append(' ').append(s.length()).append(':').append(s);
+  }
+
+  static StringBuilder add(StringBuilder sb, String[] strings) {
+    add(sb, strings == null ? -1 : strings.length);
+    if (strings != null) {
+      for (String s : strings) {
+        add(sb, s);
+      }
+    }
+    return sb;
+  }
+
+  /*
+   * Add a constant (from `ldc`, a bootstrap method argument, an annotation or a field initializer).
+   */
+  static StringBuilder add(StringBuilder sb, Object constant) {
+    if (constant instanceof Type) {
+      return add(sb, "T" + ((Type)constant).getDescriptor());
+    } else if (constant instanceof Handle) {
+      Handle h = (Handle)constant;
+      add(sb, "H" + h.getTag());
+      return add(add(add(add(sb, h.getOwner()), h.getName()), h.getDesc()), h.isInterface() ? 1 : 0);
+    } else if (constant != null && constant.getClass().isArray()) {
+      // Primitive arrays, in annotations
+      add(add(sb, constant.getClass().getName()), Array.getLength(constant));
+      for (int i = 0; i < Array.getLength(constant); i++) {
+        add(sb, String.valueOf(Array.get(constant, i)));
+      }
+      return sb;
+    } else if (constant instanceof String) {
+      return add(sb.append(" L"), (String)constant);
+    } else {
+      // Boxed primitives; the tag tells e.g. 1 from 1L apart.
+      return sb.append(' ').append(tag(constant)).append(constant);
+    }
+  }
+
+  private static char tag(Object boxed) {
+    if (boxed instanceof Integer) {
+      return 'I';
+    } else if (boxed instanceof Long) {
+      return 'J';
+    } else if (boxed instanceof Float) {
+      return 'F';
+    } else if (boxed instanceof Double) {
+      return 'D';
+    } else if (boxed instanceof Boolean) {
+      return 'Z';
+    } else if (boxed instanceof Character) {
+      return 'C';
+    } else if (boxed instanceof Byte) {
+      return 'B';
+    } else if (boxed instanceof Short) {
+      return 'S';
+    }
+    // Null, for a field without a constant value
+    return '-';
+  }
+
+  /*
+   * Writes an annotation's values.
+   */
+  static final class AnnotationWriter extends AnnotationVisitor {
+    final StringBuilder sb;
+
+    AnnotationWriter(StringBuilder sb) {
+      super(Opcodes.ASM5);
+      this.sb = sb;
+    }
+
+    static AnnotationWriter start(StringBuilder sb, String kind, String desc, boolean visible) {
+      add(add(add(sb.append('\n'), kind), desc), visible ? 1 : 0);
+      return new AnnotationWriter(sb);
+    }
+
+    @Override
+    public void visit(String name, Object value) {
+      add(add(sb, name), value);
+    }
+
+    @Override
+    public void visitEnum(String name, String desc, String value) {
+      add(add(add(add(sb, "E"), name), desc), value);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String name, String desc) {
+      add(add(add(sb, "@"), name), desc);
+      return this;
+    }
+
+    @Override
+    public AnnotationVisitor visitArray(String name) {
+      add(add(sb, "["), name);
+      return this;
+    }
+
+    @Override
+    public void visitEnd() {
+      add(sb, "]");
+    }
+  }
+
+  /*
+   * Writes everything but method code into `header`, and hands each method's code to a {@link CodeVisitor}.
+   */
+  static final class Scanner extends ClassVisitor {
+    final StringBuilder header = new StringBuilder();
+    final Map<String, CodeVisitor> methods = new HashMap<String, CodeVisitor>();
+
+    Scanner() {
+      super(Opcodes.ASM5);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+      add(add(add(add(add(add(header, version), access), name), signature), superName), interfaces);
+    }
+
+    @Override
+    public void visitOuterClass(String owner, String name, String desc) {
+      add(add(add(add(header.append('\n'), "outer"), owner), name), desc);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+      return AnnotationWriter.start(header, "@", desc, visible);
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+      return AnnotationWriter.start(add(add(header, typeRef), String.valueOf(typePath)), "@T", desc, visible);
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+      add(add(add(add(add(header.append('\n'), "inner"), name), outerName), innerName), access);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+      add(add(add(add(add(add(header.append('\n'), "field"), access), name), desc), signature), value);
+      return new FieldVisitor(Opcodes.ASM5) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+          return AnnotationWriter.start(header, "@", desc, visible);
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+          return AnnotationWriter.start(add(add(header, typeRef), String.valueOf(typePath)), "@T", desc, visible);
+        }
+      };
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+      add(add(add(add(add(add(header.append('\n'), "method"), access), name), desc), signature), exceptions);
+      CodeVisitor code = new CodeVisitor(header);
+      methods.put(name + desc, code);
+      return code;
+    }
+  }
+
+  /*
+   * Hashes a method's code: each instruction's opcode and operands, with labels numbered in the order
+   * they're first seen (so the same code always hashes the same). The hash is two independently-mixed
+   * 64-bit halves, so unequal code all but never collides. The method's annotations and parameters go in
+   * the class's header.
+   */
+  static final class CodeVisitor extends MethodVisitor {
+    final StringBuilder header;
+    boolean comparable = true;
+    private long h1 = 17;
+    private long h2 = 37;
+    private int labels;
+
+    CodeVisitor(StringBuilder header) {
+      super(Opcodes.ASM5);
+      this.header = header;
+    }
+
+    long[] hash() {
+      return new long[] { h1, h2 };
+    }
+
+    private CodeVisitor mix(long x) {
+      h1 = (h1 ^ x) * 0x9E3779B97F4A7C15L;
+      h1 ^= h1 >>> 29;
+      h2 = Long.rotateLeft(h2 + x * 0xC2B2AE3D27D4EB4FL, 31) * 0x165667B19E3779F9L;
+      return this;
+    }
+
+    private CodeVisitor mix(String s) {
+      if (s == null) {
+        return mix(-1);
+      }
+      mix(s.length());
+      for (int i = 0; i < s.length(); i++) {
+        mix(s.charAt(i));
+      }
+      return this;
+    }
+
+    private CodeVisitor mix(Label label) {
+      // Labels are new for each method visited, so `info` is free for numbering them.
+      if (label.info == null) {
+        label.info = labels++;
+      }
+      return mix(((Integer)label.info).intValue());
+    }
+
+    private CodeVisitor mix(Object constant) {
+      if (constant instanceof Type) {
+        return mix('T').mix(((Type)constant).getDescriptor());
+      } else if (constant instanceof Handle) {
+        Handle h = (Handle)constant;
+        return mix('H').mix(h.getTag()).mix(h.getOwner()).mix(h.getName()).mix(h.getDesc()).mix(h.isInterface() ? 1 : 0);
+      } else if (constant instanceof String) {
+        return mix('L').mix((String)constant);
+      } else if (constant instanceof Long) {
+        return mix('J').mix(((Long)constant).longValue());
+      } else if (constant instanceof Float) {
+        return mix('F').mix(Float.floatToRawIntBits((Float)constant));
+      } else if (constant instanceof Double) {
+        return mix('D').mix(Double.doubleToRawLongBits((Double)constant));
+      } else {
+        return mix('I').mix(((Integer)constant).intValue());
+      }
+    }
+
+    private CodeVisitor op(int opcode) {
+      return mix(0x10000 + opcode);
+    }
+
+    @Override
+    public void visitParameter(String name, int access) {
+      add(add(header, name), access);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotationDefault() {
+      return AnnotationWriter.start(header, "default", null, true);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+      return AnnotationWriter.start(header, "@", desc, visible);
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+      return AnnotationWriter.start(add(add(header, typeRef), String.valueOf(typePath)), "@T", desc, visible);
+    }
+
+    @Override
+    public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+      return AnnotationWriter.start(add(header, parameter), "@P", desc, visible);
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+      op(opcode);
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+      op(opcode).mix(operand);
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int var) {
+      op(opcode).mix(var);
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+      op(opcode).mix(type);
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+      op(opcode).mix(owner).mix(name).mix(desc);
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+      op(opcode).mix(owner).mix(name).mix(desc).mix(itf ? 1 : 0);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+      op(Opcodes.INVOKEDYNAMIC).mix(name).mix(desc).mix((Object)bsm).mix(bsmArgs.length);
+      for (Object arg : bsmArgs) {
+        mix(arg);
+      }
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+      op(opcode).mix(label);
+    }
+
+    @Override
+    public void visitLabel(Label label) {
+      op(-1).mix(label);
+    }
+
+    @Override
+    public void visitLdcInsn(Object cst) {
+      op(Opcodes.LDC).mix(cst);
+    }
+
+    @Override
+    public void visitIincInsn(int var, int increment) {
+      op(Opcodes.IINC).mix(var).mix(increment);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+      op(Opcodes.TABLESWITCH).mix(min).mix(max).mix(dflt);
+      for (Label label : labels) {
+        mix(label);
+      }
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+      op(Opcodes.LOOKUPSWITCH).mix(dflt).mix(keys.length);
+      for (int i = 0; i < keys.length; i++) {
+        mix(keys[i]).mix(labels[i]);
+      }
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String desc, int dims) {
+      op(Opcodes.MULTIANEWARRAY).mix(desc).mix(dims);
+    }
+
+    @Override
+    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+      op(-2).mix(start).mix(end).mix(handler).mix(type);
+    }
+
+    @Override
+    public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+      // Rare enough not to be worth comparing.
+      comparable = false;
+      return null;
+    }
+
+    @Override
+    public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+      return visitInsnAnnotation(typeRef, typePath, desc, visible);
+    }
+  }
+}
@@ -0,0 +1,885 @@
+package com.ilamstone.publicfortests;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.objectweb.asm.Type;
+
+/*
+ * Two-tier cache for generated testing classes.
+ *
+ * The first tier holds transformed bytecode, keyed on a digest of the original class bytes together
+ * with the extra methods and interfaces that were asked for. It is bounded, and evicts the least
+ * recently used entry once it grows past `maxEntries`.
+ *
+ * The second tier holds the `Class` objects that were defined from that bytecode. It hangs off the
+ * original class (through a `ClassValue`) and is keyed weakly on the `ClassLoader` the testing class
+ * was defined in, so entries go away along with their loader. Since a defined class lives as long as
+ * its loader anyway (or, for hidden classes, goes as soon as nobody uses it), this tier is not
+ * size-bounded.
+ *
+ * Optionally, a {@link DiskCache} sits behind the first tier, so bytecode can be shared between JVMs.
+ *
+ * When `watching` (the `publicfortests.watch` system property), a hit in the second tier first checks
+ * whether the original's class file has changed since (its modification time, then a digest of its bytes),
+ * e.g. because it was recompiled by an IDE while the JVM runs. If it has, that class's testing classes are
+ * dropped, and a new one generated from the new bytes. To make that cheaper, while watching, the
+ * bytecode last generated for each original class name and `Config` is kept (within `maxEntries`) for a
+ * {@link Regenerator}, which can reuse whatever didn't change.
+ *
+ * Nothing is locked while bytecode is generated, so different classes (and configurations) generate in
+ * parallel. Concurrent requests for the same bytecode share a single in-flight generation. Defining is
+ * done under a lock striped on the target loader, so only one class is defined into a given loader at once,
+ * and the check for an existing class and the define can't race.
+ */
+class GenerationCache {
+  static final String MAX_ENTRIES_PROPERTY = "publicfortests.cache.maxEntries";
+  static final String WATCH_PROPERTY = "publicfortests.watch";
+  static final int DEFAULT_MAX_ENTRIES = 512;
+
+  /* Hex digits of the key digest used in generated class names */
+  static final int NAME_HASH_LENGTH = 20;
+
+  /* How many times to try defining under a new name, when a name turns out to be taken in the target loader */
+  static final int MAX_DEFINE_ATTEMPTS = 16;
+
+  /* Number of define locks; a power of two */
+  static final int DEFINE_LOCK_STRIPES = 64;
+
+  /*
+   * The extra methods and interfaces for a single request, reduced to sorted sets of strings so
+   * they can be compared and hashed cheaply, and whether the testing class should be slim or have probes.
+   */
+  static final class Config {
+    final SortedSet<String> methods = new TreeSet<String>();
+    final SortedSet<String> interfaces = new TreeSet<String>();
+    final boolean slim;
+    final boolean probes;
+
+    /*
+     * Whether there are no extras. A pre-generated class can stand in for these, slim or not: it has
+     * everything a slim class would. It has no probes, though.
+     */
+    boolean isEmpty() {
+      return methods.isEmpty() && interfaces.isEmpty() && !probes;
+    }
+
+    Config(Set<Method> extraMethods, Set<Class<?>> extraInterfaces, PFTOptions options) {
+      this.slim = options.isSlim();
+      this.probes = options.hasProbes();
+      if (extraMethods != null) {
+        for (Method m : extraMethods) {
+          methods.add(m.getName() + Type.getMethodDescriptor(m));
+        }
+      }
+
+      if (extraInterfaces != null) {
+        for (Class<?> iface : extraInterfaces) {
+          interfaces.add(iface.getName());
+        }
+      }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Config)) {
+        return false;
+      }
+      Config other = (Config)obj;
+      return methods.equals(other.methods) && interfaces.equals(other.interfaces) && slim == other.slim && probes == other.probes;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * methods.hashCode() + interfaces.hashCode()) + (slim ? 1 : 0) + (probes ? 2 : 0);
+    }
+  }
+
+  /*
+   * Key for the bytecode tier: a digest of the original class bytes, plus the request `Config`.
+   */
+  static final class BytecodeKey {
+    final String digest;
+    final Config config;
+
+    BytecodeKey(String digest, Config config) {
+      this.digest = digest;
+      this.config = config;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof BytecodeKey)) {
+        return false;
+      }
+      BytecodeKey other = (BytecodeKey)obj;
+      return digest.equals(other.digest) && config.equals(other.config);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * digest.hashCode() + config.hashCode();
+    }
+
+    /*
+     * The name suffix for the testing class generated for this key. It depends only on the key (and,
+     * for classes that have to be renamed because the name is taken, the attempt), so the same inputs
+     * get the same name in every JVM.
+     */
+    String nameHash(int attempt) {
+      String inputs = digest + config.methods + config.interfaces + (config.slim ? "slim" : "") + (config.probes ? "probes" : "");
+      String hash = digest(inputs.getBytes(StandardCharsets.UTF_8)).substring(0, NAME_HASH_LENGTH);
+      return attempt == 0 ? hash : hash + "_" + attempt;
+    }
+
+    /*
+     * The attempt a testing class (internal) name, from {@link #nameHash(int)}, was made for.
+     */
+    static int attemptOf(String internalName) {
+      int underscore = internalName.indexOf('_', internalName.lastIndexOf('$') + 1);
+      return underscore < 0 ? 0 : Integer.parseInt(internalName.substring(underscore + 1));
+    }
+  }
+
+  /*
+   * Key for the defined-class tier, within a given loader: the request `Config` plus how the class
+   * was defined.
+   */
+  static final class DefinedKey {
+    final Config config;
+    final DefineStrategy strategy;
+
+    DefinedKey(Config config, DefineStrategy strategy) {
+      this.config = config;
+      this.strategy = strategy;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof DefinedKey)) {
+        return false;
+      }
+      DefinedKey other = (DefinedKey)obj;
+      return config.equals(other.config) && strategy == other.strategy;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * config.hashCode() + strategy.hashCode();
+    }
+  }
+
+  /*
+   * Generated bytecode, along with the (internal) name of the class it defines.
+   */
+  static final class Generated {
+    final String name;
+    final byte[] code;
+
+    Generated(String name, byte[] code) {
+      this.name = name;
+      this.code = code;
+    }
+  }
+
+  /*
+   * The last bytecode generated for an original class name and `Config`, with the original bytes it was
+   * generated from.
+   */
+  static final class Previous {
+    final byte[] original;
+    final Generated generated;
+
+    Previous(byte[] original, Generated generated) {
+      this.original = original;
+      this.generated = generated;
+    }
+  }
+
+  /*
+   * Per-original-class state. The defined classes are only weakly held, as are the loaders they
+   * live in, so nothing here keeps either alive.
+   */
+  static final class PerClass {
+    final WeakHashMap<ClassLoader, Map<DefinedKey, WeakReference<Class<?>>>> defined =
+        new WeakHashMap<ClassLoader, Map<DefinedKey, WeakReference<Class<?>>>>();
+    final Set<BytecodeKey> bytecodeKeys = new HashSet<BytecodeKey>();
+
+    /*
+     * When watching: the original's class file (null if it isn't in a file or a jar), when that was last
+     * modified, and the digest of the bytes last generated from (null if not known, e.g. for pre-generated
+     * classes). `changed` is set once the class file no longer matches the loaded class.
+     */
+    File classFile;
+    long modified;
+    String digest;
+    boolean changed;
+    private boolean watched;
+
+    /*
+     * Start watching the original class's file, from its current state, as having been generated from bytes
+     * with the given digest.
+     */
+    void watch(Class<?> clz, String digest) {
+      if (!watched) {
+        watched = true;
+        classFile = classFile(clz);
+      }
+      if (classFile != null) {
+        modified = classFile.lastModified();
+        this.digest = digest;
+      }
+    }
+
+    /*
+     * Whether the original's class file now has different bytes to those last generated from. The bytes
+     * are only read if its modification time has changed.
+     */
+    boolean changedSince(Request request) {
+      if (classFile == null || classFile.lastModified() == modified) {
+        return false;
+      }
+      modified = classFile.lastModified();
+
+      // The source most likely still has the old bytes.
+      request.source.invalidate(request.clz);
+      String now;
+      try {
+        now = digest(PFTGen.readClassBytes(request.clz, request.source));
+      } catch (IOException e) {
+        // Probably mid-write; it'll get another modification time when it's done.
+        return false;
+      }
+      if (now.equals(digest)) {
+        return false;
+      }
+      digest = now;
+      changed = true;
+      return true;
+    }
+
+    Class<?> lookup(ClassLoader loader, DefinedKey key) {
+      Map<DefinedKey, WeakReference<Class<?>>> classes = defined.get(loader);
+      if (classes != null) {
+        WeakReference<Class<?>> ref = classes.get(key);
+        if (ref != null) {
+          return ref.get();
+        }
+      }
+      return null;
+    }
+
+    void store(ClassLoader loader, DefinedKey key, Class<?> clz) {
+      Map<DefinedKey, WeakReference<Class<?>>> classes = defined.get(loader);
+      if (classes == null) {
+        classes = new HashMap<DefinedKey, WeakReference<Class<?>>>();
+        defined.put(loader, classes);
+      }
+      classes.put(key, new WeakReference<Class<?>>(clz));
+    }
+  }
+
+  /*
+   * Supplies freshly generated bytecode on a cache miss, for a testing class with the given (internal) name.
+   */
+  interface Generator {
+    Generated generate(Class<?> clz, byte[] original, String name, Set<Method> extraMethods, Set<Class<?>> extraInterfaces, PFTOptions options);
+  }
+
+  /*
+   * Regenerates bytecode for an original class that has changed, from the bytecode generated for an earlier
+   * version of it (with the same `Config`), when that's cheaper than generating from scratch.
+   */
+  interface Regenerator {
+    /*
+     * @return The bytecode, or `null` if it needs to be generated from scratch.
+     */
+    Generated regenerate(Class<?> clz, byte[] original, String name, Set<Method> extraMethods, Set<Class<?>> extraInterfaces, PFTOptions options,
+                         byte[] previousOriginal, Generated previous);
+  }
+
+  /*
+   * Defines generated bytecode in the given loader.
+   */
+  interface Definer {
+    Class<?> define(ClassLoader loader, Class<?> original, Generated generated, DefineStrategy strategy);
+  }
+
+  /*
+   * Finds an existing, pre-generated, testing class for the default configuration, generated from the
+   * original class file that `source` has.
+   */
+  interface Locator {
+    Class<?> locate(ClassLoader loader, Class<?> original, ClassBytesSource source);
+  }
+
+  /*
+   * For each loader, the first attempt (see {@link BytecodeKey#nameHash(int)}) at naming a testing class for 
+   * each key that isn't known to be taken there, for a single original class. Names stay taken for as long 
+   * as the loader lives, whatever is invalidated and whichever cache took them, so these are shared by every
+   * cache and never cleared.
+   */
+  static final class TakenNames {
+    private final WeakHashMap<ClassLoader, Map<BytecodeKey, Integer>> nextAttempts =
+        new WeakHashMap<ClassLoader, Map<BytecodeKey, Integer>>();
+
+    synchronized int nextAttempt(ClassLoader loader, BytecodeKey key) {
+      Map<BytecodeKey, Integer> attempts = nextAttempts.get(loader);
+      Integer next = attempts == null ? null : attempts.get(key);
+      return next == null ? 0 : next;
+    }
+
+    synchronized void taken(ClassLoader loader, BytecodeKey key, int attempt) {
+      Map<BytecodeKey, Integer> attempts = nextAttempts.get(loader);
+      if (attempts == null) {
+        attempts = new HashMap<BytecodeKey, Integer>();
+        nextAttempts.put(loader, attempts);
+      }
+      attempts.merge(key, attempt + 1, Math::max);
+    }
+  }
+
+  private static final ClassValue<TakenNames> takenNames = new ClassValue<TakenNames>() {
+    @Override
+    protected TakenNames computeValue(Class<?> type) {
+      return new TakenNames();
+    }
+  };
+
+  private static ClassValue<PerClass> newPerClassValue() {
+    return new ClassValue<PerClass>() {
+      @Override
+      protected PerClass computeValue(Class<?> type) {
+        return new PerClass();
+      }
+    };
+  }
+
+  final int maxEntries;
+  final LongAdder hits = new LongAdder();
+  final LongAdder pregeneratedHits = new LongAdder();
+  final LongAdder bytecodeHits = new LongAdder();
+  final LongAdder misses = new LongAdder();
+  final LongAdder evictions = new LongAdder();
+  final LongAdder changes = new LongAdder();
+  final LongAdder regenerations = new LongAdder();
+
+  /* Whether to check for changed class files; see above */
+  volatile boolean watching = Boolean.getBoolean(WATCH_PROPERTY);
+
+  private volatile ClassValue<PerClass> perClass = newPerClassValue();
+  private final LinkedHashMap<BytecodeKey, Generated> bytecode;
+
+  /* By original class name, then `Config`. Guarded by the lock on `bytecode` */
+  private final LinkedHashMap<String, Map<Config, Previous>> previous;
+  private final ConcurrentHashMap<BytecodeKey, CompletableFuture<Generated>> inFlight = new ConcurrentHashMap<BytecodeKey, CompletableFuture<Generated>>();
+  private final Object[] defineLocks = new Object[DEFINE_LOCK_STRIPES];
+  private final Generator generator;
+  private final Definer definer;
+  private final Locator locator;
+  private final Regenerator regenerator;
+  final DiskCache disk;
+
+  GenerationCache(int maxEntries, Generator generator, Definer definer, Locator locator) {
+    this(maxEntries, generator, definer, locator, null);
+  }
+
+  /*
+   * @param disk A persistent cache to check before generating, and to store generated bytecode in. May be null.
+   */
+  GenerationCache(int maxEntries, Generator generator, Definer definer, Locator locator, DiskCache disk) {
+    this(maxEntries, generator, definer, locator, disk, null);
+  }
+
+  /*
+   * @param regenerator Tried before `generator` when there's earlier bytecode for the same class name. May be null.
+   */
+  GenerationCache(int maxEntries, Generator generator, Definer definer, Locator locator, DiskCache disk, Regenerator regenerator) {
+    this.maxEntries = maxEntries;
+    this.disk = disk;
+    this.generator = generator;
+    this.definer = definer;
+    this.locator = locator;
+    this.regenerator = regenerator;
+    for (int i = 0; i < defineLocks.length; i++) {
+      defineLocks[i] = new Object();
+    }
+    this.bytecode = new LinkedHashMap<BytecodeKey, Generated>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<BytecodeKey, Generated> eldest) {
+        if (size() > GenerationCache.this.maxEntries) {
+          evictions.increment();
+          return true;
+        } else {
+          return false;
+        }
+      }
+    };
+    this.previous = new LinkedHashMap<String, Map<Config, Previous>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Map<Config, Previous>> eldest) {
+        return size() > GenerationCache.this.maxEntries;
+      }
+    };
+  }
+
+  /*
+   * A single request for a testing class, with its keys worked out.
+   */
+  final class Request {
+    final ClassLoader loader;
+    final Class<?> clz;
+    final Set<Method> extraMethods;
+    final Set<Class<?>> extraInterfaces;
+    final DefineStrategy strategy;
+    final ClassBytesSource source;
+    final PFTOptions options;
+    final Config config;
+    final DefinedKey definedKey;
+    final ClassLoader target;
+    final PerClass pc;
+
+    /*
+     * The trace in `options` is ignored; traced testing classes don't go through the cache.
+     */
+    Request(ClassLoader loader, Class<?> clz, Set<Method> extraMethods, Set<Class<?>> extraInterfaces, PFTOptions options) {
+      this.loader = loader;
+      this.clz = clz;
+      this.extraMethods = extraMethods;
+      this.extraInterfaces = extraInterfaces;
+      this.strategy = options.getDefineStrategy();
+      this.source = options.getClassBytesSource();
+      this.options = options;
+      this.config = new Config(extraMethods, extraInterfaces, options);
+      this.definedKey = new DefinedKey(config, strategy);
+      this.target = strategy.targetLoader(loader, clz);
+      this.pc = perClass.get(clz);
+    }
+  }
+
+  /*
+   * Bytecode for a request, either from the bytecode tier or freshly generated.
+   */
+  static final class Prepared {
+    final byte[] original;
+    final BytecodeKey key;
+    final Generated generated;
+    final boolean cached;
+
+    Prepared(byte[] original, BytecodeKey key, Generated generated, boolean cached) {
+      this.original = original;
+      this.key = key;
+      this.generated = generated;
+      this.cached = cached;
+    }
+  }
+
+  /*
+   * Get the testing class for the given request, generating and/or defining it only if it is not
+   * already cached.
+   *
+   * @throws IOException If the original class bytes need to be read, and cannot be.
+   */
+  Class<?> get(ClassLoader loader, Class<?> clz, Set<Method> extraMethods, Set<Class<?>> extraInterfaces, DefineStrategy strategy) throws IOException {
+    return get(new Request(loader, clz, extraMethods, extraInterfaces, PFTOptions.DEFAULT.withDefineStrategy(strategy)));
+  }
+
+  /*
+   * As {@link #get(ClassLoader, Class, Set, Set, DefineStrategy)}, for an already-built request.
+   */
+  Class<?> get(Request request) throws IOException {
+    synchronized (request.pc) {
+      Class<?> result = existing(request);
+      if (result != null) {
+        return result;
+      }
+    }
+    return define(request, prepare(request));
+  }
+
+  /*
+   * Get testing classes for many requests at once. The bytecode for any requests that aren't already
+   * defined is read and generated in parallel (in the common fork-join pool), and then defined in order,
+   * on the calling thread.
+   *
+   * @param requests The requests. Results are keyed on these.
+   * @param results Populated with the testing class for each request that succeeded.
+   * @param failures Populated with the exception for each request that failed.
+   */
+  void getAll(List<Request> requests, Map<Request, Class<?>> results, Map<Request, Throwable> failures) {
+    List<Request> needed = new ArrayList<Request>();
+    for (Request request : requests) {
+      synchronized (request.pc) {
+        Class<?> result = existing(request);
+        if (result != null) {
+          results.put(request, result);
+        } else {
+          needed.add(request);
+        }
+      }
+    }
+
+    // Read, scan, transform and write in parallel. This is the expensive, CPU-bound, part.
+    List<Object> prepared = needed.parallelStream().map(request -> {
+      try {
+        return (Object)prepare(request);
+      } catch (Exception | LinkageError e) {
+        return e;
+      }
+    }).collect(Collectors.toList());
+
+    // Define in order. Defining may load other classes (interfaces, superclasses), so keeping this on
+    // one thread keeps class loading order the same as for one-at-a-time calls.
+    for (int i = 0; i < needed.size(); i++) {
+      Request request = needed.get(i);
+      Object p = prepared.get(i);
+
+      if (p instanceof Throwable) {
+        failures.put(request, (Throwable)p);
+      } else {
+        try {
+          results.put(request, define(request, (Prepared)p));
+        } catch (Exception | LinkageError e) {
+          failures.put(request, e);
+        }
+      }
+    }
+  }
+
+  /*
+   * Find an already-defined, or pre-generated, testing class for the request. Must be called
+   * holding the lock on `request.pc`.
+   *
+   * @return The class, or `null` if there isn't one.
+   */
+  private Class<?> existing(Request request) {
+    Class<?> result = request.pc.lookup(request.target, request.definedKey);
+    if (result != null && watching && request.pc.changedSince(request)) {
+      // Everything defined so far, for every loader and config, came from the old bytes.
+      changes.increment();
+      request.pc.defined.clear();
+      result = null;
+    }
+    if (result != null) {
+      hits.increment();
+      return result;
+    }
+
+    // Pre-generated classes are defined in the normal way, so can't stand in for hidden ones. Nor, once
+    // the class file has changed, for the new version.
+    if (request.config.isEmpty() && request.strategy != DefineStrategy.HIDDEN && !request.pc.changed) {
+      result = locator.locate(request.target, request.clz, request.source);
+      if (result != null) {
+        pregeneratedHits.increment();
+        request.pc.store(request.target, request.definedKey, result);
+        if (watching) {
+          request.pc.watch(request.clz, null);
+        }
+        return result;
+      }
+    }
+
+    return null;
+  }
+
+  /*
+   * Get bytecode for the request, from the bytecode tier if possible. This doesn't touch any
+   * per-class state (the next name to try is kept separately), so can be called without holding any locks.
+   *
+   * Only one thread generates (or reads from disk) the bytecode for a given key at once. Any others
+   * asking for it meanwhile wait for, and share, its result.
+   */
+  private Prepared prepare(Request request) throws IOException {
+    byte[] original = PFTGen.readClassBytes(request.clz, request.source);
+    BytecodeKey key = new BytecodeKey(digest(original), request.config);
+
+    Generated generated = cached(key);
+    if (generated != null) {
+      return new Prepared(original, key, generated, true);
+    }
+
+    CompletableFuture<Generated> mine = new CompletableFuture<Generated>();
+    CompletableFuture<Generated> theirs = inFlight.putIfAbsent(key, mine);
+    if (theirs != null) {
+      return new Prepared(original, key, await(theirs), true);
+    }
+
+    try {
+      // Another thread may have finished generating between the check above and taking the key.
+      generated = cached(key);
+      if (generated == null && disk != null) {
+        generated = disk.get(key);
+        if (generated != null) {
+          synchronized (bytecode) {
+            bytecode.put(key, generated);
+          }
+        }
+      }
+
+      Prepared prepared;
+      if (generated != null) {
+        prepared = new Prepared(original, key, generated, true);
+      } else {
+        misses.increment();
+        prepared = new Prepared(original, key, generate(request, original, key, takenNames.get(request.clz).nextAttempt(request.target, key)), false);
+      }
+      mine.complete(prepared.generated);
+      return prepared;
+    } catch (RuntimeException | Error e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, mine);
+    }
+  }
+
+  private Generated cached(BytecodeKey key) {
+    synchronized (bytecode) {
+      return bytecode.get(key);
+    }
+  }
+
+  /*
+   * Wait for another thread's generation, failing the same way it did.
+   */
+  private static Generated await(CompletableFuture<Generated> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException)e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error)e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private Generated generate(Request request, byte[] original, BytecodeKey key, int attempt) {
+    String name = PFTGen.newClassInternalName(request.clz, key.nameHash(attempt));
+    Generated generated = null;
+
+    // Earlier results are only kept, and used, while watching.
+    boolean incremental = watching && regenerator != null;
+    Previous last = null;
+    if (incremental) {
+      synchronized (bytecode) {
+        Map<Config, Previous> byConfig = previous.get(request.clz.getName());
+        last = byConfig == null ? null : byConfig.get(key.config);
+      }
+    }
+    if (last != null) {
+      generated = regenerator.regenerate(request.clz, original, name, request.extraMethods, request.extraInterfaces, request.options, last.original, last.generated);
+      if (generated != null) {
+        regenerations.increment();
+      }
+    }
+    if (generated == null) {
+      generated = generator.generate(request.clz, original, name, request.extraMethods, request.extraInterfaces, request.options);
+    }
+
+    synchronized (bytecode) {
+      bytecode.put(key, generated);
+      if (incremental) {
+        previous.computeIfAbsent(request.clz.getName(), n -> new HashMap<Config, Previous>()).put(key.config, new Previous(original, generated));
+      }
+    }
+    if (disk != null) {
+      disk.put(key, generated);
+    }
+    return generated;
+  }
+
+  /*
+   * Define the prepared bytecode and record the result, unless another thread got there first.
+   */
+  private Class<?> define(Request request, Prepared prepared) {
+    synchronized (defineLock(request.target)) {
+      synchronized (request.pc) {
+        Class<?> result = request.pc.lookup(request.target, request.definedKey);
+        if (result != null) {
+          hits.increment();
+          return result;
+        }
+        return defineNew(request, prepared);
+      }
+    }
+  }
+
+  /*
+   * Must be called holding the define lock for the target loader, and the lock on `request.pc`.
+   */
+  private Class<?> defineNew(Request request, Prepared prepared) {
+    Generated generated = prepared.generated;
+    boolean cached = prepared.cached;
+    Class<?> result = null;
+
+    // Hidden classes don't take their names, so any will do.
+    boolean hidden = request.strategy == DefineStrategy.HIDDEN;
+    int attempt = BytecodeKey.attemptOf(generated.name);
+    int next = takenNames.get(request.clz).nextAttempt(request.target, prepared.key);
+    if (!hidden && attempt < next) {
+      // Cached bytecode, named for another loader, that this one already has a class of the same name for
+      // (from before an invalidate).
+      attempt = next;
+      generated = generate(request, prepared.original, prepared.key, attempt);
+      cached = false;
+    }
+
+    for (int tries = 1; result == null; tries++) {
+      try {
+        result = definer.define(request.loader, request.clz, generated, request.strategy);
+        if (cached) {
+          bytecodeHits.increment();
+        }
+      } catch (LinkageError e) {
+        if (hidden || tries >= MAX_DEFINE_ATTEMPTS || !isLoaded(request.target, generated.name)) {
+          throw e;
+        }
+        // The name was taken without any cache knowing: through an identical original class, say. Generate
+        // afresh under the next free one.
+        attempt = freeAttempt(request, prepared.key, attempt + 1);
+        generated = generate(request, prepared.original, prepared.key, attempt);
+        cached = false;
+      }
+    }
+
+    if (!hidden) {
+      takenNames.get(request.clz).taken(request.target, prepared.key, attempt);
+    }
+    request.pc.bytecodeKeys.add(prepared.key);
+    request.pc.store(request.target, request.definedKey, result);
+    if (watching) {
+      request.pc.watch(request.clz, prepared.key.digest);
+    }
+    return result;
+  }
+
+  /*
+   * Drop everything cached for the given original class. What was last generated for its name is kept
+   * to regenerate from, as it's usually dropped because the class has changed.
+   */
+  void invalidate(Class<?> clz) {
+    PerClass pc = perClass.get(clz);
+    synchronized (pc) {
+      synchronized (bytecode) {
+        bytecode.keySet().removeAll(pc.bytecodeKeys);
+      }
+      pc.bytecodeKeys.clear();
+      pc.defined.clear();
+    }
+  }
+
+  /*
+   * Drop everything. Swapping the `ClassValue` out orphans all the per-class state at once,
+   * so there is no need to track which classes have been seen.
+   */
+  void invalidateAll() {
+    perClass = newPerClassValue();
+    synchronized (bytecode) {
+      bytecode.clear();
+      previous.clear();
+    }
+  }
+
+  /*
+   * The first attempt, from `attempt` on, whose name isn't already taken in the request's target loader. Looking
+   * names up is slow (each miss goes through every parent loader), so this is only for names taken without this
+   * cache knowing.
+   */
+  private static int freeAttempt(Request request, BytecodeKey key, int attempt) {
+    while (isLoaded(request.target, PFTGen.newClassInternalName(request.clz, key.nameHash(attempt)))) {
+      attempt++;
+    }
+    return attempt;
+  }
+
+  private Object defineLock(ClassLoader loader) {
+    return defineLocks[loader == null ? 0 : System.identityHashCode(loader) & (DEFINE_LOCK_STRIPES - 1)];
+  }
+
+  /*
+   * Whether a class of the given (internal) name is already loaded through `loader`.
+   */
+  static boolean isLoaded(ClassLoader loader, String internalName) {
+    try {
+      Class.forName(internalName.replace('/', '.'), false, loader);
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  int size() {
+    synchronized (bytecode) {
+      return bytecode.size();
+    }
+  }
+
+  static String digest(byte[] bytes) {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      // Every JRE is required to support SHA-1
+      throw new RuntimeException("Unrecoverable Error", e);
+    }
+
+    byte[] digest = md.digest(bytes);
+    StringBuilder sb = new StringBuilder(digest.length * 2);
+    for (byte b : digest) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  /*
+   * The file the given class was loaded from, or the jar it's in, if it was loaded from either.
+   */
+  static File classFile(Class<?> clz) {
+    String resource = Type.getInternalName(clz) + ".class";
+    URL url = clz.getClassLoader() == null ? ClassLoader.getSystemResource(resource) : clz.getClassLoader().getResource(resource);
+    try {
+      if (url != null && "jar".equals(url.getProtocol())) {
+        url = ((JarURLConnection)url.openConnection()).getJarFileURL();
+      }
+      if (url != null && "file".equals(url.getProtocol())) {
+        return new File(url.toURI());
+      }
+    } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+      // Not a file we can watch.
+    }
+    return null;
+  }
+
+  static int maxEntriesFromProperties() {
+    return Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES);
+  }
+}
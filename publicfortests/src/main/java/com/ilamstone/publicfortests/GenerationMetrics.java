@@ -0,0 +1,206 @@
+package com.ilamstone.publicfortests;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ilamstone.publicfortests.PFTGenStats.Stage;
+
+/*
+ * Counters and timers for each stage of generating testing classes. Everything is a `LongAdder`,
+ * so recording is cheap and doesn't contend between threads; see {@link PFTGenStats} for the snapshot
+ * handed out to users.
+ *
+ * When JFR is available (JDK 8u262+, 11+), each timed stage is also a JFR event (see {@link PFTEvents}).
+ * Events are only allocated while a recording has them enabled.
+ */
+final class GenerationMetrics {
+  static final boolean JFR_AVAILABLE = jfrAvailable();
+
+  /* Stands in for the bootstrap loader, which WeakHashMap can't key on */
+  private static final Object BOOTSTRAP = new Object();
+
+  final LongAdder[] counts = newAdders(Stage.values().length);
+  final LongAdder[] nanos = newAdders(Stage.values().length);
+  final LongAdder bytesGenerated = new LongAdder();
+  final LongAdder classesGenerated = new LongAdder();
+  final LongAdder failures = new LongAdder();
+
+  /* Classes defined, by the loader they were defined in */
+  private final Map<Object, LongAdder> definedByLoader = new WeakHashMap<Object, LongAdder>();
+
+  /*
+   * A single timed run of a stage. Stop it exactly once, when the stage is done.
+   */
+  final class Timer {
+    final Stage stage;
+    final long start;
+    final Object event;
+
+    Timer(Stage stage) {
+      this.stage = stage;
+      this.event = JFR_AVAILABLE ? PFTEvents.beginStage() : null;
+      this.start = System.nanoTime();
+    }
+
+    void stop(String className) {
+      stop(className, null, -1);
+    }
+
+    void stop(String className, ClassLoader loader, int bytes) {
+      nanos[stage.ordinal()].add(System.nanoTime() - start);
+      counts[stage.ordinal()].increment();
+      if (event != null) {
+        PFTEvents.commitStage(event, stage, className, loader, bytes);
+      }
+    }
+  }
+
+  Timer start(Stage stage) {
+    return new Timer(stage);
+  }
+
+  void generated(byte[] code) {
+    classesGenerated.increment();
+    bytesGenerated.add(code.length);
+  }
+
+  void defined(ClassLoader loader) {
+    synchronized (definedByLoader) {
+      definedByLoader.computeIfAbsent(loader == null ? BOOTSTRAP : loader, k -> new LongAdder()).increment();
+    }
+  }
+
+  void failed(Class<?> clz, Throwable t) {
+    failures.increment();
+    if (JFR_AVAILABLE) {
+      PFTEvents.failure(clz, t);
+    }
+  }
+
+  long classesDefined() {
+    synchronized (definedByLoader) {
+      return definedByLoader.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+  }
+
+  /*
+   * Classes defined, by loader description (see {@link #describe(ClassLoader)}), for loaders that
+   * are still alive.
+   */
+  Map<String, Long> classesDefinedByLoader() {
+    Map<String, Long> result = new LinkedHashMap<String, Long>();
+    synchronized (definedByLoader) {
+      for (Map.Entry<Object, LongAdder> e : definedByLoader.entrySet()) {
+        result.put(e.getKey() == BOOTSTRAP ? describe(null) : describe((ClassLoader)e.getKey()), e.getValue().sum());
+      }
+    }
+    return result;
+  }
+
+  /*
+   * Loaders often don't override `toString`, and when they do it's not necessarily unique, so they're
+   * described by class name and identity hash.
+   */
+  static String describe(ClassLoader loader) {
+    return loader == null ? "bootstrap" : loader.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(loader));
+  }
+
+  /*
+   * Backs the MBean registered by {@link PFTGen#registerStatsMBean()}.
+   */
+  static final class StatsMXBean implements PFTGenStatsMXBean {
+    @Override
+    public Map<String, Long> getStageCounts() {
+      PFTGenStats stats = PFTGen.getStats();
+      Map<String, Long> result = new LinkedHashMap<String, Long>();
+      for (Stage stage : Stage.values()) {
+        result.put(stage.name(), stats.getCount(stage));
+      }
+      return result;
+    }
+
+    @Override
+    public Map<String, Long> getStageNanos() {
+      PFTGenStats stats = PFTGen.getStats();
+      Map<String, Long> result = new LinkedHashMap<String, Long>();
+      for (Stage stage : Stage.values()) {
+        result.put(stage.name(), stats.getTotalNanos(stage));
+      }
+      return result;
+    }
+
+    @Override
+    public long getBytesGenerated() {
+      return PFTGen.metrics.bytesGenerated.sum();
+    }
+
+    @Override
+    public long getClassesGenerated() {
+      return PFTGen.metrics.classesGenerated.sum();
+    }
+
+    @Override
+    public long getClassesDefined() {
+      return PFTGen.metrics.classesDefined();
+    }
+
+    @Override
+    public Map<String, Long> getClassesDefinedByLoader() {
+      return PFTGen.metrics.classesDefinedByLoader();
+    }
+
+    @Override
+    public long getFailures() {
+      return PFTGen.metrics.failures.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+      return PFTGen.cache.hits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+      return PFTGen.cache.misses.sum();
+    }
+
+    @Override
+    public long getPregeneratedHits() {
+      return PFTGen.cache.pregeneratedHits.sum();
+    }
+
+    @Override
+    public long getBytecodeHits() {
+      return PFTGen.cache.bytecodeHits.sum();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+      return PFTGen.cache.evictions.sum();
+    }
+
+    @Override
+    public int getCacheSize() {
+      return PFTGen.cache.size();
+    }
+  }
+
+  private static LongAdder[] newAdders(int n) {
+    LongAdder[] adders = new LongAdder[n];
+    for (int i = 0; i < n; i++) {
+      adders[i] = new LongAdder();
+    }
+    return adders;
+  }
+
+  private static boolean jfrAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event", false, GenerationMetrics.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+}
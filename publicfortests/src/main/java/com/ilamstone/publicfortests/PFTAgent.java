@@ -0,0 +1,132 @@
+package com.ilamstone.publicfortests;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Java agent that unlocks classes in place as they are loaded, instead of generating separate testing
+ * classes. Any class with {@literal @}PublicForTests methods has those methods made public, and implements
+ * their testing interfaces, from the moment it's loaded. No extra classes are generated, and any instance
+ * (not just ones created from a testing class) can be cast straight to its testing interface.
+ *
+ * `PFTGen.getTestingClass` returns unlocked classes themselves, unless extra methods or interfaces are
+ * asked for, in which case a testing class is generated as usual.
+ *
+ * **Only use this in test JVMs**, e.g. with surefire:
+ *
+ * ```xml
+ * <argLine>-javaagent:${com.ilamstone:publicfortests:jar}</argLine>
+ * ```
+ *
+ * (using the `maven-dependency-plugin`'s `properties` goal to set the property). The jar carries its own
+ * (relocated) copy of ASM, so needs nothing else. The agent argument, if given, is a comma-separated
+ * list of package prefixes; then only classes in those packages are unlocked.
+ *
+ * Interfaces can't be added to classes that are already loaded, so when attached to a running JVM
+ * (through `agentmain`) only classes loaded afterwards are unlocked.
+ */
+public final class PFTAgent {
+  private static final Logger log = Logger.getLogger(PFTAgent.class.getName());
+
+  /* Stands in for the bootstrap loader, which WeakHashMap can't key on */
+  private static final Object BOOTSTRAP = new Object();
+
+  /* Internal names of unlocked classes, by loader */
+  private static final Map<Object, Set<String>> unlocked = new WeakHashMap<Object, Set<String>>();
+
+  /* Whether anything has been unlocked, so that isUnlocked is free without the agent */
+  private static volatile boolean active;
+
+  private PFTAgent() { }
+
+  public static void premain(String args, Instrumentation inst) {
+    install(args, inst);
+  }
+
+  public static void agentmain(String args, Instrumentation inst) {
+    install(args, inst);
+  }
+
+  static void install(String args, Instrumentation inst) {
+    inst.addTransformer(new UnlockTransformer(args));
+    log.fine(() -> "Unlocking @PublicForTests classes in place" + (args == null || args.isEmpty() ? "" : " in " + args));
+  }
+
+  /**
+   * @param clz A class.
+   *
+   * @return `true` if `clz` was unlocked in place by the agent.
+   */
+  public static boolean isUnlocked(Class<?> clz) {
+    if (!active) {
+      return false;
+    }
+
+    synchronized (unlocked) {
+      Set<String> names = unlocked.get(clz.getClassLoader() == null ? BOOTSTRAP : clz.getClassLoader());
+      return names != null && names.contains(clz.getName().replace('.', '/'));
+    }
+  }
+
+  static void recordUnlocked(ClassLoader loader, String internalName) {
+    synchronized (unlocked) {
+      unlocked.computeIfAbsent(loader == null ? BOOTSTRAP : loader, k -> new HashSet<String>()).add(internalName);
+    }
+    active = true;
+  }
+
+  static final class UnlockTransformer implements ClassFileTransformer {
+    final String[] prefixes;
+
+    UnlockTransformer(String args) {
+      if (args == null || args.trim().isEmpty()) {
+        this.prefixes = new String[0];
+      } else {
+        String[] split = args.split(",");
+        this.prefixes = new String[split.length];
+        for (int i = 0; i < split.length; i++) {
+          this.prefixes[i] = split[i].trim().replace('.', '/');
+        }
+      }
+    }
+
+    boolean wanted(String className) {
+      if (prefixes.length == 0) {
+        return true;
+      }
+      for (String prefix : prefixes) {
+        if (className.startsWith(prefix)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+      // Redefined classes can't gain interfaces, so only classes being loaded for the first time are unlocked.
+      if (className == null || classBeingRedefined != null || !wanted(className)
+          || !ClassBytesSources.InstrumentationSource.contains(classfileBuffer, ClassBytesSources.InstrumentationSource.PFT_DESCRIPTOR)) {
+        return null;
+      }
+
+      try {
+        byte[] result = PFTGen.unlockInPlace(loader, classfileBuffer);
+        if (result != null) {
+          recordUnlocked(loader, className);
+        }
+        return result;
+      } catch (RuntimeException | LinkageError e) {
+        // The JVM would silently ignore this, so at least say something.
+        log.warning(() -> "Unable to unlock " + className + ": " + e);
+        return null;
+      }
+    }
+  }
+}
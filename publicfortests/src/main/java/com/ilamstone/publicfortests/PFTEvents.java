@@ -0,0 +1,91 @@
+package com.ilamstone.publicfortests;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import com.ilamstone.publicfortests.PFTGenStats.Stage;
+
+/*
+ * JFR events for generating testing classes. Only touched once {@link GenerationMetrics#JFR_AVAILABLE}
+ * says the `jdk.jfr` classes exist, so that JDKs without JFR never try to load them.
+ *
+ * Events go to a recording when it enables them, e.g. with
+ * `-XX:StartFlightRecording` and the `default` settings; see {@link #STAGE} and {@link #FAILURE} for their names.
+ */
+final class PFTEvents {
+  static final String STAGE = "com.ilamstone.publicfortests.Stage";
+  static final String FAILURE = "com.ilamstone.publicfortests.Failure";
+
+  @Name(STAGE)
+  @Label("PublicForTests Stage")
+  @Description("One stage of generating a testing class")
+  @Category("PublicForTests")
+  @StackTrace(false)
+  static final class StageEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Class")
+    @Description("The original class for the read, scan and transform stages, otherwise the testing class")
+    String className;
+
+    @Label("Class Loader")
+    @Description("The loader defined into, for the define stage")
+    String loader;
+
+    @Label("Bytes")
+    @Description("Size of the generated class file, for the write stage")
+    int bytes;
+  }
+
+  @Name(FAILURE)
+  @Label("PublicForTests Failure")
+  @Description("A testing class could not be generated or defined")
+  @Category("PublicForTests")
+  static final class FailureEvent extends Event {
+    @Label("Class")
+    Class<?> originalClass;
+
+    @Label("Message")
+    String message;
+  }
+
+  private PFTEvents() { }
+
+  /*
+   * @return A begun `StageEvent`, or null if no recording wants it.
+   */
+  static Object beginStage() {
+    StageEvent event = new StageEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  static void commitStage(Object begun, Stage stage, String className, ClassLoader loader, int bytes) {
+    StageEvent event = (StageEvent)begun;
+    event.end();
+    if (event.shouldCommit()) {
+      event.stage = stage.name();
+      event.className = className;
+      event.loader = loader == null ? null : GenerationMetrics.describe(loader);
+      event.bytes = bytes;
+      event.commit();
+    }
+  }
+
+  static void failure(Class<?> clz, Throwable t) {
+    FailureEvent event = new FailureEvent();
+    if (event.isEnabled()) {
+      event.originalClass = clz;
+      event.message = String.valueOf(t);
+      event.commit();
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package com.ilamstone.publicfortests;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Support for {@link PFTGen#factory(Class, Class)}. This is only public so that generated factory classes
+ * can reach {@link #take(String)}; there's nothing here for tests to use directly.
+ *
+ * A factory class implements a user-supplied factory interface by calling, through a `static final`
+ * `MethodHandle`, the constructor of the testing class whose parameter types match each method. Since the
+ * handles are constants, creating an instance through a factory JITs to (nearly) a plain `new`.
+ *
+ * Factory classes are generated once per testing class and interface, in the testing class's package and
+ * loader, so they can be unloaded along with it (e.g. when its {@link PFTScope} is closed).
+ */
+public final class PFTFactories {
+  private static final String MH = Type.getInternalName(MethodHandle.class);
+  private static final String MH_DESC = Type.getDescriptor(MethodHandle.class);
+
+  /* Handles for factory classes that have been defined, but not yet initialized, by factory class name */
+  private static final Map<String, MethodHandle[]> pending = new ConcurrentHashMap<String, MethodHandle[]>();
+  private static final AtomicInteger counter = new AtomicInteger();
+
+  /* Factory instances, by testing class and then factory interface */
+  private static final ClassValue<Map<Class<?>, Object>> factories = new ClassValue<Map<Class<?>, Object>>() {
+    @Override
+    protected Map<Class<?>, Object> computeValue(Class<?> type) {
+      return new ConcurrentHashMap<Class<?>, Object>();
+    }
+  };
+
+  private PFTFactories() { }
+
+  /**
+   * Called once, from the static initializer of each generated factory class.
+   *
+   * @param factoryClassName The factory class's binary name.
+   *
+   * @return The handles for its methods, in declaration order.
+   */
+  public static MethodHandle[] take(String factoryClassName) {
+    MethodHandle[] handles = pending.remove(factoryClassName);
+    if (handles == null) {
+      throw new IllegalStateException("No method handles for " + factoryClassName);
+    }
+    return handles;
+  }
+
+  static <F> F factory(Class<?> testingClass, Class<F> factoryInterface) {
+    if (!factoryInterface.isInterface()) {
+      throw new IllegalArgumentException(factoryInterface.getName() + " is not an interface");
+    }
+    if (!Modifier.isPublic(factoryInterface.getModifiers())) {
+      throw new IllegalArgumentException(factoryInterface.getName() + " must be public");
+    }
+
+    return factoryInterface.cast(factories.get(testingClass).computeIfAbsent(factoryInterface, f -> newFactory(testingClass, f)));
+  }
+
+  static Object newFactory(Class<?> clz, Class<?> iface) {
+    List<Method> methods = new ArrayList<Method>();
+    Set<String> seen = new HashSet<String>();
+    for (Method m : iface.getMethods()) {
+      // The same method can be inherited through more than one superinterface.
+      if (Modifier.isAbstract(m.getModifiers()) && seen.add(m.getName() + Type.getMethodDescriptor(m))) {
+        methods.add(m);
+      }
+    }
+
+    MethodHandle[] handles = new MethodHandle[methods.size()];
+    for (int i = 0; i < handles.length; i++) {
+      handles[i] = constructorHandle(clz, methods.get(i));
+    }
+
+    // Hidden classes' names have a '/' after the class name, so go by the last '.' for the package.
+    String packageName = clz.getName().substring(0, clz.getName().lastIndexOf('.') + 1).replace('.', '/');
+    String name = packageName + "PFTFactory$" + counter.incrementAndGet();
+    byte[] code = generateFactoryClass(name, iface, methods);
+
+    pending.put(name.replace('/', '.'), handles);
+    try {
+      Class<?> factory = PFTGen.define(DefineStrategy.AUTO, clz.getClassLoader(), clz, name, code);
+      return factory.getConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      System.err.println("ReflectiveOperationException: in newFactory: " + e.getMessage());
+      throw new RuntimeException("Unrecoverable Error", e);
+    } finally {
+      pending.remove(name.replace('/', '.'));
+    }
+  }
+
+  /*
+   * A handle on the constructor of `clz` with the same parameter types as `factoryMethod`, typed as
+   * `factoryMethod`.
+   */
+  static MethodHandle constructorHandle(Class<?> clz, Method factoryMethod) {
+    Constructor<?> target;
+    try {
+      target = clz.getDeclaredConstructor(factoryMethod.getParameterTypes());
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException("No constructor matching " + factoryMethod + " in " + clz.getName());
+    }
+    if (!factoryMethod.getReturnType().isAssignableFrom(clz)) {
+      throw new IllegalArgumentException("Cannot return a " + clz.getName() + " from " + factoryMethod);
+    }
+
+    try {
+      return unreflect(target).asType(MethodType.methodType(factoryMethod.getReturnType(), factoryMethod.getParameterTypes()));
+    } catch (IllegalAccessException | WrongMethodTypeException e) {
+      throw new IllegalArgumentException("Cannot call " + target + " as " + factoryMethod, e);
+    }
+  }
+
+  private static MethodHandle unreflect(Constructor<?> c) throws IllegalAccessException {
+    if (DefineStrategy.LookupHandles.PRIVATE_LOOKUP_IN != null) {
+      try {
+        return DefineStrategy.privateLookupIn(c.getDeclaringClass()).unreflectConstructor(c);
+      } catch (Throwable t) {
+        // Not open to us; fall back to setAccessible below, which may still work.
+      }
+    }
+
+    c.setAccessible(true);
+    return MethodHandles.lookup().unreflectConstructor(c);
+  }
+
+  /*
+   * public final class <name> implements <iface> {
+   *   private static final MethodHandle h0, h1, ...;
+   *
+   *   static { MethodHandle[] h = PFTFactories.take("<name>"); h0 = h[0]; ... }
+   *
+   *   public R m0(A a, ...) { return (R)h0.invokeExact(a, ...); }
+   *   ...
+   * }
+   */
+  static byte[] generateFactoryClass(String name, Class<?> iface, List<Method> methods) {
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC,
+             name, null, "java/lang/Object", new String[] { Type.getInternalName(iface) });
+
+    for (int i = 0; i < methods.size(); i++) {
+      cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "h" + i, MH_DESC, null, null).visitEnd();
+    }
+
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+    mv.visitCode();
+    mv.visitLdcInsn(name.replace('/', '.'));
+    mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(PFTFactories.class), "take", "(Ljava/lang/String;)[" + MH_DESC, false);
+    for (int i = 0; i < methods.size(); i++) {
+      mv.visitInsn(Opcodes.DUP);
+      mv.visitLdcInsn(i);
+      mv.visitInsn(Opcodes.AALOAD);
+      mv.visitFieldInsn(Opcodes.PUTSTATIC, name, "h" + i, MH_DESC);
+    }
+    mv.visitInsn(Opcodes.POP);
+    mv.visitInsn(Opcodes.RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+    mv.visitInsn(Opcodes.RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    for (int i = 0; i < methods.size(); i++) {
+      Method m = methods.get(i);
+      Type type = Type.getType(m);
+      mv = cw.visitMethod(Opcodes.ACC_PUBLIC, m.getName(), type.getDescriptor(), null, null);
+      mv.visitCode();
+      mv.visitFieldInsn(Opcodes.GETSTATIC, name, "h" + i, MH_DESC);
+      int slot = 1;
+      for (Type arg : type.getArgumentTypes()) {
+        mv.visitVarInsn(arg.getOpcode(Opcodes.ILOAD), slot);
+        slot += arg.getSize();
+      }
+      mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MH, "invokeExact", type.getDescriptor(), false);
+      mv.visitInsn(type.getReturnType().getOpcode(Opcodes.IRETURN));
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+    }
+
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+}
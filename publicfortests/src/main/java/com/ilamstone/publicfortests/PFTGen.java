@@ -0,0 +1,1838 @@
+package com.ilamstone.publicfortests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+public class PFTGen {
+  private static final Logger log = Logger.getLogger(PFTGen.class.getName());
+  
+  private static final Set<Method> EMPTY_METHODS = Collections.emptySet();
+  private static final Set<Class<?>> EMPTY_CLASSES = Collections.emptySet();
+  
+  /**
+   * Suffix added to the original class name to get the name of a pre-generated testing class. 
+   * See {@link #getPregeneratedClassName(Class)}.
+   */
+  public static final String PREGENERATED_SUFFIX = "$$PublicForTests";
+  
+  /* 
+   * Prefix of a synthetic field in pre-generated classes, named for the digest of the original class file 
+   * they were generated from. It's in the name, so it can be checked without initializing the class. 
+   */
+  static final String ORIGINAL_DIGEST_FIELD_PREFIX = "$$publicForTestsOriginal$";
+  
+  static final String JMX_PROPERTY = "publicfortests.jmx";
+  
+  static final GenerationMetrics metrics = new GenerationMetrics();
+  
+  /* Numbers testing classes that don't go through the cache (and so can't be named by hash) */
+  private static final AtomicLong uncachedNames = new AtomicLong();
+  
+  static final GenerationCache cache = newCache(GenerationCache.maxEntriesFromProperties());
+  
+  /* Where generated classes are dumped for debugging, if anywhere; see {@link BytecodeDumper} */
+  static volatile BytecodeDumper dumper = BytecodeDumper.fromProperties();
+  
+  static {
+    if (Boolean.getBoolean(JMX_PROPERTY)) {
+      registerStatsMBean();
+    }
+    // Usually already started by PFTWarmupListener; if not, the first test still gets the later ones' classes ready.
+    PFTWarmup.startFromProperties();
+  }
+  
+  static class TransformVisitor extends ClassVisitor {
+    final Class<?> originalClass; 
+    final String originalClassInternalName;
+    final String newClassInternalName; 
+    final ClassNode node;    
+    final Set<String> pftMethods;
+    final Set<String> pftFields;
+    final Set<String> extraIfaces;    
+    final Set<String> rewriteMethods;
+    final boolean probes;
+    int version;
+    
+    /* The fields in `pftFields` as they're visited, and every method declared (as name + descriptor) */
+    final List<FieldNode> accessedFields = new ArrayList<FieldNode>();
+    final Set<String> declaredMethods = new HashSet<String>();
+    
+    /* The methods that get probing wrappers, as they'll be declared (before their bodies are renamed) */
+    final List<MethodNode> probedMethods = new ArrayList<MethodNode>();
+    
+    /*
+     * Transform straight into `delegate`, making the members in `members` public, generating accessors (see 
+     * {@link #accessorName(String, String)}) for its fields, and adding its interfaces. Only methods in 
+     * `rewriteMethods` (name + descriptor) are visited instruction by instruction; the rest are handed straight 
+     * to `delegate`, which (for a `ClassWriter` sharing the original's `ClassReader`) lets them be copied as-is. 
+     * If `rewriteMethods` is null, all methods are rewritten. `originalClass` is null for a class that hasn't 
+     * been loaded yet.
+     * 
+     * If `options` has probes, each method made public is wrapped with a probe (see {@link #addProbe(MethodNode)}).
+     */
+    TransformVisitor(ClassVisitor delegate, Class<?> originalClass, String originalClassInternalName, String newClassInternalName, 
+                     PftMethodsAndInterfaces members, Set<String> rewriteMethods, PFTOptions options) {
+      super(Opcodes.ASM5, delegate);
+      this.node = delegate instanceof ClassNode ? (ClassNode)delegate : null;
+      this.originalClass = originalClass;
+      this.originalClassInternalName = originalClassInternalName;      
+      this.newClassInternalName = newClassInternalName;
+      this.rewriteMethods = rewriteMethods;
+      this.pftMethods = members.methods;
+      this.pftFields = members.fields;
+      this.extraIfaces = members.interfaces;
+      this.probes = options.hasProbes();
+    }
+        
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] originalInterfaces) {
+      this.version = version;
+      if (probes && (version & 0xFFFF) < Opcodes.V1_7) {
+        log.warning(() -> originalClassInternalName + " is older than Java 7, so can't have probes (they use invokedynamic)");
+      }
+      
+      ArrayList<String> newIfaces = new ArrayList<String>();
+      for (String iface : originalInterfaces) {
+        newIfaces.add(iface);
+      }
+      newIfaces.addAll(extraIfaces);
+      
+      super.visit(version, access, newClassInternalName, signature, superName, newIfaces.toArray(new String[newIfaces.size()]));      
+    }
+    
+    class TransformMethodVisitor extends MethodVisitor {
+      public TransformMethodVisitor(MethodVisitor delegate) {
+        super(Opcodes.ASM5, delegate);
+      }
+
+      @Override
+      public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+        if (originalClassInternalName.equals(owner)) {
+          // We need to rewrite references to the original class to our new class.
+          // This will probably be mostly INVOKESPECIALS, but also INVOKESTATICS as well.
+          // In either case, refer to the method in our new class. Without this classes won't
+          // verify when they call their own private methods.
+          owner = newClassInternalName; 
+        }
+        super.visitMethodInsn(opcode, owner, name, desc, itf);
+      }
+
+      @Override
+      public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+        Object[] newArgs = new Object[bsmArgs.length];
+        
+        for (int i = 0; i < bsmArgs.length; i++) {
+          Object o = bsmArgs[i];
+          
+          if (o instanceof Handle) {
+            Handle h = (Handle)o;            
+            
+            if (originalClassInternalName.equals(h.getOwner())) {
+              newArgs[i] = new Handle(h.getTag(), newClassInternalName, h.getName(), h.getDesc(), h.isInterface());
+            } else {
+              newArgs[i] = o;
+            }
+          } else {
+            newArgs[i] = o;
+          }
+        }
+        
+        super.visitInvokeDynamicInsn(name, desc, bsm, newArgs);
+      }
+
+      @Override
+      public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+        if (originalClassInternalName.equals(owner)) {
+          owner = newClassInternalName;
+        }
+        
+        super.visitFieldInsn(opcode, owner, name, desc);
+      }
+
+      @Override
+      public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+        // Only matters when frames aren't recomputed. Then the original class can only appear in a 
+        // frame as `this` (see OwnTypeScanner), which is now the new class.
+        super.visitFrame(type, nLocal, remapFrameTypes(nLocal, local), nStack, remapFrameTypes(nStack, stack));
+      }
+
+      private Object[] remapFrameTypes(int n, Object[] types) {
+        Object[] result = types;
+        for (int i = 0; i < n; i++) {
+          if (originalClassInternalName.equals(types[i])) {
+            if (result == types) {
+              result = types.clone();
+            }
+            result[i] = newClassInternalName;
+          }
+        }
+        return result;
+      }
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+      if (pftFields.contains(name + desc)) {
+        accessedFields.add(new FieldNode(access, name, desc, null, null));
+      }
+      return super.visitField(access, name, desc, signature, value);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+      declaredMethods.add(name + desc);
+      boolean rewrite = rewriteMethods == null || rewriteMethods.contains(name + desc);
+      if (pftMethods.contains(name + desc)) {
+        access = access & ~Opcodes.ACC_PRIVATE & ~Opcodes.ACC_PROTECTED;
+        access = access | Opcodes.ACC_PUBLIC;
+        
+        if (probes && (version & 0xFFFF) >= Opcodes.V1_7 && !name.startsWith("<") && (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0) {
+          // The body keeps everything but its name and visibility; the wrapper takes its place.
+          probedMethods.add(new MethodNode(access, name, desc, signature, exceptions));
+          name = name + PFTProbes.BODY_SUFFIX;
+          access = (access & ~Opcodes.ACC_PUBLIC & ~Opcodes.ACC_VARARGS) | Opcodes.ACC_PRIVATE;
+        }
+      }
+      
+      MethodVisitor mv = cv.visitMethod(access, name, desc, signature, exceptions);
+      if (rewrite) {
+        return new TransformMethodVisitor(mv);
+      } else {
+        return mv;
+      }
+    }
+    
+    @Override
+    public void visitEnd() {
+      for (FieldNode f : accessedFields) {
+        Type type = Type.getType(f.desc);
+        boolean isStatic = (f.access & Opcodes.ACC_STATIC) != 0;
+        
+        addAccessor(accessorName("get", f.name), Type.getMethodDescriptor(type), isStatic ? Opcodes.GETSTATIC : Opcodes.GETFIELD, f.name, type);
+        // Setting a final field outside a constructor doesn't verify, so those only get a getter.
+        if ((f.access & Opcodes.ACC_FINAL) == 0) {
+          addAccessor(accessorName("set", f.name), Type.getMethodDescriptor(Type.VOID_TYPE, type), isStatic ? Opcodes.PUTSTATIC : Opcodes.PUTFIELD, f.name, type);
+        }
+      }
+      for (MethodNode m : probedMethods) {
+        addProbe(m);
+      }
+      super.visitEnd();
+    }
+    
+    /*
+     * Add the public method `m`, which counts, times and measures the allocations of a call to its renamed
+     * body (see {@link PFTProbes}). It's straight-line code apart from a catch-all handler, whose frame is
+     * given, as are the maxes, since this may be writing without computing them. The {@link PFTProbes.Probe}
+     * is found by `invokedynamic`, so the testing class needs no static state for it.
+     */
+    void addProbe(MethodNode m) {
+      boolean isStatic = (m.access & Opcodes.ACC_STATIC) != 0;
+      Type[] args = Type.getArgumentTypes(m.desc);
+      Type returnType = Type.getReturnType(m.desc);
+      Handle bootstrap = new Handle(Opcodes.H_INVOKESTATIC, Type.getInternalName(PFTProbes.class), "bootstrap", PFTProbes.BOOTSTRAP_DESC, false);
+      String key = m.name + m.desc;
+      
+      List<Object> locals = new ArrayList<Object>();
+      if (!isStatic) {
+        locals.add(newClassInternalName);
+      }
+      int start = isStatic ? 0 : 1;
+      for (Type arg : args) {
+        locals.add(frameType(arg));
+        start += arg.getSize();
+      }
+      String probe = Type.getInternalName(PFTProbes.Probe.class);
+      locals.add(probe);
+      locals.add(Opcodes.LONG);
+      locals.add(Opcodes.LONG);
+      
+      @SuppressWarnings("unchecked")
+      String[] exceptions = ((List<String>)m.exceptions).toArray(new String[m.exceptions.size()]);
+      MethodVisitor mv = cv.visitMethod(m.access & ~Opcodes.ACC_SYNCHRONIZED, m.name, m.desc, m.signature, exceptions);
+      Label body = new Label(), returned = new Label(), thrown = new Label();
+      mv.visitCode();
+      mv.visitTryCatchBlock(body, returned, thrown, null);
+      // `start` counts the call and returns the bytes allocated so far; then the clock, as late as possible.
+      mv.visitInvokeDynamicInsn("probe", PFTProbes.PROBE_DESC, bootstrap, key);
+      mv.visitVarInsn(Opcodes.ASTORE, start);
+      mv.visitVarInsn(Opcodes.ALOAD, start);
+      mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, probe, "start", "()J", false);
+      mv.visitVarInsn(Opcodes.LSTORE, start + 1);
+      mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "nanoTime", "()J", false);
+      mv.visitVarInsn(Opcodes.LSTORE, start + 3);
+      mv.visitLabel(body);
+      int slot = 0;
+      if (!isStatic) {
+        mv.visitVarInsn(Opcodes.ALOAD, slot++);
+      }
+      for (Type arg : args) {
+        mv.visitVarInsn(arg.getOpcode(Opcodes.ILOAD), slot);
+        slot += arg.getSize();
+      }
+      mv.visitMethodInsn(isStatic ? Opcodes.INVOKESTATIC : Opcodes.INVOKESPECIAL, newClassInternalName, m.name + PFTProbes.BODY_SUFFIX, m.desc, false);
+      mv.visitLabel(returned);
+      stopProbe(mv, probe, start);
+      mv.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+      mv.visitLabel(thrown);
+      mv.visitFrame(Opcodes.F_FULL, locals.size(), locals.toArray(), 1, new Object[] { "java/lang/Throwable" });
+      stopProbe(mv, probe, start);
+      mv.visitInsn(Opcodes.ATHROW);
+      mv.visitMaxs(Math.max(start, Math.max(8, returnType.getSize() + 7)), start + 5);
+      mv.visitEnd();
+    }
+    
+    /*
+     * Read the clock, then pass that, the start time and the bytes allocated at the start to the probe,
+     * which is in local `start` (followed by the other two).
+     */
+    static void stopProbe(MethodVisitor mv, String probe, int start) {
+      mv.visitVarInsn(Opcodes.ALOAD, start);
+      mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "nanoTime", "()J", false);
+      mv.visitVarInsn(Opcodes.LLOAD, start + 3);
+      mv.visitVarInsn(Opcodes.LLOAD, start + 1);
+      mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, probe, "stop", "(JJJ)V", false);
+    }
+    
+    /*
+     * How a local of the given type appears in a (compressed) frame.
+     */
+    static Object frameType(Type type) {
+      switch (type.getSort()) {
+        case Type.BOOLEAN:
+        case Type.CHAR:
+        case Type.BYTE:
+        case Type.SHORT:
+        case Type.INT:
+          return Opcodes.INTEGER;
+        case Type.FLOAT:
+          return Opcodes.FLOAT;
+        case Type.LONG:
+          return Opcodes.LONG;
+        case Type.DOUBLE:
+          return Opcodes.DOUBLE;
+        case Type.ARRAY:
+          return type.getDescriptor();
+        default:
+          return type.getInternalName();
+      }
+    }
+    
+    /*
+     * Add a public method that just gets or sets a field of the new class. Maxes are given, since this 
+     * may be writing without computing them.
+     */
+    void addAccessor(String methodName, String desc, int opcode, String field, Type type) {
+      if (declaredMethods.contains(methodName + desc)) {
+        log.warning(() -> originalClassInternalName + " already has " + methodName + desc + "; not generating an accessor for '" + field + "'");
+        return;
+      }
+      
+      MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_SYNTHETIC, methodName, desc, null, null);
+      mv.visitCode();
+      if (opcode == Opcodes.GETFIELD || opcode == Opcodes.PUTFIELD) {
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+      }
+      if (opcode == Opcodes.PUTFIELD || opcode == Opcodes.PUTSTATIC) {
+        mv.visitVarInsn(type.getOpcode(Opcodes.ILOAD), 1);
+        mv.visitFieldInsn(opcode, newClassInternalName, field, type.getDescriptor());
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(1 + type.getSize(), 1 + type.getSize());
+      } else {
+        mv.visitFieldInsn(opcode, newClassInternalName, field, type.getDescriptor());
+        mv.visitInsn(type.getOpcode(Opcodes.IRETURN));
+        mv.visitMaxs(Math.max(1, type.getSize()), 1);
+      }
+      mv.visitEnd();
+    }
+    
+    public ClassNode getNode() {
+      return this.node;
+    }    
+  }
+  
+  /*
+   * The name of the generated getter (`prefix` "get") or setter ("set") for a {@literal @}PublicForTests 
+   * field, e.g. `getCount` for `count`.
+   */
+  static String accessorName(String prefix, String field) {
+    return prefix + Character.toUpperCase(field.charAt(0)) + field.substring(1);
+  }
+  
+  /*
+   * Finds where a class refers to its own type, so that it can be transformed without recomputing
+   * frames. Debug info should be skipped when visiting with this.
+   * 
+   * Calls to its own methods, accesses to its own fields, and `this` in frames are fine: those are 
+   * exactly what {@link TransformVisitor} renames. Any other appearance of the type (in a descriptor,
+   * a cast, a constant, and so on) means there might be values of the original type that aren't
+   * `this`, so the frames can't just be renamed. In that case `escapes` is set, and the scan stops
+   * there (use {@link #scan(ClassReader)}, which handles this).
+   */
+  static class OwnTypeScanner extends ClassVisitor {
+    @SuppressWarnings("serial")
+    static final RuntimeException ESCAPED = new RuntimeException("Own type escapes", null, false, false) { };
+    
+    final String internalName;
+    final String descriptor;
+    final Set<String> rewriteMethods = new HashSet<String>();
+    boolean escapes;
+    
+    OwnTypeScanner(String internalName) {
+      super(Opcodes.ASM5);
+      this.internalName = internalName;
+      this.descriptor = "L" + internalName + ";";
+    }
+    
+    static OwnTypeScanner scan(ClassReader reader) {
+      OwnTypeScanner scanner = new OwnTypeScanner(reader.getClassName());
+      try {
+        reader.accept(scanner, ClassReader.SKIP_DEBUG);
+      } catch (RuntimeException e) {
+        if (e != ESCAPED) {
+          throw e;
+        }
+      }
+      return scanner;
+    }
+    
+    void escaped() {
+      escapes = true;
+      throw ESCAPED;
+    }
+    
+    void check(String desc) {
+      if (desc != null && desc.contains(descriptor)) {
+        escaped();
+      }
+    }
+    
+    void checkType(String internalNameOrArray) {
+      if (internalName.equals(internalNameOrArray)) {
+        escaped();
+      } else {
+        check(internalNameOrArray);
+      }
+    }
+    
+    void checkConstant(Object cst) {
+      if (cst instanceof Type) {
+        checkType(((Type)cst).getInternalName());
+        check(((Type)cst).getDescriptor());
+      } else if (cst instanceof Handle) {
+        checkType(((Handle)cst).getOwner());
+        check(((Handle)cst).getDesc());
+      }
+    }
+    
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+      check(desc);
+      return null;
+    }
+    
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+      check(desc);
+      String key = name + desc;
+      
+      return new MethodVisitor(Opcodes.ASM5) {
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+          if (internalName.equals(owner)) {
+            rewriteMethods.add(key);
+          } else {
+            checkType(owner);
+          }
+          check(desc);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+          if (internalName.equals(owner)) {
+            rewriteMethods.add(key);
+          }
+          check(desc);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+          check(desc);
+          for (Object arg : bsmArgs) {
+            if (arg instanceof Handle && internalName.equals(((Handle)arg).getOwner())) {
+              rewriteMethods.add(key);
+              check(((Handle)arg).getDesc());
+            } else {
+              checkConstant(arg);
+            }
+          }
+        }
+
+        @Override
+        public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+          for (int i = 0; i < nLocal; i++) {
+            if (internalName.equals(local[i])) {
+              rewriteMethods.add(key);
+            }
+          }
+          for (int i = 0; i < nStack; i++) {
+            if (internalName.equals(stack[i])) {
+              rewriteMethods.add(key);
+            }
+          }
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+          checkType(type);
+        }
+
+        @Override
+        public void visitLdcInsn(Object cst) {
+          checkConstant(cst);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String desc, int dims) {
+          check(desc);
+        }
+
+        @Override
+        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+          checkType(type);
+        }
+      };
+    }
+  }
+  
+  /*
+   * This is just a POJO that holds a set of methods and a set of fields (both as name + descriptor) and a 
+   * set of interfaces (as internal names). It's used as the return value from findPftMethodsAndInterfaces.
+   */
+  static class PftMethodsAndInterfaces {
+    Set<String> methods = new HashSet<String>();
+    Set<String> fields = new HashSet<String>();
+    Set<String> interfaces = new LinkedHashSet<String>();
+    
+    /*
+     * Add an annotated member, as found in the registry or by {@link PftAnnotationScanner}.
+     */
+    void addMember(String key) {
+      // Only method descriptors have parentheses, and names can't.
+      (key.indexOf('(') >= 0 ? methods : fields).add(key);
+    }
+  }
+  
+  /*
+   * Reads {@literal @}PublicForTests annotations straight from the class file. Only method headers are 
+   * needed, so visit with `SKIP_CODE`.
+   */
+  static class PftAnnotationScanner extends ClassVisitor {
+    static final String PFT_DESCRIPTOR = Type.getDescriptor(PublicForTests.class);
+    
+    /* Annotated methods and fields (name + descriptor), mapped to the annotation value (the testing interface's binary name) */
+    final Map<String, String> annotated = new LinkedHashMap<String, String>();
+    
+    PftAnnotationScanner() {
+      super(Opcodes.ASM5);
+    }
+    
+    /*
+     * Scan a class, returning its annotated methods and fields as per {@link #annotated}.
+     */
+    static Map<String, String> scan(ClassReader reader) {
+      PftAnnotationScanner scanner = new PftAnnotationScanner();
+      reader.accept(scanner, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+      return scanner.annotated;
+    }
+    
+    AnnotationVisitor annotationVisitor(String key, String annotationDesc) {
+      if (!PFT_DESCRIPTOR.equals(annotationDesc)) {
+        return null;
+      }
+      
+      return new AnnotationVisitor(Opcodes.ASM5) {
+        @Override
+        public void visit(String name, Object value) {
+          if ("value".equals(name)) {
+            annotated.put(key, (String)value);
+          }
+        }
+      };
+    }
+    
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+      String key = name + desc;
+      
+      return new FieldVisitor(Opcodes.ASM5) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String annotationDesc, boolean visible) {
+          return annotationVisitor(key, annotationDesc);
+        }
+      };
+    }
+    
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+      String key = name + desc;
+      
+      return new MethodVisitor(Opcodes.ASM5) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String annotationDesc, boolean visible) {
+          return annotationVisitor(key, annotationDesc);
+        }
+      };
+    }
+  }
+  
+  /*
+   * Whether each testing interface named by a class's annotations could be found, memoized per class.
+   */
+  static volatile ClassValue<Map<String, Boolean>> interfacesFound = newInterfacesFound();
+  
+  static ClassValue<Map<String, Boolean>> newInterfacesFound() {
+    return new ClassValue<Map<String, Boolean>>() {
+      @Override
+      protected Map<String, Boolean> computeValue(Class<?> type) {
+        return new ConcurrentHashMap<String, Boolean>();
+      }
+    };
+  }
+  
+  /*
+   * Find all methods in the given class that are annotated with the {@link PublicForTests} annotation. 
+   * These are read from bytecode, never from the registry written by the annotation processor (see 
+   * {@link #checkRegistry(Class, ClassBytesSource)}). Nothing is loaded, apart from any testing interface 
+   * that can't be found as a class file resource.
+   * 
+   * @param originalClass The class to search.
+   * @param reader A reader for the original class.
+   * 
+   * @return A {@link PftMethodsAndInterfaces} containing the found methods and the interfaces from the annotations.
+   */  
+  static PftMethodsAndInterfaces findPftMethodsAndInterfaces(Class<?> originalClass, ClassReader reader) {
+    GenerationMetrics.Timer timer = metrics.start(PFTGenStats.Stage.SCAN);
+    Map<String, String> annotated = PftAnnotationScanner.scan(reader);
+
+    PftMethodsAndInterfaces pftmi = new PftMethodsAndInterfaces();
+    Map<String, Boolean> found = interfacesFound.get(originalClass);
+    
+    for (Map.Entry<String, String> e : annotated.entrySet()) {
+      String iface = e.getValue();
+      if (found.computeIfAbsent(iface, name -> interfaceExists(originalClass.getClassLoader(), name))) {
+        pftmi.addMember(e.getKey());
+        pftmi.interfaces.add(iface.replace('.', '/'));
+      } else {
+        log.warning(() -> "Testing interface '" + iface + "' not found for member '" + e.getKey() + "'");            
+        log.warning(() -> "    This member will not be made public; This may cause ClassCastExceptions later on...");            
+      }
+    }
+    
+    timer.stop(originalClass.getName());
+    return pftmi;
+  }
+  
+  /*
+   * As {@link #findPftMethodsAndInterfaces(Class, ClassReader)}, reading the original class file.
+   */
+  static PftMethodsAndInterfaces findPftMethodsAndInterfaces(Class<?> originalClass) throws IOException {
+    return findPftMethodsAndInterfaces(originalClass, new ClassReader(readClassBytes(originalClass)));
+  }
+  
+  /*
+   * As {@link #findPftMethodsAndInterfaces(Class, ClassReader)}, adding in any extras.
+   */
+  static PftMethodsAndInterfaces findPftMethodsAndInterfaces(Class<?> clz, ClassReader reader, Set<Method> extraMethods, Set<Class<?>> extraInterfaces) {
+    PftMethodsAndInterfaces pftmi = findPftMethodsAndInterfaces(clz, reader);
+    
+    if (extraMethods != null) {
+      for (Method m : extraMethods) {
+        pftmi.methods.add(m.getName() + Type.getMethodDescriptor(m));
+      }
+    }
+    
+    if (extraInterfaces != null) {
+      for (Class<?> iface : extraInterfaces) {
+        pftmi.interfaces.add(Type.getInternalName(iface));
+      }
+    }
+    
+    return pftmi;
+  }
+  
+  /*
+   * Whether the named class can be found through `loader`. Checks for a class file first, which 
+   * doesn't load anything, falling back to actually loading (without initializing) it.
+   */
+  static boolean interfaceExists(ClassLoader loader, String name) {
+    String resource = name.replace('.', '/') + ".class";
+    if ((loader == null ? ClassLoader.getSystemResource(resource) : loader.getResource(resource)) != null) {
+      return true;
+    }
+    
+    try {
+      Class.forName(name, false, loader);
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+  
+  /*
+   * @return A new, unique, internal name for a testing class generated from `clz`. It will be in the same package.
+   *         Cached testing classes are named from a hash of what they were generated from instead (see 
+   *         {@link #newClassInternalName(Class, String)}); this is for ones that aren't.
+   */
+  static String newClassInternalName(Class<?> clz) {
+    return newClassInternalName(clz, "u" + uncachedNames.incrementAndGet());
+  }
+  
+  /*
+   * @return The internal name for a testing class generated from `clz` with the given suffix, in the same package.
+   */
+  static String newClassInternalName(Class<?> clz, String suffix) {
+    String name = Type.getInternalName(clz);
+    return name.substring(0, name.lastIndexOf('/') + 1) + "GeneratedClass$" + suffix;
+  }
+  
+  /*
+   * Read the bytes of the original class file, through the class's own loader (or the system loader 
+   * for bootstrap classes).
+   * 
+   * @param clz The original class.
+   * 
+   * @return The raw class file bytes.
+   * 
+   * @throws IOException If the original class cannot be read.
+   */
+  static byte[] readClassBytes(Class<?> clz) throws IOException {
+    return readClassBytes(clz.getClassLoader(), Type.getInternalName(clz) + ".class");
+  }
+  
+  /*
+   * Read the bytes of the original class file from the given source.
+   * 
+   * @throws IOException If the source doesn't have the class, or it cannot be read.
+   */
+  static byte[] readClassBytes(Class<?> clz, ClassBytesSource source) throws IOException {
+    GenerationMetrics.Timer timer = metrics.start(PFTGenStats.Stage.READ);
+    byte[] result = source.getClassBytes(clz);
+    timer.stop(clz.getName());
+    if (result == null) {
+      throw new IOException("Class not found: " + Type.getInternalName(clz) + ".class");
+    }
+    return result;
+  }
+  
+  /*
+   * Read the given class file resource through `loader` (or the system loader, if it's null).
+   */
+  static byte[] readClassBytes(ClassLoader loader, String resource) throws IOException {
+    InputStream in = loader == null ? ClassLoader.getSystemResourceAsStream(resource) : loader.getResourceAsStream(resource);
+    if (in == null) {
+      throw new IOException("Class not found: " + resource);
+    }
+    
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(in.available() > 0 ? in.available() : 4096);
+      byte[] buf = new byte[4096];
+      int read;
+      while ((read = in.read(buf)) != -1) {
+        out.write(buf, 0, read);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+  
+  /*
+   * Main worker method of this class. Uses a {@link TransformVisitor} to generate an ASM `ClassNode`.
+   * 
+   * @param clz The original class.
+   * @param extraMethods Additional methods to make public (additional to those marked with {@literal @}PublicForTests).
+   * @param extraInterfaces Additional interfaces to implement (additional to those marked with {@literal @}PublicForTests).
+   * @param trace If non-null, the resulting class will be dumped (with a `TraceClassVisitor` to the given stream. 
+   * 
+   * @return The generated `ClassNode`. This can be visited by a `ClassWriter` to actually generate bytecode.
+   * 
+   * @throws IOException If the original class cannot be read.
+   */
+  static ClassNode generateNewClassNode(Class<?> clz, Set<Method> extraMethods, Set<Class<?>> extraInterfaces, PrintStream trace) throws IOException {
+    return generateNewClassNode(clz, new ClassReader(readClassBytes(clz)), newClassInternalName(clz), extraMethods, extraInterfaces, 
+                                PFTOptions.DEFAULT.withTrace(trace));
+  }
+  
+  /*
+   * As {@link #generateNewClassNode(Class, Set, Set, PrintStream)}, with the original class already read, giving 
+   * the new class the specified name. The trace, and whether the class is slim (only the members found by 
+   * {@link Reachability} are kept) or has probes (see {@link PFTProbes}), come from `options`.
+   */
+  static ClassNode generateNewClassNode(Class<?> clz, ClassReader reader, String newClassInternalName, Set<Method> extraMethods, Set<Class<?>> extraInterfaces, PFTOptions options) {
+    PftMethodsAndInterfaces pftmi = findPftMethodsAndInterfaces(clz, reader, extraMethods, extraInterfaces);
+    Reachability reachable = options.isSlim() ? findReachable(clz, reader, pftmi) : null;
+    
+    GenerationMetrics.Timer timer = metrics.start(PFTGenStats.Stage.TRANSFORM);
+    TransformVisitor visitor = new TransformVisitor(new ClassNode(), clz, Type.getInternalName(clz), newClassInternalName, pftmi, null, options);
+    reader.accept(reachable == null ? visitor : reachable.filter(visitor), ClassReader.SKIP_DEBUG);
+    timer.stop(clz.getName());
+
+    if (options.getTrace() != null) {
+      PrintWriter out = new PrintWriter(options.getTrace());
+      visitor.getNode().accept(new TraceClassVisitor(out));
+      out.flush();
+    }
+    
+    return visitor.getNode();
+  }
+  
+  /*
+   * Generate the bytecode for a new testing class in a single pass, without building a `ClassNode` 
+   * or recomputing frames. The `ClassWriter` shares the reader's constant pool, methods that don't refer
+   * to the original class are copied as-is, and existing frames are kept (renaming `this`).
+   * 
+   * This only works if the original type appears nowhere but as `this` (see {@link OwnTypeScanner}).
+   * Otherwise, this falls back to building a node and computing frames, as 
+   * {@link #generateNewClassNode(Class, ClassReader, String, Set, Set, PFTOptions)} does. Whether the class is 
+   * slim or has probes comes from `options`; its trace is ignored.
+   */
+  static byte[] generateBytecode(Class<?> clz, ClassReader reader, String newClassInternalName, Set<Method> extraMethods, Set<Class<?>> extraInterfaces, PFTOptions options) {
+    GenerationMetrics.Timer timer = metrics.start(PFTGenStats.Stage.SCAN);
+    OwnTypeScanner scanner = OwnTypeScanner.scan(reader);
+    timer.stop(clz.getName());
+    if (scanner.escapes) {
+      log.fine(() -> "Class " + clz.getName() + " refers to its own type; computing frames");
+      ClassNode node = generateNewClassNode(clz, reader, newClassInternalName, extraMethods, extraInterfaces, options.withTrace(null));
+      return dump(clz, newClassInternalName, generateBytecode(node, clz.getClassLoader()));
+    }
+    
+    PftMethodsAndInterfaces pftmi = findPftMethodsAndInterfaces(clz, reader, extraMethods, extraInterfaces);
+    Reachability reachable = options.isSlim() ? findReachable(clz, reader, pftmi) : null;
+    timer = metrics.start(PFTGenStats.Stage.TRANSFORM);
+    ClassWriter writer = new ClassWriter(reader, 0);
+    ClassVisitor transform = new TransformVisitor(writer, clz, Type.getInternalName(clz), newClassInternalName, pftmi, scanner.rewriteMethods, options);
+    reader.accept(reachable == null ? transform : reachable.filter(transform), 0);
+    timer.stop(clz.getName());
+    return dump(clz, newClassInternalName, write(writer, newClassInternalName));
+  }
+
+  /*
+   * Generate the bytecode for a new testing class from the testing class generated for an earlier version
+   * of the original, when that's cheaper than {@link #generateBytecode(Class, ClassReader, String, Set, Set, PFTOptions)}.
+   *
+   * That's only for classes that need their frames computed. If the two versions have the same members (see
+   * {@link Fingerprint}), only the methods whose code changed are transformed and have their frames computed;
+   * the rest are copied from the earlier testing class, just renamed. Classes that don't need their frames
+   * computed are already generated in a single copying pass, so there's nothing to save.
+   *
+   * @param previousOriginal The earlier version of the original class.
+   * @param previous The testing class generated from it, with the same extra methods and interfaces.
+   *
+   * @return The new testing class, or `null` if it needs to be generated from scratch.
+   */
+  static byte[] regenerateBytecode(Class<?> clz, ClassReader reader, String newClassInternalName, Set<Method> extraMethods, Set<Class<?>> extraInterfaces, PFTOptions options,
+                                   ClassReader previousOriginal, ClassReader previous) {
+    // Slim classes depend on what's reachable from everything else, so any change could change any of it.
+    // Probed methods are split in two, which merging doesn't keep track of.
+    if (options.isSlim() || options.hasProbes()) {
+      return null;
+    }
+
+    GenerationMetrics.Timer timer = metrics.start(PFTGenStats.Stage.SCAN);
+    boolean escapes = OwnTypeScanner.scan(reader).escapes;
+    Set<String> changed = escapes ? Fingerprint.of(reader).changedMethods(Fingerprint.of(previousOriginal)) : null;
+    timer.stop(clz.getName());
+    if (changed == null) {
+      return null;
+    }
+    log.fine(() -> "Class " + clz.getName() + " changed in " + changed + "; computing frames for those only");
+
+    // Just the changed methods, transformed into a class of their own to compute their frames.
+    PftMethodsAndInterfaces pftmi = findPftMethodsAndInterfaces(clz, reader, extraMethods, extraInterfaces);
+    // Accessors and interfaces are already in the previous testing class.
+    pftmi.fields.clear();
+    pftmi.interfaces.clear();
+    timer = metrics.start(PFTGenStats.Stage.TRANSFORM);
+    ClassNode node = new ClassNode();
+    TransformVisitor transform = new TransformVisitor(node, clz, Type.getInternalName(clz), newClassInternalName, pftmi, null, options);
+    reader.accept(new ClassVisitor(Opcodes.ASM5, transform) {
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        return changed.contains(name + desc) ? super.visitMethod(access, name, desc, signature, exceptions) : null;
+      }
+    }, ClassReader.SKIP_DEBUG);
+    timer.stop(clz.getName());
+    ClassReader changedMethods = new ClassReader(generateBytecode(node, clz.getClassLoader()));
+
+    // Then everything else, copied as-is from the previous testing class, with the changed methods swapped in.
+    timer = metrics.start(PFTGenStats.Stage.TRANSFORM);
+    ClassReader renamed = new ClassReader(renameClass(previous, newClassInternalName));
+    ClassWriter writer = new ClassWriter(renamed, 0);
+    renamed.accept(new ClassVisitor(Opcodes.ASM5, writer) {
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        return changed.contains(name + desc) ? null : super.visitMethod(access, name, desc, signature, exceptions);
+      }
+
+      @Override
+      public void visitEnd() {
+        changedMethods.accept(new ClassVisitor(Opcodes.ASM5) {
+          @Override
+          public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            return writer.visitMethod(access, name, desc, signature, exceptions);
+          }
+        }, 0);
+        super.visitEnd();
+      }
+    }, 0);
+    timer.stop(clz.getName());
+    return dump(clz, newClassInternalName, write(writer, newClassInternalName));
+  }
+
+  /*
+   * Rename a testing class by rewriting the constant holding its name. Everything in it that refers to
+   * the class (its own name, calls and field accesses on it, and frames) goes through that constant, and
+   * nothing else uses it, so nothing else needs to change.
+   */
+  static byte[] renameClass(ClassReader reader, String newName) {
+    int classIndex = reader.readUnsignedShort(reader.header + 2);
+    int utf8 = reader.getItem(reader.readUnsignedShort(reader.getItem(classIndex)));
+    int end = utf8 + 2 + reader.readUnsignedShort(utf8);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(reader.b.length + newName.length());
+    out.write(reader.b, 0, utf8);
+    try {
+      new DataOutputStream(out).writeUTF(newName);
+    } catch (IOException e) {
+      // Can't happen, writing to memory.
+      System.err.println("IOException: in renameClass: " + e.getMessage());
+      throw new RuntimeException("Unrecoverable Error", e);
+    }
+    out.write(reader.b, end, reader.b.length - end);
+    return out.toByteArray();
+  }
+
+  /*
+   * Hand a generated class to the {@link BytecodeDumper}, if there is one. This only queues it.
+   * 
+   * @return `code`.
+   */
+  static byte[] dump(Class<?> original, String internalName, byte[] code) {
+    BytecodeDumper dumper = PFTGen.dumper;
+    if (dumper != null) {
+      dumper.offer(original, internalName, code);
+    }
+    return code;
+  }
+  
+  static Reachability findReachable(Class<?> clz, ClassReader reader, PftMethodsAndInterfaces pftmi) {
+    GenerationMetrics.Timer timer = metrics.start(PFTGenStats.Stage.SCAN);
+    Reachability reachable = Reachability.find(clz, reader, pftmi.methods, pftmi.fields, pftmi.interfaces);
+    timer.stop(clz.getName());
+    return reachable;
+  }
+  
+  /*
+   * Unlock a class in place, as it's being loaded: make its {@literal @}PublicForTests methods public and 
+   * add their testing interfaces, keeping its name. Nothing else changes, so every method is copied as-is.
+   * This is what {@link PFTAgent} does.
+   * 
+   * @param loader The loader defining the class (null for bootstrap).
+   * @param original The class file being loaded.
+   * 
+   * @return The unlocked class file, or `null` if the class has no {@literal @}PublicForTests methods.
+   */
+  static byte[] unlockInPlace(ClassLoader loader, byte[] original) {
+    ClassReader reader = new ClassReader(original);
+    Map<String, String> annotated = PftAnnotationScanner.scan(reader);
+    if (annotated.isEmpty()) {
+      return null;
+    }
+    
+    PftMethodsAndInterfaces pftmi = new PftMethodsAndInterfaces();
+    Map<String, Boolean> found = new HashMap<String, Boolean>();
+    for (Map.Entry<String, String> e : annotated.entrySet()) {
+      String iface = e.getValue();
+      if (found.computeIfAbsent(iface, name -> interfaceExists(loader, name))) {
+        pftmi.addMember(e.getKey());
+        pftmi.interfaces.add(iface.replace('.', '/'));
+      } else {
+        log.warning(() -> "Testing interface '" + iface + "' not found for member '" + e.getKey() + "' in " + reader.getClassName());
+      }
+    }
+    pftmi.interfaces.removeAll(Arrays.asList(reader.getInterfaces()));
+    
+    ClassWriter writer = new ClassWriter(reader, 0);
+    String name = reader.getClassName();
+    reader.accept(new TransformVisitor(writer, null, name, name, pftmi, Collections.<String>emptySet(), PFTOptions.DEFAULT), 0);
+    return writer.toByteArray();
+  }
+  
+  static GenerationCache newCache(int maxEntries) {
+    return newCache(maxEntries, DiskCache.fromProperties());
+  }
+  
+  static GenerationCache newCache(int maxEntries, DiskCache disk) {
+    return new GenerationCache(maxEntries, 
+        (clz, original, name, extraMethods, extraInterfaces, options) -> 
+          new GenerationCache.Generated(name, generateBytecode(clz, new ClassReader(original), name, extraMethods, extraInterfaces, options)),
+        (loader, original, generated, strategy) -> define(strategy, loader, original, generated.name, generated.code),
+        (loader, clz, source) -> PFTAgent.isUnlocked(clz) ? clz : findPregeneratedClass(loader, clz, source),
+        disk,
+        (clz, original, name, extraMethods, extraInterfaces, options, previousOriginal, previous) -> {
+          byte[] code = regenerateBytecode(clz, new ClassReader(original), name, extraMethods, extraInterfaces, options,
+                                           new ClassReader(previousOriginal), new ClassReader(previous.code));
+          return code == null ? null : new GenerationCache.Generated(name, code);
+        });
+  }
+  
+  static byte[] generateBytecode(ClassNode node) {
+    return generateBytecode(node, PFTGen.class.getClassLoader());
+  }
+  
+  /*
+   * Write the given node out as bytecode, computing frames. Any types that need to be loaded to 
+   * compute frames are loaded (without initialization) through `loader`.
+   */
+  static byte[] generateBytecode(ClassNode node, ClassLoader loader) {
+    GenerationMetrics.Timer timer = metrics.start(PFTGenStats.Stage.FRAMES);
+    ClassWriter writer = new LoaderClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS, loader, node.name, node.superName);
+    node.accept(writer);
+    timer.stop(node.name.replace('/', '.'));
+    return write(writer, node.name);
+  }
+  
+  static byte[] write(ClassWriter writer, String internalName) {
+    GenerationMetrics.Timer timer = metrics.start(PFTGenStats.Stage.WRITE);
+    byte[] code = writer.toByteArray();
+    timer.stop(internalName.replace('/', '.'), null, code.length);
+    metrics.generated(code);
+    return code;
+  }
+  
+  /*
+   * Define a generated class with the given strategy, recording it in the metrics.
+   */
+  static Class<?> define(DefineStrategy strategy, ClassLoader loader, Class<?> original, String internalName, byte[] code) {
+    GenerationMetrics.Timer timer = metrics.start(PFTGenStats.Stage.DEFINE);
+    Class<?> result = strategy.define(loader, original, internalName, code);
+    timer.stop(internalName.replace('/', '.'), loader, code.length);
+    metrics.defined(result.getClassLoader());
+    return result;
+  }
+  
+  /*
+   * A `ClassWriter` that loads the types it needs for frame computation through a given loader, rather
+   * than the one that loaded ASM (which may not be able to see them, e.g. when run from a build plugin).
+   * 
+   * The class being written doesn't exist yet, so it stands in for its superclass when finding common
+   * superclasses. Nothing can extend the class being written, so this gives the same answer.
+   */
+  static class LoaderClassWriter extends ClassWriter {
+    final ClassLoader loader;
+    final String thisName;
+    final String superName;
+    
+    LoaderClassWriter(int flags, ClassLoader loader, String thisName, String superName) {
+      super(flags);
+      this.loader = loader;
+      this.thisName = thisName;
+      this.superName = superName;
+    }
+    
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+      if (thisName.equals(type1)) {
+        type1 = superName;
+      }
+      if (thisName.equals(type2)) {
+        type2 = superName;
+      }
+      
+      Class<?> c, d;
+      try {
+        c = Class.forName(type1.replace('/', '.'), false, loader);
+        d = Class.forName(type2.replace('/', '.'), false, loader);
+      } catch (Exception e) {
+        throw new RuntimeException(e.toString());
+      }
+      
+      if (c.isAssignableFrom(d)) {
+        return type1;
+      }
+      if (d.isAssignableFrom(c)) {
+        return type2;
+      }
+      if (c.isInterface() || d.isInterface()) {
+        return "java/lang/Object";
+      } else {
+        do {
+          c = c.getSuperclass();
+        } while (!c.isAssignableFrom(d));
+        return c.getName().replace('.', '/');
+      }
+    }
+  }
+  
+  /**
+   * Get the name a pre-generated testing class for `clz` should have. Pre-generated classes (e.g. from
+   * the `publicfortests-maven-plugin`) are only used for the default configuration: only the methods 
+   * annotated {@literal @}PublicForTests made public, and no extra methods or interfaces.
+   * 
+   * @param clz The original class.
+   * 
+   * @return The binary name of the pre-generated testing class.
+   */
+  public static String getPregeneratedClassName(Class<?> clz) {
+    return clz.getName() + PREGENERATED_SUFFIX;
+  }
+  
+  /**
+   * Generate the bytecode for the pre-generated testing class for `clz`, named as per 
+   * {@link #getPregeneratedClassName(Class)}. Build tools can write this out as a class file 
+   * alongside `clz`, and `getTestingClass` will then load it rather than generating a new class, as long
+   * as `clz` hasn't been recompiled since.
+   * 
+   * @param clz The original class.
+   * 
+   * @return The bytecode for the testing class.
+   * 
+   * @throws IOException If the original class cannot be read.
+   */
+  public static byte[] generatePregeneratedClass(Class<?> clz) throws IOException {
+    byte[] original = readClassBytes(clz);
+    byte[] code = generateBytecode(clz, new ClassReader(original), getPregeneratedClassName(clz).replace('.', '/'), null, null, PFTOptions.DEFAULT);
+    
+    // Mark it with the original it came from, so it isn't used once the original has been recompiled.
+    ClassReader reader = new ClassReader(code);
+    ClassWriter writer = new ClassWriter(reader, 0);
+    int access = Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC
+        | ((reader.getAccess() & Opcodes.ACC_INTERFACE) != 0 ? Opcodes.ACC_PUBLIC : Opcodes.ACC_PRIVATE);
+    reader.accept(new ClassVisitor(Opcodes.ASM5, writer) {
+      @Override
+      public void visitEnd() {
+        cv.visitField(access, ORIGINAL_DIGEST_FIELD_PREFIX + GenerationCache.digest(original), "Z", null, null).visitEnd();
+        super.visitEnd();
+      }
+    }, 0);
+    return writer.toByteArray();
+  }
+  
+  /**
+   * Whether a class file has any methods or fields annotated {@literal @}PublicForTests, i.e. whether 
+   * {@link #generatePregeneratedClass(Class)} has anything to do for it. Only member headers are read, 
+   * not code.
+   * 
+   * @param classFile The bytes of the class file.
+   * 
+   * @return `true` if the class has annotated members.
+   */
+  public static boolean hasPublicForTestsMembers(byte[] classFile) {
+    return !PftAnnotationScanner.scan(new ClassReader(classFile)).isEmpty();
+  }
+  
+  /*
+   * Find the pre-generated testing class for `clz` in `loader`, if there is one, and it was generated from
+   * the same class file as `source` has for `clz`. One that `loader` only sees through a parent doesn't count,
+   * as the testing class was asked for in `loader` (a {@link PFTScope}'s, say, so it can be unloaded).
+   * 
+   * @return The pre-generated class, or `null` if there isn't one.
+   */
+  static Class<?> findPregeneratedClass(ClassLoader loader, Class<?> clz, ClassBytesSource source) {
+    String name = getPregeneratedClassName(clz);
+    Class<?> result;
+    try {
+      result = Class.forName(name, false, loader);
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+    if (result.getClassLoader() != loader) {
+      return null;
+    }
+    
+    if (result.getSuperclass() != clz.getSuperclass() || result.getPackage() != clz.getPackage()) {
+      log.warning(() -> "Ignoring class '" + name + "': it doesn't look like a testing class for " + clz.getName());
+      return null;
+    }
+    
+    String digest;
+    try {
+      digest = GenerationCache.digest(readClassBytes(clz, source));
+    } catch (IOException e) {
+      log.warning(() -> "Ignoring class '" + name + "': unable to read " + clz.getName() + " to check it (" + e + ")");
+      return null;
+    }
+    for (Field f : result.getDeclaredFields()) {
+      if (f.getName().equals(ORIGINAL_DIGEST_FIELD_PREFIX + digest)) {
+        return result;
+      }
+    }
+    log.warning(() -> "Ignoring class '" + name + "': it was generated from a different version of " + clz.getName() 
+        + "; generating a new testing class instead. Re-run the publicfortests-maven-plugin to update it");
+    return null;
+  }
+  
+  static Class<?> defineClass(ClassLoader loader, ClassNode node) {
+    return defineClass(loader, node.name, generateBytecode(node));
+  }
+  
+  static Class<?> defineClass(ClassLoader loader, String internalName, byte[] code) {
+    return DefineStrategy.CLASS_LOADER.define(loader, null, internalName, code);
+  }
+  
+  /**
+   * Generates a new class based on `clz` and then defines it in the given classloader. Any methods in `clz` 
+   * marked with the {@link PublicForTests} annotation will be made public, along with any methods supplied
+   * in the `extraMethods` Set.
+   * 
+   * The resulting class will implement all interfaces supplied in by the {@link PublicForTests} annotations,
+   * along with any interfaces supplied in the `extraInterfaces` Set.
+   * 
+   * Results are cached, so repeated calls for the same class, extra methods, interfaces and options return 
+   * the same `Class` for a given loader. Calls with a trace stream always generate a fresh class. See 
+   * {@link #invalidate(Class)} and {@link #invalidateAll()} to drop cached classes.
+   * 
+   * @param loader The loader to define the new class in. Note that {@link DefineStrategy#LOOKUP} and
+   *               {@link DefineStrategy#HIDDEN} can only define into the loader of `clz`.
+   * @param clz The original class.
+   * @param extraMethods Additional methods to make public (additional to those marked with {@literal @}PublicForTests).
+   * @param extraInterfaces Additional interfaces to implement (additional to those marked with {@literal @}PublicForTests).
+   * @param options Generation options, see {@link PFTOptions}. 
+   * 
+   * @return The new `Class` object.
+   */
+  @SuppressWarnings("unchecked")
+  public static <I> Class<I> getTestingClass(ClassLoader loader, 
+                                             Class<?> clz, 
+                                             Set<Method> extraMethods, 
+                                             Set<Class<?>> extraInterfaces, 
+                                             PFTOptions options) {
+    try {
+      if (options.getTrace() != null) {
+        ClassReader reader = new ClassReader(readClassBytes(clz, options.getClassBytesSource()));
+        ClassNode node = generateNewClassNode(clz, reader, newClassInternalName(clz), extraMethods, extraInterfaces, options);
+        return (Class<I>)define(options.getDefineStrategy(), loader, clz, node.name, dump(clz, node.name, generateBytecode(node)));
+      } else {
+        if ((extraMethods == null || extraMethods.isEmpty()) && (extraInterfaces == null || extraInterfaces.isEmpty())) {
+          PFTWarmup.record(clz);
+        }
+        return (Class<I>)cache.get(cache.new Request(loader, clz, extraMethods, extraInterfaces, options));
+      }
+    } catch (IOException e) {
+      metrics.failed(clz, e);
+      System.err.println("IOException: in getTestingClass: " + e.getMessage());      
+      throw new RuntimeException("Unrecoverable Error", e);
+    } catch (RuntimeException | LinkageError e) {
+      metrics.failed(clz, e);
+      throw e;
+    }
+  }
+
+  /**
+   * As {@link #getTestingClass(ClassLoader, Class, Set, Set, PFTOptions)}, with the given trace stream.
+   * 
+   * @param trace If non-null, the resulting class will be dumped (with a `TraceClassVisitor` to the given stream. 
+   */
+  public static <I> Class<I> getTestingClass(ClassLoader loader, 
+                                             Class<?> clz, 
+                                             Set<Method> extraMethods, 
+                                             Set<Class<?>> extraInterfaces, 
+                                             PrintStream trace) {
+    return getTestingClass(loader, clz, extraMethods, extraInterfaces, PFTOptions.DEFAULT.withTrace(trace));
+  }
+
+  public static <I> Class<I> getTestingClass(ClassLoader loader, 
+                                             Class<?> clz, 
+                                             Set<Method> extraMethods, 
+                                             Set<Class<?>> extraInterfaces) {
+    return getTestingClass(loader, clz, extraMethods, extraInterfaces, PFTOptions.DEFAULT);    
+  }
+  
+  public static <I> Class<I> getTestingClass(Class<?> clz, 
+                                             Set<Method> extraMethods, 
+                                             Set<Class<?>> extraInterfaces) {
+    return getTestingClass(PFTGen.class.getClassLoader(), clz, extraMethods, extraInterfaces, PFTOptions.DEFAULT);    
+  }
+  
+  public static <I> Class<I> getTestingClass(ClassLoader loader, Class<?> clz) {
+    return getTestingClass(loader, clz, EMPTY_METHODS, EMPTY_CLASSES, PFTOptions.DEFAULT);
+  }
+
+  public static <I> Class<I> getTestingClass(Class<?> clz, PrintStream trace) {
+    return getTestingClass(PFTGen.class.getClassLoader(), clz, EMPTY_METHODS, EMPTY_CLASSES, trace);
+  }
+  
+  /**
+   * As {@link #getTestingClass(Class)}, with the given options. When the options ask for a Lookup-based
+   * {@link DefineStrategy}, the class is defined in the loader of `clz`.
+   */
+  public static <I> Class<I> getTestingClass(Class<?> clz, PFTOptions options) {
+    ClassLoader loader = options.getDefineStrategy() == DefineStrategy.LOOKUP || options.getDefineStrategy() == DefineStrategy.HIDDEN
+                         ? clz.getClassLoader()
+                         : PFTGen.class.getClassLoader();
+    return getTestingClass(loader, clz, EMPTY_METHODS, EMPTY_CLASSES, options);
+  }
+  
+  public static <I> Class<I> getTestingClass(Class<?> clz) {
+    return getTestingClass(PFTGen.class.getClassLoader(), clz);
+  }
+
+  /**
+   * Opens a {@link PFTScope}, whose testing classes are defined in a loader of its own (a child of `parent`)
+   * and can be unloaded once it's closed.
+   * 
+   * @param parent The parent of the scope's loader. Original classes and testing interfaces must be visible through it.
+   * @param options Generation options, see {@link PFTOptions}. The define strategy must be `AUTO` or `CLASS_LOADER`.
+   * 
+   * @return The new scope. Close it when done with its testing classes.
+   */
+  public static PFTScope scope(ClassLoader parent, PFTOptions options) {
+    return new PFTScope(parent, options);
+  }
+  
+  /**
+   * As {@link #scope(ClassLoader, PFTOptions)}, with PFTGen's loader as the parent and the default options.
+   */
+  public static PFTScope scope() {
+    return scope(PFTGen.class.getClassLoader(), PFTOptions.DEFAULT);
+  }
+
+  /**
+   * Gets a view of an existing instance through a testing interface. Each interface method is forwarded 
+   * to the method of `instance` with the same name and parameter types, whether or not that's private
+   * (or static). Unlike with {@link #getTestingClass(Class)}, this works on objects created elsewhere, 
+   * and no copy of the original class is made.
+   * 
+   * A small view class is generated the first time each class and interface are used together, and 
+   * reused after that. Calls through it go through constant `MethodHandle`s, so are nearly as fast as
+   * direct calls once JIT compiled.
+   * 
+   * @param instance The object to view.
+   * @param testingInterface The interface to view it through.
+   * 
+   * @return A view of `instance`, implementing `testingInterface`.
+   * 
+   * @throws IllegalArgumentException If `instance` doesn't have a method for every interface method.
+   */
+  public static <I> I view(Object instance, Class<I> testingInterface) {
+    return PFTViews.view(instance, testingInterface);
+  }
+
+  /**
+   * Gets a factory for instances of the testing class for `clz`. `factoryInterface` is implemented by 
+   * a small generated class, each of whose methods calls the testing class constructor with the same 
+   * parameter types (even a private one), and returns the new instance. For example:
+   * 
+   * ```java
+   * public interface SomeClassFactory {
+   *   SomeClassTesting create(String name, int size);
+   * }
+   * 
+   * SomeClassFactory factory = PFTGen.factory(SomeClass.class, SomeClassFactory.class);
+   * SomeClassTesting sct = factory.create("test", 3);
+   * ```
+   * 
+   * Functional interfaces such as `Supplier<SomeClassTesting>` work too. The factory is generated the 
+   * first time each testing class and interface are used together, and reused after that. Constructors 
+   * are called through constant `MethodHandle`s, so once JIT compiled this is about as fast as `new`,
+   * and much faster than `Class.newInstance` or `Constructor.newInstance`.
+   * 
+   * @param loader The loader to define the testing class in.
+   * @param clz The original class.
+   * @param factoryInterface A public interface, each of whose methods matches a constructor and returns
+   *                         a type the testing class can be assigned to.
+   * @param options Generation options for the testing class, see {@link PFTOptions}.
+   * 
+   * @return An implementation of `factoryInterface`.
+   * 
+   * @throws IllegalArgumentException If `factoryInterface` isn't a public interface, or any of its methods 
+   *                                  has no matching constructor.
+   */
+  public static <F> F factory(ClassLoader loader, Class<?> clz, Class<F> factoryInterface, PFTOptions options) {
+    return PFTFactories.factory(getTestingClass(loader, clz, EMPTY_METHODS, EMPTY_CLASSES, options), factoryInterface);
+  }
+  
+  /**
+   * As {@link #factory(ClassLoader, Class, Class, PFTOptions)}, with the testing class from 
+   * {@link #getTestingClass(Class, PFTOptions)}.
+   */
+  public static <F> F factory(Class<?> clz, Class<F> factoryInterface, PFTOptions options) {
+    return PFTFactories.factory(getTestingClass(clz, options), factoryInterface);
+  }
+  
+  public static <F> F factory(Class<?> clz, Class<F> factoryInterface) {
+    return factory(clz, factoryInterface, PFTOptions.DEFAULT);
+  }
+
+  /**
+   * Gets the call counts and latencies recorded by a testing class generated with probes. For example:
+   *
+   * ```java
+   * Class<SomeClassTesting> clz = PFTGen.getTestingClass(SomeClass.class, PFTOptions.DEFAULT.withProbes(true));
+   * SomeClassTesting sct = clz.newInstance();
+   * // ... call sct.somePrivateMethod() lots
+   * assertThat(PFTGen.probes(clz).get("somePrivateMethod").getPercentileNanos(99)).isLessThan(10_000);
+   * ```
+   *
+   * Testing classes are cached, so the same class (and its probes) may be shared between tests. Call
+   * {@link PFTProbes#reset()} first to only see what a test does.
+   *
+   * @param testingClass A testing class, generated with {@link PFTOptions#withProbes(boolean)}.
+   *
+   * @return The probes for each of its {@literal @}PublicForTests methods.
+   *
+   * @throws IllegalArgumentException If `testingClass` has no probes.
+   */
+  public static PFTProbes probes(Class<?> testingClass) {
+    return PFTProbes.of(testingClass);
+  }
+
+  /**
+   * Gets testing classes for many original classes at once, as if by calling 
+   * {@link #getTestingClass(ClassLoader, Class, Set, Set, PFTOptions)} for each with no extra methods or interfaces.
+   * 
+   * Classes that aren't already cached have their bytecode read and generated in parallel, in the common
+   * `ForkJoinPool`. Defining is then done on the calling thread, in iteration order, so the classes are
+   * defined in the same order as they would be one at a time. When the options have a trace stream, 
+   * nothing is done in parallel.
+   * 
+   * A failure for one class doesn't stop the rest; see {@link BulkResult#getFailures()}.
+   * 
+   * @param loader The loader to define the new classes in.
+   * @param classes The original classes.
+   * @param options Generation options, see {@link PFTOptions}.
+   * 
+   * @return A {@link BulkResult} with the testing class, or failure, for each original class.
+   */
+  public static BulkResult getTestingClasses(ClassLoader loader, Collection<Class<?>> classes, PFTOptions options) {
+    Map<Class<?>, Class<?>> results = new LinkedHashMap<Class<?>, Class<?>>();
+    Map<Class<?>, Throwable> failures = new LinkedHashMap<Class<?>, Throwable>();
+
+    if (options.getTrace() != null) {
+      for (Class<?> clz : classes) {
+        try {
+          results.put(clz, getTestingClass(loader, clz, EMPTY_METHODS, EMPTY_CLASSES, options));
+        } catch (RuntimeException | LinkageError e) {
+          failures.put(clz, e);
+        }
+      }
+    } else {
+      List<GenerationCache.Request> requests = new ArrayList<GenerationCache.Request>();
+      for (Class<?> clz : new LinkedHashSet<Class<?>>(classes)) {
+        requests.add(cache.new Request(loader, clz, EMPTY_METHODS, EMPTY_CLASSES, options));
+      }
+
+      Map<GenerationCache.Request, Class<?>> defined = new HashMap<GenerationCache.Request, Class<?>>();
+      Map<GenerationCache.Request, Throwable> failed = new HashMap<GenerationCache.Request, Throwable>();
+      cache.getAll(requests, defined, failed);
+
+      for (GenerationCache.Request request : requests) {
+        if (defined.containsKey(request)) {
+          results.put(request.clz, defined.get(request));
+        } else {
+          metrics.failed(request.clz, failed.get(request));
+          failures.put(request.clz, failed.get(request));
+        }
+      }
+    }
+
+    return new BulkResult(results, failures);
+  }
+
+  /**
+   * As {@link #getTestingClasses(ClassLoader, Collection, PFTOptions)}, defining in PFTGen's loader with
+   * the default options.
+   */
+  public static BulkResult getTestingClasses(Collection<Class<?>> classes) {
+    return getTestingClasses(PFTGen.class.getClassLoader(), classes, PFTOptions.DEFAULT);
+  }
+
+  /**
+   * Gets testing classes for every class in the given package (but not sub-packages) that has 
+   * {@literal @}PublicForTests methods, as per {@link #getTestingClasses(ClassLoader, Collection, PFTOptions)}.
+   * Both directories and jars on the loader's classpath are searched (jars need directory entries, as
+   * the `jar` tool and Maven add by default).
+   * 
+   * @param loader The loader to find the original classes with, and to define the new classes in.
+   * @param packageName The package name, e.g. `com.example.model`.
+   * @param options Generation options, see {@link PFTOptions}.
+   */
+  public static BulkResult getTestingClasses(ClassLoader loader, String packageName, PFTOptions options) {
+    try {
+      return getTestingClasses(loader, findAnnotatedClasses(loader, packageName), options);
+    } catch (IOException e) {
+      System.err.println("IOException: in getTestingClasses: " + e.getMessage());      
+      throw new RuntimeException("Unrecoverable Error", e);
+    }
+  }
+
+  /**
+   * Gets testing classes for every class registered by the {@literal @}PublicForTests annotation processor
+   * (see {@link #getRegisteredClassNames(ClassLoader)}), as per {@link #getTestingClasses(ClassLoader, Collection, PFTOptions)}.
+   * No scanning is needed, so this is a cheap way to generate everything up front.
+   * 
+   * @param loader The loader to find the original classes with, and to define the new classes in.
+   * @param options Generation options, see {@link PFTOptions}.
+   */
+  public static BulkResult getTestingClasses(ClassLoader loader, PFTOptions options) {
+    List<Class<?>> classes = new ArrayList<Class<?>>();
+    for (String name : getRegisteredClassNames(loader)) {
+      try {
+        Class<?> clz = Class.forName(name, false, loader);
+        checkRegistry(clz, options.getClassBytesSource());
+        classes.add(clz);
+      } catch (ClassNotFoundException | LinkageError e) {
+        log.warning(() -> "Skipping registered class '" + name + "': " + e);
+      }
+    }
+    return getTestingClasses(loader, classes, options);
+  }
+
+  /*
+   * Warn if the registry entry for `clz` doesn't match the annotations in its class file. The registry can't
+   * be trusted over the class file, as it goes stale when the class is recompiled without annotation processing
+   * (e.g. by an IDE), so generating always scans the class file; this is only to say why a class registered
+   * here may not end up with the members the registry says.
+   */
+  static void checkRegistry(Class<?> clz, ClassBytesSource source) {
+    Map<String, String> registered = PFTRegistry.lookup(clz);
+    if (registered == null) {
+      return;
+    }
+    try {
+      if (!registered.equals(PftAnnotationScanner.scan(new ClassReader(readClassBytes(clz, source))))) {
+        log.warning(() -> "The @PublicForTests registry for " + clz.getName() + " doesn't match its class file; "
+            + "was it recompiled without annotation processing? Using the class file's annotations");
+      }
+    } catch (IOException e) {
+      // Generating its testing class will fail the same way, and report it.
+    }
+  }
+
+  /**
+   * Get the names of all classes with {@literal @}PublicForTests methods that were registered by the 
+   * annotation processor (`com.ilamstone.publicfortests.processor.PublicForTestsProcessor`, which `javac`
+   * runs automatically) and are visible to the given loader. Classes compiled without the processor
+   * aren't included.
+   * 
+   * @param loader The loader to look for registries with.
+   * 
+   * @return Binary names of the registered classes, in order.
+   */
+  public static Set<String> getRegisteredClassNames(ClassLoader loader) {
+    try {
+      Set<String> result = new LinkedHashSet<String>();
+      for (String name : PFTRegistry.classNames(loader)) {
+        // The index may be out of date after incremental compiles; the per-class entries won't be.
+        if (loader.getResource(PFTRegistry.PREFIX + name) != null) {
+          result.add(name);
+        }
+      }
+      return result;
+    } catch (IOException e) {
+      System.err.println("IOException: in getRegisteredClassNames: " + e.getMessage());      
+      throw new RuntimeException("Unrecoverable Error", e);
+    }
+  }
+
+  /*
+   * Find all classes directly in the given package, visible to `loader`, that have @PublicForTests methods.
+   */
+  static List<Class<?>> findAnnotatedClasses(ClassLoader loader, String packageName) throws IOException {
+    String path = packageName.replace('.', '/');
+    Set<String> names = new LinkedHashSet<String>();
+
+    Enumeration<URL> urls = loader.getResources(path);
+    while (urls.hasMoreElements()) {
+      URL url = urls.nextElement();
+      if ("file".equals(url.getProtocol())) {
+        File[] files;
+        try {
+          files = new File(url.toURI()).listFiles();
+        } catch (URISyntaxException e) {
+          throw new IOException("Bad package URL: " + url, e);
+        }
+        if (files != null) {
+          for (File f : files) {
+            addClassName(names, packageName, f.getName());
+          }
+        }
+      } else if ("jar".equals(url.getProtocol())) {
+        JarURLConnection conn = (JarURLConnection)url.openConnection();
+        conn.setUseCaches(false);
+        try (JarFile jar = conn.getJarFile()) {
+          Enumeration<JarEntry> entries = jar.entries();
+          while (entries.hasMoreElements()) {
+            String entry = entries.nextElement().getName();
+            if (entry.startsWith(path + "/") && entry.indexOf('/', path.length() + 1) < 0) {
+              addClassName(names, packageName, entry.substring(path.length() + 1));
+            }
+          }
+        }
+      } else {
+        log.warning(() -> "Not searching '" + url + "' for classes: unsupported protocol");
+      }
+    }
+
+    // Check for annotations in the class files, so only annotated classes get loaded.
+    List<Class<?>> result = new ArrayList<Class<?>>();
+    for (String name : names) {
+      try {
+        if (hasPublicForTestsMembers(readClassBytes(loader, name.replace('.', '/') + ".class"))) {
+          result.add(Class.forName(name, false, loader));
+        }
+      } catch (ClassNotFoundException | LinkageError | IOException e) {
+        log.warning(() -> "Skipping class '" + name + "': " + e);
+      }
+    }
+    return result;
+  }
+
+  private static void addClassName(Set<String> names, String packageName, String fileName) {
+    if (fileName.endsWith(".class") 
+        && !fileName.endsWith(PREGENERATED_SUFFIX + ".class") 
+        && !fileName.equals("package-info.class")
+        && !fileName.equals("module-info.class")) {
+      names.add(packageName + "." + fileName.substring(0, fileName.length() - ".class".length()));
+    }
+  }
+
+  /**
+   * Drop all cached testing classes (and their bytecode) generated from the given class. Subsequent
+   * calls to `getTestingClass` for it will generate a new class.
+   * 
+   * @param clz The original class.
+   */
+  public static void invalidate(Class<?> clz) {
+    cache.invalidate(clz);
+    interfacesFound.remove(clz);
+    ClassBytesSource.DEFAULT.invalidate(clz);
+  }
+
+  /**
+   * Drop all cached testing classes and bytecode.
+   */
+  public static void invalidateAll() {
+    cache.invalidateAll();
+    interfacesFound = newInterfacesFound();
+    ClassBytesSource.DEFAULT.invalidateAll();
+  }
+
+  /**
+   * @return A snapshot of the testing class cache counters.
+   */
+  public static CacheStats getCacheStats() {
+    return new CacheStats(cache);
+  }
+
+  /**
+   * @return A snapshot of the generation counters and stage timers, including the cache counters.
+   */
+  public static PFTGenStats getStats() {
+    return new PFTGenStats(metrics, getCacheStats());
+  }
+
+  /**
+   * Register a {@link PFTGenStatsMXBean} with the platform MBean server, under 
+   * {@link PFTGenStatsMXBean#OBJECT_NAME}, if it's not already there. This happens at startup
+   * when the `publicfortests.jmx` system property is `true`.
+   */
+  public static void registerStatsMBean() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new GenerationMetrics.StatsMXBean(), new ObjectName(PFTGenStatsMXBean.OBJECT_NAME));
+    } catch (InstanceAlreadyExistsException e) {
+      // Already registered, by an earlier call.
+    } catch (JMException e) {
+      System.err.println("JMException: in registerStatsMBean: " + e.getMessage());      
+      throw new RuntimeException("Unrecoverable Error", e);
+    }
+  }
+
+  /**
+   * Result of a bulk {@link PFTGen#getTestingClasses(ClassLoader, Collection, PFTOptions)} call. Both maps
+   * iterate in the order the original classes were given.
+   */
+  public static final class BulkResult {
+    private final Map<Class<?>, Class<?>> testingClasses;
+    private final Map<Class<?>, Throwable> failures;
+
+    BulkResult(Map<Class<?>, Class<?>> testingClasses, Map<Class<?>, Throwable> failures) {
+      this.testingClasses = Collections.unmodifiableMap(testingClasses);
+      this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return Testing classes, keyed by original class, for all classes that succeeded.
+     */
+    public Map<Class<?>, Class<?>> getTestingClasses() {
+      return testingClasses;
+    }
+
+    /**
+     * @return The exception, keyed by original class, for all classes that failed.
+     */
+    public Map<Class<?>, Throwable> getFailures() {
+      return failures;
+    }
+
+    public boolean isSuccessful() {
+      return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+      return "BulkResult[testingClasses=" + testingClasses.size() + ", failures=" + failures.keySet() + "]";
+    }
+  }
+
+  /**
+   * Point-in-time snapshot of the testing class cache counters.
+   * 
+   * `hits` counts calls answered straight from a previously-defined class. `pregeneratedHits` counts calls
+   * that found a pre-generated class (see {@link PFTGen#getPregeneratedClassName(Class)}). `bytecodeHits` 
+   * counts calls that reused cached bytecode, but had to define it (e.g. in a new loader). `misses` counts
+   * calls that had to generate new bytecode. `evictions` counts bytecode entries dropped to keep the cache within
+   * its size bound (set with the `publicfortests.cache.maxEntries` system property).
+   * 
+   * `changes` counts original classes found to have changed on disk since their testing classes were generated,
+   * when watching for that (with the `publicfortests.watch` system property). `regenerations` counts misses that
+   * reused the unchanged methods of the testing class generated for an earlier version of the class.
+   * 
+   * The `disk` counters are only non-zero when the persistent cache is enabled, by setting the 
+   * `publicfortests.cache.dir` system property. `diskHits` and `diskMisses` count lookups there (made after
+   * a miss in memory), `diskWrites` counts newly generated bytecode written to it, and `diskEvictions` counts
+   * files deleted to keep it within `publicfortests.cache.maxDiskBytes` (default 64MiB).
+   */
+  public static final class CacheStats {
+    private final long hits;
+    private final long pregeneratedHits;
+    private final long bytecodeHits;
+    private final long misses;
+    private final long evictions;
+    private final long changes;
+    private final long regenerations;
+    private final int size;
+    private final long diskHits;
+    private final long diskMisses;
+    private final long diskWrites;
+    private final long diskEvictions;
+
+    CacheStats(GenerationCache cache) {
+      this.hits = cache.hits.sum();
+      this.pregeneratedHits = cache.pregeneratedHits.sum();
+      this.bytecodeHits = cache.bytecodeHits.sum();
+      this.misses = cache.misses.sum();
+      this.evictions = cache.evictions.sum();
+      this.changes = cache.changes.sum();
+      this.regenerations = cache.regenerations.sum();
+      this.size = cache.size();
+      this.diskHits = cache.disk == null ? 0 : cache.disk.hits.sum();
+      this.diskMisses = cache.disk == null ? 0 : cache.disk.misses.sum();
+      this.diskWrites = cache.disk == null ? 0 : cache.disk.writes.sum();
+      this.diskEvictions = cache.disk == null ? 0 : cache.disk.evictions.sum();
+    }
+
+    public long getHits() {
+      return hits;
+    }
+
+    public long getPregeneratedHits() {
+      return pregeneratedHits;
+    }
+
+    public long getBytecodeHits() {
+      return bytecodeHits;
+    }
+
+    public long getMisses() {
+      return misses;
+    }
+
+    public long getEvictions() {
+      return evictions;
+    }
+
+    public long getChanges() {
+      return changes;
+    }
+
+    public long getRegenerations() {
+      return regenerations;
+    }
+
+    public int getSize() {
+      return size;
+    }
+
+    public long getDiskHits() {
+      return diskHits;
+    }
+
+    public long getDiskMisses() {
+      return diskMisses;
+    }
+
+    public long getDiskWrites() {
+      return diskWrites;
+    }
+
+    public long getDiskEvictions() {
+      return diskEvictions;
+    }
+
+    @Override
+    public String toString() {
+      return "CacheStats[hits=" + hits + ", pregeneratedHits=" + pregeneratedHits + ", bytecodeHits=" + bytecodeHits + ", misses=" + misses 
+          + ", evictions=" + evictions + ", changes=" + changes + ", regenerations=" + regenerations + ", size=" + size + ", diskHits=" + diskHits + ", diskMisses=" + diskMisses 
+          + ", diskWrites=" + diskWrites + ", diskEvictions=" + diskEvictions + "]";
+    }
+  }
+}
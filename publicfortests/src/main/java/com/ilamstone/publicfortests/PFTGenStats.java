@@ -0,0 +1,118 @@
+package com.ilamstone.publicfortests;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of what {@link PFTGen} has been doing: how many times each stage of generating testing
+ * classes has run and how long it took, how much was generated and defined, and how often it failed.
+ * Get one from {@link PFTGen#getStats()}.
+ *
+ * The same numbers are available over JMX (see {@link PFTGenStatsMXBean}), and each stage is also
+ * recorded as a `com.ilamstone.publicfortests.Stage` JFR event on JDKs with JFR.
+ */
+public final class PFTGenStats {
+  /**
+   * The stages of generating a testing class, in the order they run.
+   */
+  public enum Stage {
+    /** Reading the original class file. */
+    READ,
+    /** Finding the {@literal @}PublicForTests methods, and how the class refers to its own type. */
+    SCAN,
+    /** Transforming the original class into the testing class. */
+    TRANSFORM,
+    /** Computing stack map frames, for classes that can't keep their original frames. */
+    FRAMES,
+    /** Writing out the testing class file. */
+    WRITE,
+    /** Defining the testing class. */
+    DEFINE
+  }
+
+  private final long[] counts;
+  private final long[] nanos;
+  private final long bytesGenerated;
+  private final long classesGenerated;
+  private final long classesDefined;
+  private final Map<String, Long> classesDefinedByLoader;
+  private final long failures;
+  private final PFTGen.CacheStats cacheStats;
+
+  PFTGenStats(GenerationMetrics metrics, PFTGen.CacheStats cacheStats) {
+    this.counts = new long[Stage.values().length];
+    this.nanos = new long[Stage.values().length];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = metrics.counts[i].sum();
+      nanos[i] = metrics.nanos[i].sum();
+    }
+    this.bytesGenerated = metrics.bytesGenerated.sum();
+    this.classesGenerated = metrics.classesGenerated.sum();
+    this.classesDefinedByLoader = Collections.unmodifiableMap(metrics.classesDefinedByLoader());
+    this.classesDefined = metrics.classesDefined();
+    this.failures = metrics.failures.sum();
+    this.cacheStats = cacheStats;
+  }
+
+  /**
+   * @return The number of times `stage` has run.
+   */
+  public long getCount(Stage stage) {
+    return counts[stage.ordinal()];
+  }
+
+  /**
+   * @return The total time spent in `stage`, in nanoseconds.
+   */
+  public long getTotalNanos(Stage stage) {
+    return nanos[stage.ordinal()];
+  }
+
+  /**
+   * @return The total size of all generated class files, in bytes. Bytecode found in the cache isn't counted.
+   */
+  public long getBytesGenerated() {
+    return bytesGenerated;
+  }
+
+  public long getClassesGenerated() {
+    return classesGenerated;
+  }
+
+  public long getClassesDefined() {
+    return classesDefined;
+  }
+
+  /**
+   * @return The number of classes defined in each loader that's still alive, keyed by the loader's class
+   *         name and identity hash code (or `bootstrap`).
+   */
+  public Map<String, Long> getClassesDefinedByLoader() {
+    return classesDefinedByLoader;
+  }
+
+  /**
+   * @return The number of testing classes that couldn't be generated or defined.
+   */
+  public long getFailures() {
+    return failures;
+  }
+
+  public PFTGen.CacheStats getCacheStats() {
+    return cacheStats;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("PFTGenStats[");
+    for (Stage stage : Stage.values()) {
+      sb.append(stage.name().toLowerCase()).append('=').append(getCount(stage)).append('/')
+        .append(getTotalNanos(stage) / 1000).append("us, ");
+    }
+    return sb.append("bytesGenerated=").append(bytesGenerated)
+             .append(", classesGenerated=").append(classesGenerated)
+             .append(", classesDefined=").append(classesDefined)
+             .append(", failures=").append(failures)
+             .append(']').toString();
+  }
+}
@@ -0,0 +1,44 @@
+package com.ilamstone.publicfortests;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link PFTGenStats}, registered as `com.ilamstone.publicfortests:type=PFTGen` by
+ * {@link PFTGen#registerStatsMBean()}, or at startup when the `publicfortests.jmx` system property is `true`.
+ * Each attribute reads fresh numbers.
+ */
+public interface PFTGenStatsMXBean {
+  String OBJECT_NAME = "com.ilamstone.publicfortests:type=PFTGen";
+
+  /**
+   * @return The number of times each stage has run, by {@link PFTGenStats.Stage} name.
+   */
+  Map<String, Long> getStageCounts();
+
+  /**
+   * @return The total nanoseconds spent in each stage, by {@link PFTGenStats.Stage} name.
+   */
+  Map<String, Long> getStageNanos();
+
+  long getBytesGenerated();
+
+  long getClassesGenerated();
+
+  long getClassesDefined();
+
+  Map<String, Long> getClassesDefinedByLoader();
+
+  long getFailures();
+
+  long getCacheHits();
+
+  long getCacheMisses();
+
+  long getPregeneratedHits();
+
+  long getBytecodeHits();
+
+  long getCacheEvictions();
+
+  int getCacheSize();
+}
@@ -0,0 +1,131 @@
+package com.ilamstone.publicfortests;
+
+import java.io.PrintStream;
+
+/**
+ * Options for generating a testing class with {@link PFTGen}. Instances are immutable; use the
+ * `with...` methods to derive new ones, starting from {@link #DEFAULT}. For example:
+ *
+ * ```java
+ * PFTGen.getTestingClass(SomeClass.class, PFTOptions.DEFAULT.withDefineStrategy(DefineStrategy.HIDDEN));
+ * ```
+ */
+public final class PFTOptions {
+  /**
+   * The options used by the `getTestingClass` variants that don't take any.
+   */
+  public static final PFTOptions DEFAULT = new PFTOptions(DefineStrategy.AUTO, null, ClassBytesSource.DEFAULT, false, false);
+
+  private final DefineStrategy defineStrategy;
+  private final PrintStream trace;
+  private final ClassBytesSource classBytesSource;
+  private final boolean slim;
+  private final boolean probes;
+
+  private PFTOptions(DefineStrategy defineStrategy, PrintStream trace, ClassBytesSource classBytesSource, boolean slim, boolean probes) {
+    this.defineStrategy = defineStrategy;
+    this.trace = trace;
+    this.classBytesSource = classBytesSource;
+    this.slim = slim;
+    this.probes = probes;
+  }
+
+  /**
+   * @return How the testing class will be defined.
+   */
+  public DefineStrategy getDefineStrategy() {
+    return defineStrategy;
+  }
+
+  /**
+   * @return The stream the generated class will be dumped to, or `null`.
+   */
+  public PrintStream getTrace() {
+    return trace;
+  }
+
+  /**
+   * @return Where original class files will be read from.
+   */
+  public ClassBytesSource getClassBytesSource() {
+    return classBytesSource;
+  }
+
+  /**
+   * @return Whether testing classes will only keep the members they need.
+   */
+  public boolean isSlim() {
+    return slim;
+  }
+
+  /**
+   * @return Whether the methods made public will count and time their calls.
+   */
+  public boolean hasProbes() {
+    return probes;
+  }
+
+  /**
+   * @param defineStrategy How the testing class should be defined.
+   *
+   * @return A copy of these options, with the given {@link DefineStrategy}.
+   */
+  public PFTOptions withDefineStrategy(DefineStrategy defineStrategy) {
+    if (defineStrategy == null) {
+      throw new IllegalArgumentException("defineStrategy cannot be null");
+    }
+    return new PFTOptions(defineStrategy, trace, classBytesSource, slim, probes);
+  }
+
+  /**
+   * @param trace If non-null, the generated class will be dumped (with a `TraceClassVisitor`) to this stream,
+   *              on the calling thread. Traced classes are never cached. To look at everything that's
+   *              generated without slowing generation down, set the `publicfortests.dump.dir` system property
+   *              instead, which writes classes out in the background.
+   *
+   * @return A copy of these options, with the given trace stream.
+   */
+  public PFTOptions withTrace(PrintStream trace) {
+    return new PFTOptions(defineStrategy, trace, classBytesSource, slim, probes);
+  }
+
+  /**
+   * @param classBytesSource Where original class files should be read from. They are only read when a 
+   *                         testing class isn't already cached.
+   *
+   * @return A copy of these options, with the given {@link ClassBytesSource}.
+   */
+  public PFTOptions withClassBytesSource(ClassBytesSource classBytesSource) {
+    if (classBytesSource == null) {
+      throw new IllegalArgumentException("classBytesSource cannot be null");
+    }
+    return new PFTOptions(defineStrategy, trace, classBytesSource, slim, probes);
+  }
+
+  /**
+   * @param slim If true, testing classes only keep the methods and fields reachable from the methods made
+   *             public, the constructors and the static initializer (following calls, field accesses and 
+   *             lambdas), along with any methods that implement interfaces or override superclass methods.
+   *             Everything else is left out, so there is less to transform, verify and keep in metaspace.
+   *             This is worth it for very large classes. Members that are only used reflectively are left
+   *             out too.
+   *
+   * @return A copy of these options, with slim generation turned on or off.
+   */
+  public PFTOptions withSlim(boolean slim) {
+    return new PFTOptions(defineStrategy, trace, classBytesSource, slim, probes);
+  }
+
+  /**
+   * @param probes If true, each method made public counts its calls and records how long they take and
+   *               what they allocate, so tests can check on them with {@link PFTGen#probes(Class)}. Each
+   *               probe reads the clock and the thread's allocation counter twice on every call, so leave
+   *               this off unless it's wanted. Needs the original class to be compiled for Java 7 or later;
+   *               older ones are generated without probes.
+   *
+   * @return A copy of these options, with probes turned on or off.
+   */
+  public PFTOptions withProbes(boolean probes) {
+    return new PFTOptions(defineStrategy, trace, classBytesSource, slim, probes);
+  }
+}
@@ -0,0 +1,434 @@
+package com.ilamstone.publicfortests;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.objectweb.asm.Type;
+
+/**
+ * Invocation counts, latencies and allocations for the {@literal @}PublicForTests methods of a testing class
+ * generated with probes (see {@link PFTOptions#withProbes(boolean)}). Get one from {@link PFTGen#probes(Class)}:
+ *
+ * ```java
+ * PFTGen.probes(testing.getClass()).reset();
+ * // ... exercise testing.somePrivateMethod()
+ * PFTProbes.Snapshot stats = PFTGen.probes(testing.getClass()).get("somePrivateMethod");
+ * assertThat(stats.getInvocations()).isEqualTo(1000);
+ * assertThat(stats.getPercentileNanos(99)).isLessThan(50_000);
+ * ```
+ *
+ * Each call is counted as it starts, and timed with `System.nanoTime()` when it returns or throws. Times
+ * go into a histogram with buckets about 12% wide, so percentiles are that precise. Recording doesn't
+ * allocate, and threads record into separate stripes so they don't contend.
+ *
+ * Where the JVM can count the bytes each thread allocates (HotSpot and OpenJ9 can; see
+ * {@link #isAllocationTracked()}), probes also record the bytes allocated on the calling thread during each
+ * call. To check that code doesn't allocate once it's warmed up, with or without probes, use
+ * {@link #assertAllocatesAtMost(Runnable, long)}.
+ *
+ * Reading the clock and the allocation counter twice each is most of what a probe costs, typically
+ * 100-150ns per call, so latencies of very small methods are mostly the probe.
+ */
+public final class PFTProbes {
+  /* Suffix for the renamed body of a probed method; the original name is taken by the probing wrapper */
+  static final String BODY_SUFFIX = "$$probed";
+
+  /* Descriptor of {@link #bootstrap(MethodHandles.Lookup, String, MethodType, String)} */
+  static final String BOOTSTRAP_DESC = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;)Ljava/lang/invoke/CallSite;";
+
+  /* Latencies below 2 * SUB_BUCKETS get a bucket each; above that, each power of two is split into SUB_BUCKETS */
+  static final int SUB_BITS = 3;
+  static final int SUB_BUCKETS = 1 << SUB_BITS;
+  static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+  /* Slots after the buckets in each stripe */
+  static final int TOTAL = BUCKETS;
+  static final int MAX = BUCKETS + 1;
+  static final int ALLOCATED = BUCKETS + 2;
+  static final int MAX_ALLOCATED = BUCKETS + 3;
+
+  /* Descriptor of the `invokedynamic` call that gets a probed method its {@link Probe} */
+  static final String PROBE_DESC = "()Lcom/ilamstone/publicfortests/PFTProbes$Probe;";
+
+  /* Calls per round, and the most rounds and time to warm up for, in {@link #assertAllocatesAtMost(Runnable, long)} */
+  static final int ALLOCATION_ROUND_CALLS = 1000;
+  static final int ALLOCATION_MAX_ROUNDS = 500;
+  static final long ALLOCATION_MAX_NANOS = 5_000_000_000L;
+
+  /* Counts bytes allocated by each thread, or null if this JVM can't */
+  static final com.sun.management.ThreadMXBean THREADS = threadsIfAllocationsCounted();
+
+  static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+  static final ClassValue<PFTProbes> PROBES = new ClassValue<PFTProbes>() {
+    @Override
+    protected PFTProbes computeValue(Class<?> testingClass) {
+      return new PFTProbes(testingClass);
+    }
+  };
+
+  /**
+   * The recorder for a single probed method. This is only public so generated code can call it.
+   */
+  public static final class Probe {
+    final String method;
+    final LongAdder invocations = new LongAdder();
+    final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+    Probe(String method) {
+      this.method = method;
+      for (int i = 0; i < stripes.length; i++) {
+        stripes[i] = new AtomicLongArray(BUCKETS + 4);
+      }
+    }
+
+    /**
+     * Count a call. The probed method reads the clock after this, and passes what this returns (the bytes
+     * allocated by this thread so far) to {@link #stop(long, long, long)}.
+     */
+    public long start() {
+      invocations.increment();
+      return allocatedBytes();
+    }
+
+    /**
+     * Record a call that ran from `startNanos` to `endNanos`.
+     */
+    public void stop(long endNanos, long startNanos, long startAllocated) {
+      long allocated = Math.max(0, allocatedBytes() - startAllocated);
+      long nanos = Math.max(0, endNanos - startNanos);
+      AtomicLongArray stripe = stripes[(int)Thread.currentThread().getId() & (stripes.length - 1)];
+      stripe.incrementAndGet(bucket(nanos));
+      stripe.addAndGet(TOTAL, nanos);
+      raise(stripe, MAX, nanos);
+      stripe.addAndGet(ALLOCATED, allocated);
+      raise(stripe, MAX_ALLOCATED, allocated);
+    }
+
+    static void raise(AtomicLongArray stripe, int slot, long value) {
+      long max;
+      while (value > (max = stripe.get(slot)) && !stripe.compareAndSet(slot, max, value)) {
+        // Another call on this stripe raised it first; try again.
+      }
+    }
+
+    void reset() {
+      invocations.reset();
+      for (AtomicLongArray stripe : stripes) {
+        for (int i = 0; i < stripe.length(); i++) {
+          stripe.set(i, 0);
+        }
+      }
+    }
+  }
+
+  private final Class<?> testingClass;
+
+  /* Probes by method name + descriptor, for every probed method */
+  private final Map<String, Probe> probes = new TreeMap<String, Probe>();
+
+  private PFTProbes(Class<?> testingClass) {
+    this.testingClass = testingClass;
+    for (Method m : testingClass.getDeclaredMethods()) {
+      if (m.getName().endsWith(BODY_SUFFIX)) {
+        String name = m.getName().substring(0, m.getName().length() - BODY_SUFFIX.length());
+        probes.put(name + Type.getMethodDescriptor(m), new Probe(name + Type.getMethodDescriptor(m)));
+      }
+    }
+  }
+
+  static PFTProbes of(Class<?> testingClass) {
+    PFTProbes result = PROBES.get(testingClass);
+    if (result.probes.isEmpty()) {
+      throw new IllegalArgumentException(testingClass.getName() + " has no probes; generate it with PFTOptions.withProbes(true)");
+    }
+    return result;
+  }
+
+  /**
+   * Bootstrap for the `invokedynamic` call site in each probed method, which always returns the method's
+   * {@link Probe}. It's linked on the first call, before anything is measured, so linking doesn't count
+   * as the first call's time or allocations. Not meant to be called otherwise.
+   *
+   * @param method The probed method, as name + descriptor.
+   */
+  public static CallSite bootstrap(MethodHandles.Lookup caller, String name, MethodType type, String method) {
+    Probe probe = PROBES.get(caller.lookupClass()).probes.get(method);
+    if (probe == null) {
+      throw new IllegalArgumentException("No probe for " + method + " in " + caller.lookupClass().getName());
+    }
+    return new ConstantCallSite(MethodHandles.constant(Probe.class, probe));
+  }
+
+  /**
+   * @return The probed methods, as name + descriptor (e.g. `somePrivateMethod()Ljava/lang/String;`).
+   */
+  public Set<String> getMethods() {
+    return Collections.unmodifiableSet(probes.keySet());
+  }
+
+  /**
+   * @param method The method's name, or if it's overloaded, its name + descriptor.
+   *
+   * @return A snapshot of the method's counts and latencies so far.
+   *
+   * @throws IllegalArgumentException If there's no such probed method, or the name is ambiguous.
+   */
+  public Snapshot get(String method) {
+    Probe probe = probes.get(method);
+    if (probe == null) {
+      for (Map.Entry<String, Probe> e : probes.entrySet()) {
+        if (e.getKey().startsWith(method + "(")) {
+          if (probe != null) {
+            throw new IllegalArgumentException("'" + method + "' is overloaded in " + testingClass.getName() + "; use one of " + probes.keySet());
+          }
+          probe = e.getValue();
+        }
+      }
+    }
+    if (probe == null) {
+      throw new IllegalArgumentException("No probed method '" + method + "' in " + testingClass.getName() + "; there's " + probes.keySet());
+    }
+    return new Snapshot(probe);
+  }
+
+  /**
+   * Zero every probe for this testing class. Calls in progress while resetting may or may not be counted.
+   */
+  public void reset() {
+    for (Probe probe : probes.values()) {
+      probe.reset();
+    }
+  }
+
+  /**
+   * @return Whether this JVM counts the bytes allocated by each thread, which probes and
+   *         {@link #assertAllocatesAtMost(Runnable, long)} need to report allocations.
+   */
+  public static boolean isAllocationTracked() {
+    return THREADS != null;
+  }
+
+  /**
+   * Assert that `call` allocates no more than `bytes` per call on the calling thread, once warmed up. For example:
+   *
+   * ```java
+   * SomeClassTesting sct = PFTGen.<SomeClassTesting>getTestingClass(SomeClass.class).newInstance();
+   * PFTProbes.assertAllocatesAtMost(() -> sct.somePrivateMethod(42), 0);
+   * ```
+   *
+   * `call` is run in rounds of {@value #ALLOCATION_ROUND_CALLS} calls, and the assertion passes as soon
+   * as a round allocates within budget. Allocations the JIT compiler removes (by escape analysis, say) don't
+   * count, so early rounds that run interpreted may allocate more. If no round is within budget after
+   * {@value #ALLOCATION_MAX_ROUNDS} rounds, or five seconds, the assertion fails. Make sure results that are
+   * meant to be allocated are used (by assigning them to a field, say), or they may be optimized away too.
+   *
+   * This doesn't need probes. Only allocations on the calling thread are counted.
+   *
+   * @throws AssertionError If `call` allocates more than `bytes` per call, in every round.
+   * @throws UnsupportedOperationException If this JVM doesn't count allocations (see {@link #isAllocationTracked()}).
+   */
+  public static void assertAllocatesAtMost(Runnable call, long bytes) {
+    if (THREADS == null) {
+      throw new UnsupportedOperationException("This JVM doesn't count the bytes allocated by each thread");
+    }
+
+    long best = Long.MAX_VALUE;
+    long deadline = System.nanoTime() + ALLOCATION_MAX_NANOS;
+    int rounds = 0;
+    do {
+      long before = allocatedBytes();
+      for (int i = 0; i < ALLOCATION_ROUND_CALLS; i++) {
+        call.run();
+      }
+      long allocated = allocatedBytes() - before;
+      if (allocated <= bytes * ALLOCATION_ROUND_CALLS) {
+        return;
+      }
+      best = Math.min(best, allocated);
+    } while (++rounds < ALLOCATION_MAX_ROUNDS && System.nanoTime() - deadline < 0);
+
+    throw new AssertionError(String.format("Expected at most %d bytes allocated per call, but the best of %d rounds of %d calls allocated %.1f per call",
+                                           bytes, rounds, ALLOCATION_ROUND_CALLS, (double)best / ALLOCATION_ROUND_CALLS));
+  }
+
+  /*
+   * The bytes allocated by this thread so far, or 0 if they aren't counted.
+   */
+  static long allocatedBytes() {
+    return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  static com.sun.management.ThreadMXBean threadsIfAllocationsCounted() {
+    try {
+      java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+        return null;
+      }
+      com.sun.management.ThreadMXBean result = (com.sun.management.ThreadMXBean)threads;
+      if (!result.isThreadAllocatedMemorySupported()) {
+        return null;
+      }
+      if (!result.isThreadAllocatedMemoryEnabled()) {
+        result.setThreadAllocatedMemoryEnabled(true);
+      }
+      return result;
+    } catch (LinkageError | UnsupportedOperationException | SecurityException e) {
+      return null;
+    }
+  }
+
+  /*
+   * The histogram bucket for a latency.
+   */
+  static int bucket(long nanos) {
+    if (nanos < SUB_BUCKETS * 2) {
+      return (int)nanos;
+    }
+    int exp = 63 - Long.numberOfLeadingZeros(nanos);
+    return (exp - SUB_BITS + 1) * SUB_BUCKETS + (int)((nanos >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1));
+  }
+
+  /*
+   * The largest latency that goes in a bucket.
+   */
+  static long bucketMax(int bucket) {
+    if (bucket < SUB_BUCKETS * 2) {
+      return bucket;
+    }
+    int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+    long width = 1L << (exp - SUB_BITS);
+    return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width - 1;
+  }
+
+  /**
+   * Counts, latencies and allocations for one probed method, at the time it was taken.
+   */
+  public static final class Snapshot {
+    private final String method;
+    private final long invocations;
+    private final long[] buckets = new long[BUCKETS];
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long allocatedBytes;
+    private final long maxAllocatedBytes;
+
+    Snapshot(Probe probe) {
+      this.method = probe.method;
+      this.invocations = probe.invocations.sum();
+      long count = 0, total = 0, max = 0, allocated = 0, maxAllocated = 0;
+      for (AtomicLongArray stripe : probe.stripes) {
+        for (int i = 0; i < BUCKETS; i++) {
+          long n = stripe.get(i);
+          buckets[i] += n;
+          count += n;
+        }
+        total += stripe.get(TOTAL);
+        max = Math.max(max, stripe.get(MAX));
+        allocated += stripe.get(ALLOCATED);
+        maxAllocated = Math.max(maxAllocated, stripe.get(MAX_ALLOCATED));
+      }
+      this.count = count;
+      this.totalNanos = total;
+      this.maxNanos = max;
+      this.allocatedBytes = isAllocationTracked() ? allocated : -1;
+      this.maxAllocatedBytes = isAllocationTracked() ? maxAllocated : -1;
+    }
+
+    /**
+     * @return The method, as name + descriptor.
+     */
+    public String getMethod() {
+      return method;
+    }
+
+    /**
+     * @return The number of calls started, including any still running.
+     */
+    public long getInvocations() {
+      return invocations;
+    }
+
+    /**
+     * @return The number of calls that have returned or thrown, which are the ones the latencies are for.
+     */
+    public long getCount() {
+      return count;
+    }
+
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    public long getMaxNanos() {
+      return maxNanos;
+    }
+
+    public double getMeanNanos() {
+      return count == 0 ? 0 : (double)totalNanos / count;
+    }
+
+    /**
+     * @return The bytes allocated on the calling threads during the calls counted, or -1 if allocations
+     *         aren't tracked (see {@link PFTProbes#isAllocationTracked()}).
+     */
+    public long getAllocatedBytes() {
+      return allocatedBytes;
+    }
+
+    /**
+     * @return The most bytes allocated during a single call, or -1 if allocations aren't tracked.
+     */
+    public long getMaxAllocatedBytes() {
+      return maxAllocatedBytes;
+    }
+
+    /**
+     * @return The mean bytes allocated per call, or -1 if allocations aren't tracked.
+     */
+    public double getMeanAllocatedBytes() {
+      return allocatedBytes < 0 ? -1 : count == 0 ? 0 : (double)allocatedBytes / count;
+    }
+
+    /**
+     * @param percentile From 0 to 100, e.g. 99.9.
+     *
+     * @return A latency that at least `percentile`% of calls took no longer than, within the histogram's
+     *         precision (and never more than {@link #getMaxNanos()}), or 0 if nothing has been recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+      if (percentile < 0 || percentile > 100) {
+        throw new IllegalArgumentException("percentile must be from 0 to 100, not " + percentile);
+      }
+      if (count == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += buckets[i];
+        if (seen >= rank) {
+          return Math.min(bucketMax(i), maxNanos);
+        }
+      }
+      return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+      return "Snapshot[method=" + method + ", invocations=" + invocations + ", count=" + count + ", meanNanos=" + (long)getMeanNanos()
+          + ", p50Nanos=" + getPercentileNanos(50) + ", p99Nanos=" + getPercentileNanos(99) + ", maxNanos=" + maxNanos + ", allocatedBytes=" + allocatedBytes + ", maxAllocatedBytes=" + maxAllocatedBytes + "]";
+    }
+  }
+}
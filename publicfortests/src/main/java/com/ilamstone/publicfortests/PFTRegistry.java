@@ -0,0 +1,86 @@
+package com.ilamstone.publicfortests;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/*
+ * Reads the registry of {@literal @}PublicForTests methods written by
+ * {@link com.ilamstone.publicfortests.processor.PublicForTestsProcessor}.
+ */
+final class PFTRegistry {
+  private static final Logger log = Logger.getLogger(PFTRegistry.class.getName());
+
+  /* Must match PublicForTestsProcessor */
+  static final String PREFIX = "META-INF/publicfortests/";
+  static final String INDEX = PREFIX + "index";
+
+  private PFTRegistry() { }
+
+  /*
+   * Get the registered {@literal @}PublicForTests methods for `clz`. 
+   * 
+   * @return Method name + descriptor, mapped to the testing interface's binary name, or `null` if `clz`
+   *         isn't registered (e.g. it wasn't compiled with the annotation processor).
+   */
+  static Map<String, String> lookup(Class<?> clz) {
+    ClassLoader loader = clz.getClassLoader();
+    String resource = PREFIX + clz.getName();
+    URL url = loader == null ? ClassLoader.getSystemResource(resource) : loader.getResource(resource);
+    if (url == null) {
+      return null;
+    }
+
+    Map<String, String> result = new LinkedHashMap<String, String>();
+    try (BufferedReader r = reader(url)) {
+      String line;
+      while ((line = r.readLine()) != null) {
+        String[] parts = line.split(" ");
+        if (parts.length == 3) {
+          result.put(parts[0] + parts[1], parts[2]);
+        } else if (!line.isEmpty()) {
+          String bad = line;
+          log.warning(() -> "Ignoring registry for " + clz.getName() + ": bad line '" + bad + "' in " + url);
+          return null;
+        }
+      }
+    } catch (IOException e) {
+      log.warning(() -> "Ignoring registry for " + clz.getName() + ": " + e);
+      return null;
+    }
+    return result;
+  }
+
+  /*
+   * @return The binary names of all registered classes visible to `loader`, from every index it can see.
+   */
+  static Set<String> classNames(ClassLoader loader) throws IOException {
+    Set<String> result = new TreeSet<String>();
+    Enumeration<URL> urls = loader.getResources(INDEX);
+    while (urls.hasMoreElements()) {
+      try (BufferedReader r = reader(urls.nextElement())) {
+        String line;
+        while ((line = r.readLine()) != null) {
+          if (!line.isEmpty()) {
+            result.add(line);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private static BufferedReader reader(URL url) throws IOException {
+    InputStream in = url.openStream();
+    return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,169 @@
+package com.ilamstone.publicfortests;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.objectweb.asm.Type;
+
+/**
+ * A scope for generating testing classes that can be unloaded again. Testing classes generated through
+ * a scope are defined in a loader of its own, rather than the caller's loader, so once the scope is closed
+ * (and nothing else refers to them) they, and their loader, can be garbage collected:
+ *
+ * ```java
+ * try (PFTScope scope = PFTGen.scope()) {
+ *   SomeClassTesting sct = scope.<SomeClassTesting>getTestingClass(SomeClass.class).newInstance();
+ *   // ...
+ * }
+ * ```
+ *
+ * Without scopes, every generated class lives as long as the loader it was defined in, which for most
+ * tests is the application loader, and so metaspace grows with every class generated.
+ *
+ * So that testing classes can still use package-private classes from their original's package, the scope's
+ * loader defines its own copies of the (non-interface) classes in that package. Those copies have their own
+ * static state, and aren't the same types as the originals: only pass instances of interfaces (like the
+ * testing interfaces, which are shared with the parent loader) or of classes from other packages into and
+ * out of testing classes.
+ *
+ * Bytecode is shared with the main cache, so after the first scope a testing class only needs defining.
+ */
+public final class PFTScope implements AutoCloseable {
+  private static final Set<Method> EMPTY_METHODS = Collections.emptySet();
+  private static final Set<Class<?>> EMPTY_CLASSES = Collections.emptySet();
+
+  private final PFTOptions options;
+  private volatile ScopeLoader loader;
+
+  PFTScope(ClassLoader parent, PFTOptions options) {
+    DefineStrategy strategy = options.getDefineStrategy();
+    if (strategy == DefineStrategy.LOOKUP || strategy == DefineStrategy.HIDDEN) {
+      throw new IllegalArgumentException("Scopes define into their own loader, which " + strategy + " can't do");
+    }
+    this.options = options.withDefineStrategy(DefineStrategy.CLASS_LOADER);
+    this.loader = new ScopeLoader(parent, options.getClassBytesSource());
+  }
+
+  /**
+   * As {@link PFTGen#getTestingClass(ClassLoader, Class, Set, Set, PFTOptions)}, defining in this scope's loader.
+   *
+   * @throws IllegalStateException If the scope has been closed.
+   */
+  public <I> Class<I> getTestingClass(Class<?> clz, Set<Method> extraMethods, Set<Class<?>> extraInterfaces) {
+    ScopeLoader loader = this.loader;
+    if (loader == null) {
+      throw new IllegalStateException("Scope is closed");
+    }
+    loader.addPackageOf(clz);
+    return PFTGen.getTestingClass(loader, clz, extraMethods, extraInterfaces, options);
+  }
+
+  public <I> Class<I> getTestingClass(Class<?> clz) {
+    return getTestingClass(clz, EMPTY_METHODS, EMPTY_CLASSES);
+  }
+
+  /**
+   * As {@link PFTGen#factory(ClassLoader, Class, Class, PFTOptions)}, for the testing class in this scope. 
+   * The factory is defined in this scope's loader too, so goes away along with it.
+   *
+   * @throws IllegalStateException If the scope has been closed.
+   */
+  public <F> F factory(Class<?> clz, Class<F> factoryInterface) {
+    return PFTFactories.factory(getTestingClass(clz), factoryInterface);
+  }
+
+  /**
+   * @return The loader testing classes in this scope are defined in.
+   *
+   * @throws IllegalStateException If the scope has been closed.
+   */
+  public ClassLoader getClassLoader() {
+    ScopeLoader loader = this.loader;
+    if (loader == null) {
+      throw new IllegalStateException("Scope is closed");
+    }
+    return loader;
+  }
+
+  public boolean isClosed() {
+    return loader == null;
+  }
+
+  /**
+   * Let go of this scope's loader. Its testing classes can be unloaded as soon as nothing else refers to
+   * them (or their instances). Closing a closed scope does nothing.
+   */
+  @Override
+  public void close() {
+    loader = null;
+  }
+
+  /*
+   * Child-first for the non-interface classes in the packages of original classes, so testing classes
+   * end up in the same runtime package as their package-private collaborators. Everything else
+   * (including interfaces, so testing interfaces are the caller's) comes from the parent.
+   */
+  static final class ScopeLoader extends ClassLoader {
+    /* Packages, as internal names with a trailing '/', that this loader defines its own classes for */
+    private final Set<String> packages = ConcurrentHashMap.newKeySet();
+    private final ClassBytesSource source;
+
+    ScopeLoader(ClassLoader parent, ClassBytesSource source) {
+      super(parent);
+      this.source = source;
+    }
+
+    void addPackageOf(Class<?> clz) {
+      packages.add(packageOf(Type.getInternalName(clz)));
+    }
+
+    /*
+     * Define a testing class, without the reflection {@link DefineStrategy#CLASS_LOADER} otherwise needs.
+     */
+    Class<?> define(String internalName, byte[] code) {
+      return defineClass(internalName.replace('/', '.'), code, 0, code.length);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      String internalName = name.replace('.', '/');
+      if (!packages.contains(packageOf(internalName))) {
+        return super.loadClass(name, resolve);
+      }
+
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> result = findLoadedClass(name);
+        if (result == null) {
+          // Going through the parent (which has usually loaded the class already) finds interfaces and
+          // missing classes without reading any class files, and the source caches the rest.
+          Class<?> parentClass = super.loadClass(name, false);
+          if (parentClass.isInterface()) {
+            return parentClass;
+          }
+
+          byte[] code;
+          try {
+            code = source.getClassBytes(parentClass);
+          } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+          }
+          if (code == null) {
+            return parentClass;
+          }
+          result = defineClass(name, code, 0, code.length);
+        }
+        if (resolve) {
+          resolveClass(result);
+        }
+        return result;
+      }
+    }
+
+    private static String packageOf(String internalName) {
+      return internalName.substring(0, internalName.lastIndexOf('/') + 1);
+    }
+  }
+}
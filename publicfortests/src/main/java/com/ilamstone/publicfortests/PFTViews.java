@@ -0,0 +1,311 @@
+package com.ilamstone.publicfortests;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Support for {@link PFTGen#view(Object, Class)}. This is only public so that generated view classes
+ * can reach {@link #take(String)}; there's nothing here for tests to use directly.
+ *
+ * A view class implements a testing interface by forwarding each method, through a `static final`
+ * `MethodHandle`, to the matching (usually private) method of the original class, called on the
+ * instance the view wraps. Since the handles are constants, calls through a view JIT to (nearly)
+ * direct calls. Nothing from the original class is copied.
+ *
+ * View classes are generated once per original class and interface, in the interface's package and loader.
+ */
+public final class PFTViews {
+  private static final String MH = Type.getInternalName(MethodHandle.class);
+  private static final String MH_DESC = Type.getDescriptor(MethodHandle.class);
+  private static final String TARGET = "target";
+
+  /* Handles for view classes that have been defined, but not yet initialized, by view class name */
+  private static final Map<String, MethodHandle[]> pending = new ConcurrentHashMap<String, MethodHandle[]>();
+  private static final AtomicInteger counter = new AtomicInteger();
+
+  /* Constructor handles, typed (Object)Object, by original class and then testing interface */
+  private static final ClassValue<Map<Class<?>, MethodHandle>> factories = new ClassValue<Map<Class<?>, MethodHandle>>() {
+    @Override
+    protected Map<Class<?>, MethodHandle> computeValue(Class<?> type) {
+      return new ConcurrentHashMap<Class<?>, MethodHandle>();
+    }
+  };
+
+  private PFTViews() { }
+
+  /**
+   * Called once, from the static initializer of each generated view class.
+   *
+   * @param viewClassName The view class's binary name.
+   *
+   * @return The handles for its methods, in declaration order.
+   */
+  public static MethodHandle[] take(String viewClassName) {
+    MethodHandle[] handles = pending.remove(viewClassName);
+    if (handles == null) {
+      throw new IllegalStateException("No method handles for " + viewClassName);
+    }
+    return handles;
+  }
+
+  static <I> I view(Object instance, Class<I> iface) {
+    if (instance == null) {
+      throw new IllegalArgumentException("instance cannot be null");
+    }
+    if (!iface.isInterface()) {
+      throw new IllegalArgumentException(iface.getName() + " is not an interface");
+    }
+
+    MethodHandle factory = factories.get(instance.getClass()).computeIfAbsent(iface, i -> newFactory(instance.getClass(), i));
+    try {
+      return iface.cast((Object)factory.invokeExact(instance));
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      System.err.println("Throwable: in view: " + t.getMessage());
+      throw new RuntimeException("Unrecoverable Error", t);
+    }
+  }
+
+  static MethodHandle newFactory(Class<?> clz, Class<?> iface) {
+    List<Method> methods = new ArrayList<Method>();
+    Set<String> seen = new HashSet<String>();
+    for (Method m : iface.getMethods()) {
+      // The same method can be inherited through more than one superinterface.
+      if (Modifier.isAbstract(m.getModifiers()) && seen.add(m.getName() + Type.getMethodDescriptor(m))) {
+        methods.add(m);
+      }
+    }
+
+    MethodHandle[] handles = new MethodHandle[methods.size()];
+    for (int i = 0; i < handles.length; i++) {
+      handles[i] = targetHandle(clz, methods.get(i));
+    }
+
+    String name = Type.getInternalName(iface) + "$$PFTView$" + counter.incrementAndGet();
+    byte[] code = generateViewClass(name, iface, methods);
+
+    pending.put(name.replace('/', '.'), handles);
+    try {
+      Class<?> view = DefineStrategy.AUTO.define(iface.getClassLoader(), iface, name, code);
+      Class.forName(view.getName(), true, view.getClassLoader());
+      return MethodHandles.publicLookup()
+                          .findConstructor(view, MethodType.methodType(void.class, Object.class))
+                          .asType(MethodType.methodType(Object.class, Object.class));
+    } catch (ReflectiveOperationException e) {
+      System.err.println("ReflectiveOperationException: in newFactory: " + e.getMessage());
+      throw new RuntimeException("Unrecoverable Error", e);
+    } finally {
+      pending.remove(name.replace('/', '.'));
+    }
+  }
+
+  /*
+   * A handle on the method of `clz` (or a superclass) matching `ifaceMethod`, typed as `ifaceMethod` with
+   * an extra `Object` receiver first. Static methods ignore the receiver.
+   */
+  static MethodHandle targetHandle(Class<?> clz, Method ifaceMethod) {
+    Method target = findMethod(clz, ifaceMethod.getName(), ifaceMethod.getParameterTypes());
+    if (target == null) {
+      MethodHandle accessor = fieldHandle(clz, ifaceMethod);
+      if (accessor != null) {
+        return accessor;
+      }
+      throw new IllegalArgumentException("No method matching " + ifaceMethod + " in " + clz.getName());
+    }
+
+    try {
+      MethodHandle handle = unreflect(target);
+      if (Modifier.isStatic(target.getModifiers())) {
+        handle = MethodHandles.dropArguments(handle, 0, Object.class);
+      }
+      return handle.asType(MethodType.methodType(ifaceMethod.getReturnType(), ifaceMethod.getParameterTypes())
+                                     .insertParameterTypes(0, Object.class));
+    } catch (IllegalAccessException | WrongMethodTypeException e) {
+      throw new IllegalArgumentException("Cannot call " + target + " as " + ifaceMethod, e);
+    }
+  }
+
+  /*
+   * For an interface method with no matching method, a getter or setter on the field it would be generated
+   * for in a testing class (see {@link PFTGen#accessorName(String, String)}), typed as for {@link #targetHandle}.
+   * 
+   * @return The handle, or `null` if `ifaceMethod` isn't shaped like an accessor for a field of `clz`.
+   */
+  static MethodHandle fieldHandle(Class<?> clz, Method ifaceMethod) {
+    String name = ifaceMethod.getName();
+    Class<?>[] params = ifaceMethod.getParameterTypes();
+    boolean getter = name.startsWith("get") && params.length == 0;
+    boolean setter = name.startsWith("set") && params.length == 1 && ifaceMethod.getReturnType() == void.class;
+    if (name.length() < 4 || !(getter || setter)) {
+      return null;
+    }
+
+    Field target = findField(clz, Character.toLowerCase(name.charAt(3)) + name.substring(4));
+    if (target == null || (setter && Modifier.isFinal(target.getModifiers()))) {
+      return null;
+    }
+
+    try {
+      MethodHandle handle = setter ? unreflectSetter(target) : unreflectGetter(target);
+      if (Modifier.isStatic(target.getModifiers())) {
+        handle = MethodHandles.dropArguments(handle, 0, Object.class);
+      }
+      return handle.asType(MethodType.methodType(ifaceMethod.getReturnType(), params).insertParameterTypes(0, Object.class));
+    } catch (IllegalAccessException | WrongMethodTypeException e) {
+      throw new IllegalArgumentException("Cannot access " + target + " as " + ifaceMethod, e);
+    }
+  }
+
+  static Field findField(Class<?> clz, String name) {
+    for (Class<?> c = clz; c != null; c = c.getSuperclass()) {
+      for (Field f : c.getDeclaredFields()) {
+        if (f.getName().equals(name)) {
+          return f;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static MethodHandle unreflectGetter(Field f) throws IllegalAccessException {
+    if (DefineStrategy.LookupHandles.PRIVATE_LOOKUP_IN != null) {
+      try {
+        return DefineStrategy.privateLookupIn(f.getDeclaringClass()).unreflectGetter(f);
+      } catch (Throwable t) {
+        // Not open to us; fall back to setAccessible below, which may still work.
+      }
+    }
+
+    f.setAccessible(true);
+    return MethodHandles.lookup().unreflectGetter(f);
+  }
+
+  private static MethodHandle unreflectSetter(Field f) throws IllegalAccessException {
+    if (DefineStrategy.LookupHandles.PRIVATE_LOOKUP_IN != null) {
+      try {
+        return DefineStrategy.privateLookupIn(f.getDeclaringClass()).unreflectSetter(f);
+      } catch (Throwable t) {
+        // Not open to us; fall back to setAccessible below, which may still work.
+      }
+    }
+
+    f.setAccessible(true);
+    return MethodHandles.lookup().unreflectSetter(f);
+  }
+
+  static Method findMethod(Class<?> clz, String name, Class<?>[] parameterTypes) {
+    for (Class<?> c = clz; c != null; c = c.getSuperclass()) {
+      for (Method m : c.getDeclaredMethods()) {
+        if (m.getName().equals(name) && Arrays.equals(m.getParameterTypes(), parameterTypes) && !m.isBridge()) {
+          return m;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static MethodHandle unreflect(Method m) throws IllegalAccessException {
+    if (DefineStrategy.LookupHandles.PRIVATE_LOOKUP_IN != null) {
+      try {
+        return DefineStrategy.privateLookupIn(m.getDeclaringClass()).unreflect(m);
+      } catch (Throwable t) {
+        // Not open to us; fall back to setAccessible below, which may still work.
+      }
+    }
+
+    m.setAccessible(true);
+    return MethodHandles.lookup().unreflect(m);
+  }
+
+  /*
+   * public final class <name> implements <iface> {
+   *   private static final MethodHandle h0, h1, ...;
+   *   private final Object target;
+   *
+   *   static { MethodHandle[] h = PFTViews.take("<name>"); h0 = h[0]; ... }
+   *
+   *   public <name>(Object target) { this.target = target; }
+   *
+   *   public R m0(A a, ...) { return (R)h0.invokeExact(target, a, ...); }
+   *   ...
+   * }
+   */
+  static byte[] generateViewClass(String name, Class<?> iface, List<Method> methods) {
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC,
+             name, null, "java/lang/Object", new String[] { Type.getInternalName(iface) });
+
+    for (int i = 0; i < methods.size(); i++) {
+      cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "h" + i, MH_DESC, null, null).visitEnd();
+    }
+    cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, TARGET, "Ljava/lang/Object;", null, null).visitEnd();
+
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+    mv.visitCode();
+    mv.visitLdcInsn(name.replace('/', '.'));
+    mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(PFTViews.class), "take", "(Ljava/lang/String;)[" + MH_DESC, false);
+    for (int i = 0; i < methods.size(); i++) {
+      mv.visitInsn(Opcodes.DUP);
+      mv.visitLdcInsn(i);
+      mv.visitInsn(Opcodes.AALOAD);
+      mv.visitFieldInsn(Opcodes.PUTSTATIC, name, "h" + i, MH_DESC);
+    }
+    mv.visitInsn(Opcodes.POP);
+    mv.visitInsn(Opcodes.RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(Ljava/lang/Object;)V", null, null);
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitVarInsn(Opcodes.ALOAD, 1);
+    mv.visitFieldInsn(Opcodes.PUTFIELD, name, TARGET, "Ljava/lang/Object;");
+    mv.visitInsn(Opcodes.RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    for (int i = 0; i < methods.size(); i++) {
+      Method m = methods.get(i);
+      Type type = Type.getType(m);
+      mv = cw.visitMethod(Opcodes.ACC_PUBLIC, m.getName(), type.getDescriptor(), null, null);
+      mv.visitCode();
+      mv.visitFieldInsn(Opcodes.GETSTATIC, name, "h" + i, MH_DESC);
+      mv.visitVarInsn(Opcodes.ALOAD, 0);
+      mv.visitFieldInsn(Opcodes.GETFIELD, name, TARGET, "Ljava/lang/Object;");
+      int slot = 1;
+      for (Type arg : type.getArgumentTypes()) {
+        mv.visitVarInsn(arg.getOpcode(Opcodes.ILOAD), slot);
+        slot += arg.getSize();
+      }
+      String invokeDesc = "(Ljava/lang/Object;" + type.getDescriptor().substring(1);
+      mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, MH, "invokeExact", invokeDesc, false);
+      mv.visitInsn(type.getReturnType().getOpcode(Opcodes.IRETURN));
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+    }
+
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+}
@@ -0,0 +1,299 @@
+package com.ilamstone.publicfortests;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Generates testing classes on background threads, so that by the time a test asks for one with
+ * {@link PFTGen#getTestingClass(Class)} it's already cached, and the first test to touch each class
+ * doesn't pay for reading, generating and defining it (or, for the very first, for loading and warming
+ * up ASM). A test that asks for a class while it's still being warmed up waits for that generation
+ * rather than starting another.
+ *
+ * Classes are warmed up as for `getTestingClass(Class)`, with no extra methods or interfaces, default
+ * options, and defined in PFTGen's loader. Tests asking for them any other way (e.g. in another loader)
+ * still reuse the generated bytecode.
+ *
+ * Warm-up is usually configured with system properties, e.g. for surefire:
+ *
+ * ```xml
+ * <systemPropertyVariables>
+ *   <publicfortests.warmup>registry,${project.build.directory}/publicfortests-warmup.txt</publicfortests.warmup>
+ *   <publicfortests.warmup.record>${project.build.directory}/publicfortests-warmup.txt</publicfortests.warmup.record>
+ * </systemPropertyVariables>
+ * <properties>
+ *   <property>
+ *     <name>listener</name>
+ *     <value>com.ilamstone.publicfortests.PFTWarmupListener</value>
+ *   </property>
+ * </properties>
+ * ```
+ *
+ * `publicfortests.warmup` is a comma-separated list of where to get class names from: `registry` for every
+ * class registered by the {@literal @}PublicForTests annotation processor (see
+ * {@link PFTGen#getRegisteredClassNames(ClassLoader)}), or the path of a file with a class name on each
+ * line, such as one recorded by an earlier run. Missing files are skipped, so the first run just records.
+ *
+ * `publicfortests.warmup.record` is a file to write, when the JVM exits, the names of the original classes
+ * tests asked for, in the order they first asked. Names already in the file that weren't asked for this
+ * time are kept (after the others), so running a few tests doesn't lose the rest.
+ *
+ * `publicfortests.warmup.threads` is how many threads to warm up with (default half the processors).
+ *
+ * Warm-up starts when {@link PFTWarmupListener} is created (as surefire does before running any tests)
+ * or, failing that, the first time PFTGen is used.
+ */
+public final class PFTWarmup {
+  private static final Logger log = Logger.getLogger(PFTWarmup.class.getName());
+
+  static final String CLASSES_PROPERTY = "publicfortests.warmup";
+  static final String RECORD_PROPERTY = "publicfortests.warmup.record";
+  static final String THREADS_PROPERTY = "publicfortests.warmup.threads";
+  static final String REGISTRY = "registry";
+
+  private static final AtomicInteger threadIds = new AtomicInteger();
+
+  /* The warm-up configured by system properties, once started; see startFromProperties */
+  private static boolean startedFromProperties;
+  private static PFTWarmup fromProperties;
+
+  /* Records the classes tests ask for, if `publicfortests.warmup.record` is set */
+  static volatile Recorder recorder = Recorder.fromProperties();
+
+  /* Whether this thread is warming up, so what it asks for isn't what tests asked for */
+  private static final ThreadLocal<Boolean> warming = ThreadLocal.withInitial(() -> false);
+
+  /*
+   * The original classes asked for, in the order first asked for, to be written to a file at exit.
+   */
+  static final class Recorder {
+    final Path file;
+    final Set<String> seen = ConcurrentHashMap.newKeySet();
+    final Queue<String> order = new ConcurrentLinkedQueue<String>();
+
+    Recorder(Path file) {
+      this.file = file;
+    }
+
+    static Recorder fromProperties() {
+      String file = System.getProperty(RECORD_PROPERTY);
+      if (file == null || file.isEmpty()) {
+        return null;
+      }
+
+      Recorder recorder = new Recorder(Paths.get(file));
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          recorder.write();
+        } catch (IOException e) {
+          log.warning(() -> "Failed to record warm-up classes to '" + recorder.file + "': " + e);
+        }
+      }));
+      return recorder;
+    }
+
+    void record(Class<?> clz) {
+      if (seen.add(clz.getName())) {
+        order.add(clz.getName());
+      }
+    }
+
+    void write() throws IOException {
+      Set<String> names = new LinkedHashSet<String>(order);
+      names.addAll(readClassNames(file));
+      if (file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+      Files.write(file, names, StandardCharsets.UTF_8);
+    }
+  }
+
+  private final List<String> classNames;
+  private final ExecutorService pool;
+  private final CountDownLatch remaining;
+  private final LongAdder warmed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final long started = System.nanoTime();
+
+  private PFTWarmup(List<String> classNames, int threads) {
+    this.classNames = classNames;
+    this.remaining = new CountDownLatch(classNames.size());
+    this.pool = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "publicfortests-warmup-" + threadIds.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Start warming up testing classes for the given original classes, in order.
+   *
+   * @param loader The loader to load the original classes with. They aren't initialized.
+   * @param classNames Binary names of the original classes.
+   * @param threads How many threads to warm up with.
+   *
+   * @return The warm-up, which carries on in the background.
+   */
+  public static PFTWarmup start(ClassLoader loader, Collection<String> classNames, int threads) {
+    PFTWarmup warmup = new PFTWarmup(new ArrayList<String>(new LinkedHashSet<String>(classNames)), threads);
+    for (String name : warmup.classNames) {
+      warmup.pool.execute(() -> warmup.warm(loader, name));
+    }
+    warmup.pool.shutdown();
+    return warmup;
+  }
+
+  /**
+   * Start the warm-up configured by system properties (see above), if it hasn't been started already.
+   * Original classes are loaded with the context class loader.
+   *
+   * @return The warm-up, or `null` if none is configured.
+   */
+  public static synchronized PFTWarmup startFromProperties() {
+    if (!startedFromProperties) {
+      startedFromProperties = true;
+      String spec = System.getProperty(CLASSES_PROPERTY);
+      if (spec != null && !spec.isEmpty()) {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+          loader = PFTWarmup.class.getClassLoader();
+        }
+        fromProperties = start(loader, classNames(loader, spec), Integer.getInteger(THREADS_PROPERTY, defaultThreads()));
+      }
+    }
+    return fromProperties;
+  }
+
+  static int defaultThreads() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  }
+
+  /*
+   * The class names for a `publicfortests.warmup` value, in order and without duplicates.
+   */
+  static List<String> classNames(ClassLoader loader, String spec) {
+    Set<String> result = new LinkedHashSet<String>();
+    for (String source : spec.split(",")) {
+      source = source.trim();
+      if (REGISTRY.equals(source)) {
+        result.addAll(PFTGen.getRegisteredClassNames(loader));
+      } else if (!source.isEmpty()) {
+        try {
+          result.addAll(readClassNames(Paths.get(source)));
+        } catch (IOException e) {
+          String file = source;
+          log.warning(() -> "Not warming up classes from '" + file + "': " + e);
+        }
+      }
+    }
+    return new ArrayList<String>(result);
+  }
+
+  /*
+   * @return The class names in a warm-up file, ignoring blank lines and `#` comments, or none if it doesn't exist.
+   */
+  static List<String> readClassNames(Path file) throws IOException {
+    List<String> result = new ArrayList<String>();
+    if (Files.exists(file)) {
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          result.add(line);
+        }
+      }
+    }
+    return result;
+  }
+
+  static void record(Class<?> clz) {
+    Recorder r = recorder;
+    if (r != null && !warming.get()) {
+      r.record(clz);
+    }
+  }
+
+  private void warm(ClassLoader loader, String name) {
+    warming.set(true);
+    try {
+      PFTGen.getTestingClass(Class.forName(name, false, loader));
+      warmed.increment();
+    } catch (ClassNotFoundException | RuntimeException | LinkageError e) {
+      failed.increment();
+      // The test that wants it (if any) will get the same failure, so there's no need to shout here.
+      log.fine(() -> "Failed to warm up '" + name + "': " + e);
+    } finally {
+      warming.remove();
+      remaining.countDown();
+      if (remaining.getCount() == 0) {
+        log.fine(() -> "Warmed up " + getWarmed() + " testing classes (" + getFailed() + " failed) in "
+                       + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + "ms");
+      }
+    }
+  }
+
+  /**
+   * Wait for the warm-up to finish.
+   *
+   * @return Whether it did, before the timeout.
+   */
+  public boolean awaitDone(long timeout, TimeUnit unit) throws InterruptedException {
+    return remaining.await(timeout, unit);
+  }
+
+  public boolean isDone() {
+    return remaining.getCount() == 0;
+  }
+
+  /**
+   * Stop warming up. Classes already being generated are still finished, and then the warm-up is done.
+   */
+  public void cancel() {
+    for (int i = pool.shutdownNow().size(); i > 0; i--) {
+      remaining.countDown();
+    }
+  }
+
+  /**
+   * @return The original class names being warmed up, in order.
+   */
+  public List<String> getClassNames() {
+    return classNames;
+  }
+
+  /**
+   * @return How many testing classes have been warmed up so far.
+   */
+  public long getWarmed() {
+    return warmed.sum();
+  }
+
+  /**
+   * @return How many classes couldn't be warmed up (e.g. because they couldn't be found).
+   */
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "PFTWarmup[classes=" + classNames.size() + ", warmed=" + getWarmed() + ", failed=" + getFailed() + "]";
+  }
+}
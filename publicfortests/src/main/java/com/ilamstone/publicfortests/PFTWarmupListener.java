@@ -0,0 +1,14 @@
+package com.ilamstone.publicfortests;
+
+import org.junit.runner.notification.RunListener;
+
+/**
+ * JUnit listener that starts the {@link PFTWarmup} configured by system properties as soon as it's
+ * created, which surefire does before running any tests. Register it with surefire's `listener` property,
+ * or with `JUnitCore.addListener`.
+ */
+public class PFTWarmupListener extends RunListener {
+  public PFTWarmupListener() {
+    PFTWarmup.startFromProperties();
+  }
+}
@@ -0,0 +1,190 @@
+package com.ilamstone.publicfortests;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/*
+ * The members of a class that a slim testing class (see {@link PFTOptions#withSlim(boolean)}) keeps:
+ * everything reachable from its roots, by following calls, field accesses and method handles (including
+ * lambda bodies) that refer to the class itself.
+ *
+ * The roots are the methods being made public, the constructors and static initializer, and any method
+ * that could be called from outside through a supertype: implementations of interface methods (both the
+ * class's own interfaces and the testing interfaces) and overrides of superclass methods. Fields getting
+ * accessors are always kept.
+ *
+ * Methods and fields are kept apart, as name + descriptor, since the two can't always be told apart
+ * from that alone.
+ */
+final class Reachability {
+  final Set<String> methods = new HashSet<String>();
+  final Set<String> fields = new HashSet<String>();
+
+  /*
+   * Own methods and fields referred to from the body of each method, and every method the class declares.
+   */
+  static final class EdgeScanner extends ClassVisitor {
+    final String internalName;
+    final Set<String> declared = new HashSet<String>();
+    final Map<String, Set<String>> calls = new HashMap<String, Set<String>>();
+    final Map<String, Set<String>> accesses = new HashMap<String, Set<String>>();
+
+    EdgeScanner(String internalName) {
+      super(Opcodes.ASM5);
+      this.internalName = internalName;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+      String key = name + desc;
+      declared.add(key);
+      Set<String> callees = new HashSet<String>();
+      Set<String> fields = new HashSet<String>();
+      calls.put(key, callees);
+      accesses.put(key, fields);
+
+      return new MethodVisitor(Opcodes.ASM5) {
+        void handle(Object o) {
+          if (o instanceof Handle) {
+            Handle h = (Handle)o;
+            if (internalName.equals(h.getOwner())) {
+              if (h.getTag() <= Opcodes.H_PUTSTATIC) {
+                fields.add(h.getName() + h.getDesc());
+              } else {
+                callees.add(h.getName() + h.getDesc());
+              }
+            }
+          }
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+          if (internalName.equals(owner)) {
+            callees.add(name + desc);
+          }
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+          if (internalName.equals(owner)) {
+            fields.add(name + desc);
+          }
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+          handle(bsm);
+          for (Object arg : bsmArgs) {
+            handle(arg);
+          }
+        }
+
+        @Override
+        public void visitLdcInsn(Object cst) {
+          handle(cst);
+        }
+      };
+    }
+  }
+
+  /*
+   * @param clz The original class.
+   * @param reader A reader for the original class.
+   * @param pftMethods The methods being made public, as name + descriptor.
+   * @param pftFields The fields getting accessors, as name + descriptor. These are always kept.
+   * @param interfaces The testing interfaces being added, as internal names.
+   */
+  static Reachability find(Class<?> clz, ClassReader reader, Set<String> pftMethods, Set<String> pftFields, Set<String> interfaces) {
+    EdgeScanner scanner = new EdgeScanner(reader.getClassName());
+    reader.accept(scanner, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+    Deque<String> pending = new ArrayDeque<String>();
+    for (String key : scanner.declared) {
+      if (key.startsWith("<") || pftMethods.contains(key)) {
+        pending.add(key);
+      }
+    }
+    for (String key : callableFromOutside(clz, interfaces)) {
+      if (scanner.declared.contains(key)) {
+        pending.add(key);
+      }
+    }
+
+    Reachability result = new Reachability();
+    result.fields.addAll(pftFields);
+    while (!pending.isEmpty()) {
+      String key = pending.poll();
+      // Calls to inherited methods are through the class's own name too, but there's nothing here to keep.
+      if (scanner.declared.contains(key) && result.methods.add(key)) {
+        pending.addAll(scanner.calls.get(key));
+        result.fields.addAll(scanner.accesses.get(key));
+      }
+    }
+    return result;
+  }
+
+  /*
+   * Methods (name + descriptor) that code outside the class could call through a supertype, so must be
+   * kept even when nothing in the class calls them.
+   */
+  static Set<String> callableFromOutside(Class<?> clz, Set<String> interfaces) {
+    Set<String> result = new HashSet<String>();
+    for (Class<?> s = clz.getSuperclass(); s != null; s = s.getSuperclass()) {
+      for (Method m : s.getDeclaredMethods()) {
+        if (!Modifier.isPrivate(m.getModifiers()) && !Modifier.isStatic(m.getModifiers())) {
+          result.add(m.getName() + Type.getMethodDescriptor(m));
+        }
+      }
+    }
+
+    Set<Class<?>> ifaces = new HashSet<Class<?>>();
+    for (Class<?> s = clz; s != null; s = s.getSuperclass()) {
+      ifaces.addAll(Arrays.asList(s.getInterfaces()));
+    }
+    for (String name : interfaces) {
+      try {
+        ifaces.add(Class.forName(name.replace('/', '.'), false, clz.getClassLoader()));
+      } catch (ClassNotFoundException | LinkageError e) {
+        // Can't be implemented then, and defining will fail anyway.
+      }
+    }
+    for (Class<?> iface : ifaces) {
+      for (Method m : iface.getMethods()) {
+        result.add(m.getName() + Type.getMethodDescriptor(m));
+      }
+    }
+    return result;
+  }
+
+  /*
+   * @return A visitor that passes only the reachable members on to `delegate`.
+   */
+  ClassVisitor filter(ClassVisitor delegate) {
+    return new ClassVisitor(Opcodes.ASM5, delegate) {
+      @Override
+      public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        return fields.contains(name + desc) ? super.visitField(access, name, desc, signature, value) : null;
+      }
+
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        return methods.contains(name + desc) ? super.visitMethod(access, name, desc, signature, exceptions) : null;
+      }
+    };
+  }
+}
@@ -0,0 +1,116 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.ilamstone.publicfortests.PFTAgent.UnlockTransformer;
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.LambdaClass1;
+import com.ilamstone.publicfortests.testmodel.PrivateWithoutAnnotation;
+import com.ilamstone.publicfortests.testmodel.SelfCallClass1;
+
+/*
+ * Runs the agent's transformer the way the JVM would, in a loader that loads its own copies of the
+ * given classes. (The test JVM itself doesn't run with the agent.)
+ */
+public class FuncTestPFTAgent {
+  static class UnlockingLoader extends ClassLoader {
+    final UnlockTransformer transformer;
+    final Set<String> names;
+
+    UnlockingLoader(UnlockTransformer transformer, Class<?>... classes) {
+      super(FuncTestPFTAgent.class.getClassLoader());
+      this.transformer = transformer;
+      this.names = new HashSet<String>();
+      for (Class<?> clz : classes) {
+        names.add(clz.getName());
+      }
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      synchronized (getClassLoadingLock(name)) {
+        if (!names.contains(name)) {
+          return super.loadClass(name, resolve);
+        }
+
+        Class<?> result = findLoadedClass(name);
+        if (result == null) {
+          try {
+            byte[] bytes = PFTGen.readClassBytes(getParent(), name.replace('.', '/') + ".class");
+            byte[] transformed = transformer.transform(this, name.replace('.', '/'), null, null, bytes);
+            if (transformed != null) {
+              bytes = transformed;
+            }
+            result = defineClass(name, bytes, 0, bytes.length);
+          } catch (java.io.IOException e) {
+            throw new ClassNotFoundException(name, e);
+          }
+        }
+        return result;
+      }
+    }
+  }
+
+  @Test
+  public void testClassIsUnlockedInPlace() throws Exception {
+    UnlockingLoader loader = new UnlockingLoader(new UnlockTransformer(null), Class1.class);
+    Class<?> clz = loader.loadClass(Class1.class.getName());
+
+    assertThat(clz.getName()).isEqualTo(Class1.class.getName());
+    assertThat(Class1Testing.class.isAssignableFrom(clz)).isTrue();
+    assertThat(Modifier.isPublic(clz.getDeclaredMethod("somePrivateMethod").getModifiers())).isTrue();
+    assertThat(((Class1Testing)clz.newInstance()).somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+    assertThat(PFTAgent.isUnlocked(clz)).isTrue();
+    assertThat(PFTAgent.isUnlocked(Class1.class)).isFalse();
+  }
+
+  @Test
+  public void testGetTestingClassReturnsUnlockedClass() throws Exception {
+    UnlockingLoader loader = new UnlockingLoader(new UnlockTransformer(null), Class1.class);
+    Class<?> clz = loader.loadClass(Class1.class.getName());
+
+    assertThat(PFTGen.<Class1Testing>getTestingClass(loader, clz)).isSameAs(clz);
+
+    // Extras still need a generated class.
+    Class<?> withExtras = PFTGen.getTestingClass(loader, clz, null, Collections.<Class<?>>singleton(Runnable.class));
+    assertThat(withExtras).isNotSameAs(clz);
+    assertThat(Runnable.class.isAssignableFrom(withExtras)).isTrue();
+  }
+
+  @Test
+  public void testSelfCallsAndLambdasStillWork() throws Exception {
+    UnlockingLoader loader = new UnlockingLoader(new UnlockTransformer(null), SelfCallClass1.class, LambdaClass1.class);
+
+    Class1Testing selfCall = (Class1Testing)loader.loadClass(SelfCallClass1.class.getName()).newInstance();
+    assertThat(selfCall.somePrivateMethod()).isEqualTo(SelfCallClass1.PRIVATE_EXPECTATION);
+    assertThat(selfCall.somePublicMethod()).isEqualTo(SelfCallClass1.PUBLIC_EXPECTATION);
+
+    Class1Testing lambda = (Class1Testing)loader.loadClass(LambdaClass1.class.getName()).newInstance();
+    assertThat(lambda.somePrivateMethod()).isEqualTo(LambdaClass1.PRIVATE_EXPECTATION);
+  }
+
+  @Test
+  public void testOnlyAnnotatedAndWantedClassesAreTransformed() throws Exception {
+    UnlockTransformer all = new UnlockTransformer("");
+    UnlockTransformer others = new UnlockTransformer("com.example, org.example");
+    byte[] annotated = PFTGen.readClassBytes(Class1.class);
+    byte[] plain = PFTGen.readClassBytes(PrivateWithoutAnnotation.class);
+    ClassLoader loader = new ClassLoader() { };
+
+    assertThat(all.transform(loader, "com/ilamstone/publicfortests/testmodel/PrivateWithoutAnnotation", null, null, plain)).isNull();
+    assertThat(others.transform(loader, "com/ilamstone/publicfortests/testmodel/Class1", null, null, annotated)).isNull();
+    assertThat(all.transform(loader, "com/ilamstone/publicfortests/testmodel/Class1", Class1.class, null, annotated)).isNull();
+    assertThat(all.transform(loader, "com/ilamstone/publicfortests/testmodel/Class1", null, null, annotated)).isNotNull();
+    assertThat(new UnlockTransformer("com.ilamstone.").wanted("com/ilamstone/publicfortests/testmodel/Class1")).isTrue();
+    assertThat(Arrays.asList(others.prefixes)).containsExactly("com/example", "org/example");
+  }
+}
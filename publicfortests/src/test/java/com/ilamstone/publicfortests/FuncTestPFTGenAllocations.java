@@ -0,0 +1,81 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.Assume.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ilamstone.publicfortests.testmodel.ProbedClass1;
+import com.ilamstone.publicfortests.testmodel.ProbedClass1Testing;
+
+public class FuncTestPFTGenAllocations {
+  static final PFTOptions PROBES = PFTOptions.DEFAULT.withProbes(true);
+
+  /* Where allocated results go, so they can't be optimized away */
+  static volatile Object sink;
+
+  @Before
+  public void setup() {
+    assumeTrue(PFTProbes.isAllocationTracked());
+    PFTGen.invalidateAll();
+  }
+
+  @Test
+  public void testAllocationFreeMethodPasses() throws Exception {
+    ProbedClass1Testing obj = PFTGen.<ProbedClass1Testing>getTestingClass(ProbedClass1.class).newInstance();
+
+    PFTProbes.assertAllocatesAtMost(() -> obj.sumTo(10), 0);
+  }
+
+  @Test
+  public void testAllocatingMethodFails() throws Exception {
+    assertThatThrownBy(() -> PFTProbes.assertAllocatesAtMost(() -> sink = new byte[64], 0))
+      .isInstanceOf(AssertionError.class)
+      .hasMessageContaining("at most 0 bytes allocated per call");
+  }
+
+  @Test
+  public void testAllocationWithinBudgetPasses() throws Exception {
+    PFTProbes.assertAllocatesAtMost(() -> sink = new byte[64], 128);
+  }
+
+  @Test
+  public void testProbedMethodsWorkWithAssertions() throws Exception {
+    ProbedClass1Testing obj = PFTGen.<ProbedClass1Testing>getTestingClass(ProbedClass1.class, PROBES).newInstance();
+
+    PFTProbes.assertAllocatesAtMost(() -> obj.sumTo(10), 0);
+  }
+
+  @Test
+  public void testProbesRecordAllocations() throws Exception {
+    Class<ProbedClass1Testing> clz = PFTGen.getTestingClass(ProbedClass1.class, PROBES);
+    ProbedClass1Testing obj = clz.newInstance();
+
+    for (int i = 0; i < 10; i++) {
+      obj.sumTo(10);
+      obj.sumTo(10L, 2.0);
+    }
+    for (int i = 0; i < 10; i++) {
+      sink = clz.getMethod("describe", int.class).invoke(null, 123456);
+    }
+
+    PFTProbes probes = PFTGen.probes(clz);
+    assertThat(probes.get("sumTo(I)I").getAllocatedBytes()).isZero();
+    assertThat(probes.get("sumTo(I)I").getMeanAllocatedBytes()).isZero();
+    PFTProbes.Snapshot describe = probes.get("describe");
+    assertThat(describe.getCount()).isEqualTo(10);
+    assertThat(describe.getMaxAllocatedBytes()).isGreaterThan(0);
+    assertThat(describe.getAllocatedBytes()).isGreaterThanOrEqualTo(describe.getMaxAllocatedBytes());
+  }
+
+  @Test
+  public void testThrowingCallsRecordAllocations() throws Exception {
+    Class<ProbedClass1Testing> clz = PFTGen.getTestingClass(ProbedClass1.class, PROBES);
+
+    assertThatThrownBy(() -> clz.newInstance().fail("expected")).isInstanceOf(IllegalStateException.class);
+
+    // At least the exception.
+    assertThat(PFTGen.probes(clz).get("fail").getAllocatedBytes()).isGreaterThan(0);
+  }
+}
@@ -0,0 +1,121 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ilamstone.publicfortests.PFTGen.BulkResult;
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.Class2;
+import com.ilamstone.publicfortests.testmodel.Class2Testing1;
+import com.ilamstone.publicfortests.testmodel.LambdaClass1;
+import com.ilamstone.publicfortests.testmodel.PackagePrivateUser1;
+import com.ilamstone.publicfortests.testmodel.PrivateWithoutAnnotation;
+import com.ilamstone.publicfortests.testmodel.SelfCallClass1;
+
+public class FuncTestPFTGenBulk {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Before
+  public void setup() {
+    PFTGen.invalidateAll();
+  }
+
+  @Test
+  public void testBulkGenerationReturnsWorkingClassesInOrder() throws Exception {
+    BulkResult result = PFTGen.getTestingClasses(Arrays.<Class<?>>asList(Class2.class, Class1.class, SelfCallClass1.class));
+
+    assertThat(result.isSuccessful()).isTrue();
+    assertThat(result.getTestingClasses().keySet()).containsExactly(Class2.class, Class1.class, SelfCallClass1.class);
+
+    Class1Testing c1 = (Class1Testing)result.getTestingClasses().get(Class1.class).newInstance();
+    assertThat(c1.somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+    assertThat(result.getTestingClasses().get(Class2.class).newInstance()).isInstanceOf(Class2Testing1.class);
+  }
+
+  @Test
+  public void testBulkGenerationSharesCacheWithSingleCalls() throws Exception {
+    Class<?> single = PFTGen.getTestingClass(Class1.class);
+    long missesBefore = PFTGen.getCacheStats().getMisses();
+
+    BulkResult result = PFTGen.getTestingClasses(Arrays.<Class<?>>asList(Class1.class, Class2.class));
+
+    assertThat(result.getTestingClasses().get(Class1.class)).isSameAs(single);
+    assertThat(PFTGen.getCacheStats().getMisses() - missesBefore).isEqualTo(1);
+    assertThat(PFTGen.getTestingClass(Class2.class)).isSameAs(result.getTestingClasses().get(Class2.class));
+  }
+
+  @Test
+  public void testFailureDoesNotStopOtherClasses() throws Exception {
+    // Generated classes have no class file to read, so can't themselves be transformed.
+    Class<?> generated = PFTGen.getTestingClass(Class2.class);
+
+    BulkResult result = PFTGen.getTestingClasses(Arrays.<Class<?>>asList(Class1.class, generated, SelfCallClass1.class));
+
+    assertThat(result.isSuccessful()).isFalse();
+    assertThat(result.getTestingClasses().keySet()).containsExactly(Class1.class, SelfCallClass1.class);
+    assertThat(result.getFailures().keySet()).containsExactly(generated);
+    assertThat(result.getFailures().get(generated)).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  public void testEmptyCollection() {
+    BulkResult result = PFTGen.getTestingClasses(Collections.<Class<?>>emptyList());
+
+    assertThat(result.isSuccessful()).isTrue();
+    assertThat(result.getTestingClasses()).isEmpty();
+  }
+
+  @Test
+  public void testPackageScanFindsOnlyAnnotatedClasses() throws Exception {
+    BulkResult result = PFTGen.getTestingClasses(PFTGen.class.getClassLoader(), "com.ilamstone.publicfortests.testmodel", PFTOptions.DEFAULT);
+
+    assertThat(result.isSuccessful()).isTrue();
+    assertThat(result.getTestingClasses().keySet())
+        .contains(Class1.class, Class2.class, LambdaClass1.class, PackagePrivateUser1.class, SelfCallClass1.class)
+        .doesNotContain(PrivateWithoutAnnotation.class, Class1Testing.class);
+  }
+
+  @Test
+  public void testPackageScanSearchesJars() throws Exception {
+    String path = "com/ilamstone/publicfortests/testmodel/";
+    File jar = tmp.newFile("testmodel.jar");
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+      out.putNextEntry(new JarEntry(path));
+      out.closeEntry();
+      for (String name : new String[] { "Class1.class", "Class1Testing.class", "PrivateWithoutAnnotation.class" }) {
+        out.putNextEntry(new JarEntry(path + name));
+        out.write(PFTGen.readClassBytes(Class.forName("com.ilamstone.publicfortests.testmodel." + name.replace(".class", ""))));
+        out.closeEntry();
+      }
+    }
+
+    // Only the jar is searched, but classes are still loaded by the test loader.
+    try (URLClassLoader jarOnly = new URLClassLoader(new URL[] { jar.toURI().toURL() }, null)) {
+      ClassLoader loader = new ClassLoader(PFTGen.class.getClassLoader()) {
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException {
+          return jarOnly.findResources(name);
+        }
+      };
+
+      assertThat(PFTGen.findAnnotatedClasses(loader, "com.ilamstone.publicfortests.testmodel")).containsExactly(Class1.class);
+    }
+  }
+}
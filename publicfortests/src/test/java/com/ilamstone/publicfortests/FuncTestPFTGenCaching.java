@@ -0,0 +1,200 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.Assume.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.Class2;
+import com.ilamstone.publicfortests.testmodel.PrivateWithoutAnnotation;
+
+public class FuncTestPFTGenCaching {
+  @Before
+  public void setup() {
+    PFTGen.invalidateAll();
+  }
+
+  @Test
+  public void testRepeatCallsReturnSameClass() throws Exception {
+    Class<Class1Testing> first = PFTGen.getTestingClass(Class1.class);
+    Class<Class1Testing> second = PFTGen.getTestingClass(Class1.class);
+
+    assertThat(second).isSameAs(first);
+    assertThat(second.newInstance().somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+  }
+
+  @Test
+  public void testRepeatCallsCountAsHits() throws Exception {
+    long hitsBefore = PFTGen.getCacheStats().getHits();
+    long missesBefore = PFTGen.getCacheStats().getMisses();
+
+    PFTGen.getTestingClass(Class1.class);
+    PFTGen.getTestingClass(Class1.class);
+    PFTGen.getTestingClass(Class1.class);
+
+    assertThat(PFTGen.getCacheStats().getMisses() - missesBefore).isEqualTo(1);
+    assertThat(PFTGen.getCacheStats().getHits() - hitsBefore).isEqualTo(2);
+  }
+
+  @Test
+  public void testDifferentConfigurationsAreCachedSeparately() throws Exception {
+    Class<?> plain = PFTGen.getTestingClass(PrivateWithoutAnnotation.class);
+    Class<?> withMethod = PFTGen.getTestingClass(PrivateWithoutAnnotation.class,
+        Collections.singleton(PrivateWithoutAnnotation.class.getDeclaredMethod("somePrivateMethod")),
+        Collections.<Class<?>>singleton(Class1Testing.class));
+
+    assertThat(withMethod).isNotSameAs(plain);
+    assertThat(Class1Testing.class.isAssignableFrom(plain)).isFalse();
+    assertThat(Class1Testing.class.isAssignableFrom(withMethod)).isTrue();
+  }
+
+  @Test
+  public void testBytecodeIsSharedAcrossLoaders() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    URLClassLoader loader = new URLClassLoader(new URL[0], PFTGen.class.getClassLoader());
+
+    Class<Class1Testing> inDefault = PFTGen.getTestingClass(Class1.class);
+    long bytecodeHitsBefore = PFTGen.getCacheStats().getBytecodeHits();
+    Class<Class1Testing> inOther = PFTGen.getTestingClass(loader, Class1.class);
+
+    assertThat(inOther).isNotSameAs(inDefault);
+    assertThat(inOther.getClassLoader()).isSameAs(loader);
+    assertThat(PFTGen.getCacheStats().getBytecodeHits() - bytecodeHitsBefore).isEqualTo(1);
+    assertThat(inOther.newInstance().somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+    loader.close();
+  }
+
+  @Test
+  public void testInvalidateGeneratesNewClass() throws Exception {
+    Class<Class1Testing> first = PFTGen.getTestingClass(Class1.class);
+    Class<?> other = PFTGen.getTestingClass(Class2.class);
+
+    PFTGen.invalidate(Class1.class);
+
+    assertThat(PFTGen.getTestingClass(Class1.class)).isNotSameAs(first);
+    assertThat(PFTGen.getTestingClass(Class2.class)).isSameAs(other);
+  }
+
+  @Test
+  public void testInvalidateAllGeneratesNewClasses() throws Exception {
+    Class<Class1Testing> first = PFTGen.getTestingClass(Class1.class);
+
+    PFTGen.invalidateAll();
+
+    assertThat(PFTGen.getTestingClass(Class1.class)).isNotSameAs(first);
+    assertThat(PFTGen.getCacheStats().getSize()).isEqualTo(1);
+  }
+
+  static String baseName(Class<?> clz) {
+    return clz.getName().replaceAll("_[0-9]+$", "");
+  }
+
+  @Test
+  public void testNamesDependOnlyOnInputs() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    // Separate caches and loaders stand in for separate JVMs.
+    URLClassLoader loader1 = new URLClassLoader(new URL[0], PFTGen.class.getClassLoader());
+    URLClassLoader loader2 = new URLClassLoader(new URL[0], PFTGen.class.getClassLoader());
+
+    Class<?> first = PFTGen.newCache(16, null).get(loader1, Class1.class, null, null, DefineStrategy.CLASS_LOADER);
+    Class<?> second = PFTGen.newCache(16, null).get(loader2, Class1.class, null, null, DefineStrategy.CLASS_LOADER);
+    Class<?> withExtras = PFTGen.newCache(16, null).get(loader2, Class1.class, null, Collections.<Class<?>>singleton(Runnable.class), DefineStrategy.CLASS_LOADER);
+
+    // Earlier tests may have taken the first choice of name in the shared parent loader, so there may be a suffix.
+    assertThat(second.getName()).isEqualTo(first.getName());
+    assertThat(first.getName()).matches(Pattern.quote(Class1.class.getPackage().getName()) + "\\.GeneratedClass\\$[0-9a-f]{20}(_[0-9]+)?");
+    assertThat(baseName(withExtras)).isNotEqualTo(baseName(first));
+    loader1.close();
+    loader2.close();
+  }
+
+  @Test
+  public void testTakenNamesAreNotReused() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    URLClassLoader loader = new URLClassLoader(new URL[0], PFTGen.class.getClassLoader());
+    Class<Class1Testing> first = PFTGen.getTestingClass(loader, Class1.class);
+
+    PFTGen.invalidate(Class1.class);
+    long missesBefore = PFTGen.getCacheStats().getMisses();
+    Class<Class1Testing> second = PFTGen.getTestingClass(loader, Class1.class);
+
+    assertThat(second.getName()).isNotEqualTo(first.getName());
+    assertThat(baseName(second)).isEqualTo(baseName(first));
+    assertThat(second.newInstance().somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+    assertThat(PFTGen.getCacheStats().getMisses() - missesBefore).isEqualTo(1);
+    loader.close();
+  }
+
+  @Test
+  public void testTakenNamesAreNotLookedUp() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    AtomicInteger lookups = new AtomicInteger();
+    URLClassLoader loader = new URLClassLoader(new URL[0], PFTGen.class.getClassLoader()) {
+      @Override
+      protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (name.contains("GeneratedClass$")) {
+          lookups.incrementAndGet();
+        }
+        return super.loadClass(name, resolve);
+      }
+    };
+    Class<Class1Testing> first = PFTGen.getTestingClass(loader, Class1.class);
+
+    Class<Class1Testing> last = first;
+    for (int i = 0; i < 5; i++) {
+      PFTGen.invalidate(Class1.class);
+      last = PFTGen.getTestingClass(loader, Class1.class);
+    }
+
+    assertThat(last.getName()).isEqualTo(first.getName() + "_5");
+    assertThat(lookups.get()).isZero();
+    loader.close();
+  }
+
+  @Test
+  public void testTraceBypassesCache() throws Exception {
+    Class<Class1Testing> cached = PFTGen.getTestingClass(Class1.class);
+    ByteArrayOutputStream trace = new ByteArrayOutputStream();
+
+    assertThat(PFTGen.<Class1Testing>getTestingClass(Class1.class, new PrintStream(trace))).isNotSameAs(cached);
+    assertThat(trace.size()).isGreaterThan(0);
+  }
+
+  @Test
+  public void testBytecodeTierIsSizeBounded() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    GenerationCache small = PFTGen.newCache(1);
+    URLClassLoader loader = new URLClassLoader(new URL[0], PFTGen.class.getClassLoader());
+
+    small.get(loader, Class1.class, null, null, DefineStrategy.CLASS_LOADER);
+    small.get(loader, Class2.class, null, null, DefineStrategy.CLASS_LOADER);
+
+    assertThat(small.size()).isEqualTo(1);
+    assertThat(small.evictions.sum()).isEqualTo(1);
+
+    // Class1's bytecode has been evicted, so a new loader means generating it again
+    URLClassLoader another = new URLClassLoader(new URL[0], PFTGen.class.getClassLoader());
+    small.get(another, Class1.class, null, null, DefineStrategy.CLASS_LOADER);
+
+    assertThat(small.misses.sum()).isEqualTo(3);
+    assertThat(small.bytecodeHits.sum()).isEqualTo(0);
+
+    // ...but the class already defined in the first loader is still there
+    small.get(loader, Class1.class, null, null, DefineStrategy.CLASS_LOADER);
+    assertThat(small.hits.sum()).isEqualTo(1);
+
+    loader.close();
+    another.close();
+  }
+}
@@ -0,0 +1,142 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.Assume.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.Class2;
+
+public class FuncTestPFTGenClassBytesSource {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  /*
+   * Defines its own copy of Class1, but (like many container loaders) won't hand out any resources.
+   */
+  static class ResourceHidingLoader extends ClassLoader {
+    final byte[] class1Bytes;
+
+    ResourceHidingLoader(byte[] class1Bytes) {
+      super(FuncTestPFTGenClassBytesSource.class.getClassLoader());
+      this.class1Bytes = class1Bytes;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      synchronized (getClassLoadingLock(name)) {
+        if (name.equals(Class1.class.getName())) {
+          Class<?> result = findLoadedClass(name);
+          return result != null ? result : defineClass(name, class1Bytes, 0, class1Bytes.length);
+        }
+        return super.loadClass(name, resolve);
+      }
+    }
+
+    @Override
+    public URL getResource(String name) {
+      return null;
+    }
+
+    @Override
+    public InputStream getResourceAsStream(String name) {
+      return null;
+    }
+  }
+
+  @Before
+  public void setup() {
+    PFTGen.invalidateAll();
+  }
+
+  @Test
+  public void testFromBytesWorksWhenLoaderHidesClassFiles() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    byte[] bytes = PFTGen.readClassBytes(Class1.class);
+    Class<?> hidden = new ResourceHidingLoader(bytes).loadClass(Class1.class.getName());
+
+    assertThatThrownBy(() -> PFTGen.getTestingClass(hidden, PFTOptions.DEFAULT))
+        .hasRootCauseInstanceOf(IOException.class);
+
+    PFTOptions options = PFTOptions.DEFAULT.withClassBytesSource(
+        ClassBytesSource.fromBytes(Collections.singletonMap(Class1.class.getName(), bytes)));
+    Class<?> clz = PFTGen.getTestingClass(hidden, options);
+
+    assertThat(((Class1Testing)clz.newInstance()).somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+  }
+
+  @Test
+  public void testFromJar() throws Exception {
+    File jar = tmp.newFile("classes.jar");
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+      out.putNextEntry(new JarEntry("com/ilamstone/publicfortests/testmodel/Class1.class"));
+      out.write(PFTGen.readClassBytes(Class1.class));
+      out.closeEntry();
+    }
+
+    ClassBytesSource source = ClassBytesSource.fromJar(jar.toPath());
+
+    assertThat(source.getClassBytes(Class1.class)).isEqualTo(PFTGen.readClassBytes(Class1.class));
+    assertThat(source.getClassBytes(Class2.class)).isNull();
+  }
+
+  @Test
+  public void testCachedReadsOnce() throws Exception {
+    AtomicInteger reads = new AtomicInteger();
+    ClassBytesSource counting = clz -> {
+      reads.incrementAndGet();
+      return PFTGen.readClassBytes(clz);
+    };
+    ClassBytesSource cached = ClassBytesSource.cached(counting);
+
+    byte[] first = cached.getClassBytes(Class1.class);
+    assertThat(cached.getClassBytes(Class1.class)).isSameAs(first);
+    assertThat(reads.get()).isEqualTo(1);
+
+    cached.invalidate(Class1.class);
+    cached.getClassBytes(Class1.class);
+    assertThat(reads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testFirstOfFallsThrough() throws Exception {
+    byte[] bytes = new byte[] { 1, 2, 3 };
+    ClassBytesSource source = ClassBytesSource.firstOf(
+        ClassBytesSource.fromBytes(Collections.singletonMap(Class2.class.getName(), bytes)),
+        ClassBytesSource.fromLoader());
+
+    assertThat(source.getClassBytes(Class2.class)).isSameAs(bytes);
+    assertThat(source.getClassBytes(Class1.class)).isEqualTo(PFTGen.readClassBytes(Class1.class));
+  }
+
+  @Test
+  public void testBulkUsesSource() throws Exception {
+    AtomicInteger reads = new AtomicInteger();
+    ClassBytesSource counting = clz -> {
+      reads.incrementAndGet();
+      return PFTGen.readClassBytes(clz);
+    };
+
+    PFTGen.BulkResult result = PFTGen.getTestingClasses(PFTGen.class.getClassLoader(), 
+        java.util.Arrays.<Class<?>>asList(Class1.class, Class2.class), 
+        PFTOptions.DEFAULT.withClassBytesSource(counting));
+
+    assertThat(result.isSuccessful()).isTrue();
+    assertThat(reads.get()).isEqualTo(2);
+  }
+}
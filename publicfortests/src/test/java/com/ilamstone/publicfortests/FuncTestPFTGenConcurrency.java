@@ -0,0 +1,163 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.Assume.*;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.Class2;
+import com.ilamstone.publicfortests.testmodel.CounterClass1;
+import com.ilamstone.publicfortests.testmodel.LambdaClass1;
+import com.ilamstone.publicfortests.testmodel.LoopClass1;
+import com.ilamstone.publicfortests.testmodel.SelfCallClass1;
+
+public class FuncTestPFTGenConcurrency {
+  static final int THREADS = 16;
+
+  ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+  List<URLClassLoader> loaders = new ArrayList<URLClassLoader>();
+
+  @After
+  public void teardown() throws Exception {
+    pool.shutdownNow();
+    for (URLClassLoader loader : loaders) {
+      loader.close();
+    }
+  }
+
+  URLClassLoader newLoader() {
+    URLClassLoader loader = new URLClassLoader(new URL[0], PFTGen.class.getClassLoader());
+    loaders.add(loader);
+    return loader;
+  }
+
+  /*
+   * A cache using the real generator, which first calls `hook` (so tests can see and hold up generation).
+   */
+  static GenerationCache newCache(Runnable hook) {
+    return new GenerationCache(16,
+        (clz, original, name, extraMethods, extraInterfaces, options) -> {
+          hook.run();
+          return new GenerationCache.Generated(name, PFTGen.generateBytecode(clz, new ClassReader(original), name, extraMethods, extraInterfaces, options));
+        },
+        (loader, original, generated, strategy) -> PFTGen.define(strategy, loader, original, generated.name, generated.code),
+        (loader, clz, source) -> null);
+  }
+
+  <T> List<T> runAll(int tasks, java.util.concurrent.Callable<T> task) throws Exception {
+    List<Future<T>> futures = new ArrayList<Future<T>>();
+    for (int i = 0; i < tasks; i++) {
+      futures.add(pool.submit(task));
+    }
+    List<T> results = new ArrayList<T>();
+    for (Future<T> f : futures) {
+      results.add(f.get(60, TimeUnit.SECONDS));
+    }
+    return results;
+  }
+
+  @Test
+  public void testConcurrentRequestsShareOneGeneration() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    AtomicInteger generations = new AtomicInteger();
+    GenerationCache cache = newCache(() -> {
+      generations.incrementAndGet();
+      try {
+        // Give every other thread time to pile in.
+        Thread.sleep(200);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    ClassLoader loader = newLoader();
+    CyclicBarrier start = new CyclicBarrier(THREADS);
+
+    List<Class<?>> results = runAll(THREADS, () -> {
+      start.await();
+      return cache.get(loader, Class1.class, null, null, DefineStrategy.CLASS_LOADER);
+    });
+
+    assertThat(generations.get()).isEqualTo(1);
+    assertThat(cache.misses.sum()).isEqualTo(1);
+    assertThat(results).allMatch(clz -> clz == results.get(0));
+  }
+
+  @Test
+  public void testDifferentClassesGenerateInParallel() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    // Each generation waits until the other has started too, which only works if they run at the same time.
+    CyclicBarrier bothGenerating = new CyclicBarrier(2);
+    GenerationCache cache = newCache(() -> {
+      try {
+        bothGenerating.await(10, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        throw new AssertionError("Generations did not overlap", e);
+      }
+    });
+    ClassLoader loader = newLoader();
+    AtomicInteger next = new AtomicInteger();
+    List<Class<?>> originals = Arrays.<Class<?>>asList(Class1.class, Class2.class);
+
+    List<Class<?>> results = runAll(2, () -> cache.get(loader, originals.get(next.getAndIncrement()), null, null, DefineStrategy.CLASS_LOADER));
+
+    assertThat(results).doesNotContainNull().doesNotHaveDuplicates();
+    assertThat(cache.misses.sum()).isEqualTo(2);
+  }
+
+  @Test
+  public void testStress() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    GenerationCache cache = PFTGen.newCache(16, null);
+    List<Class<?>> originals = Arrays.<Class<?>>asList(Class1.class, Class2.class, SelfCallClass1.class,
+                                                       LambdaClass1.class, LoopClass1.class, CounterClass1.class);
+    // Package-private collaborators aren't reachable from the child loaders, so no PackagePrivateUser1 here.
+    List<ClassLoader> targets = Arrays.<ClassLoader>asList(newLoader(), newLoader(), newLoader(), newLoader());
+    // AUTO and CLASS_LOADER both end up using ClassLoader.defineClass here, so they race to define the same name.
+    List<DefineStrategy> strategies = Arrays.asList(DefineStrategy.AUTO, DefineStrategy.CLASS_LOADER);
+    Map<String, Class<?>> seen = new ConcurrentHashMap<String, Class<?>>();
+    CyclicBarrier start = new CyclicBarrier(THREADS);
+    AtomicInteger seeds = new AtomicInteger();
+
+    runAll(THREADS, () -> {
+      Random random = new Random(seeds.incrementAndGet());
+      start.await();
+      for (int i = 0; i < 300; i++) {
+        Class<?> original = originals.get(random.nextInt(originals.size()));
+        ClassLoader loader = targets.get(random.nextInt(targets.size()));
+        DefineStrategy strategy = strategies.get(random.nextInt(strategies.size()));
+
+        Class<?> clz = cache.get(loader, original, null, null, strategy);
+        Class<?> previous = seen.putIfAbsent(original.getName() + "/" + targets.indexOf(loader) + "/" + strategy, clz);
+        assertThat(clz).isSameAs(previous == null ? clz : previous);
+        assertThat(clz.getClassLoader()).isSameAs(loader);
+        if (Class1Testing.class.isAssignableFrom(clz)) {
+          assertThat(((Class1Testing)clz.newInstance()).somePublicMethod()).isNotNull();
+        }
+      }
+      return null;
+    });
+
+    assertThat(seen).hasSize(originals.size() * targets.size() * strategies.size());
+    // Each class's bytecode is generated once, plus once more for each loader its name turned out to be taken in.
+    assertThat(cache.misses.sum()).isBetween((long)originals.size(), (long)originals.size() * (1 + targets.size()));
+  }
+}
@@ -0,0 +1,83 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.Assume.*;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.Test;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.InvokeDynamicNoLambdaClass1;
+import com.ilamstone.publicfortests.testmodel.PackagePrivateUser1;
+
+public class FuncTestPFTGenDefineStrategies {
+  private static PFTOptions options(DefineStrategy strategy) {
+    return PFTOptions.DEFAULT.withDefineStrategy(strategy);
+  }
+
+  @Test
+  public void testAutoIsAlwaysAvailable() {
+    assertThat(DefineStrategy.AUTO.isAvailable()).isTrue();
+  }
+
+  @Test
+  public void testClassLoaderStrategy() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    Class<Class1Testing> clz = PFTGen.getTestingClass(Class1.class, options(DefineStrategy.CLASS_LOADER));
+
+    assertThat(clz.newInstance().somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+  }
+
+  @Test
+  public void testLookupStrategy() throws Exception {
+    assumeTrue(DefineStrategy.LOOKUP.isAvailable());
+    Class<Class1Testing> clz = PFTGen.getTestingClass(PackagePrivateUser1.class, options(DefineStrategy.LOOKUP));
+
+    assertThat(clz.getClassLoader()).isSameAs(PackagePrivateUser1.class.getClassLoader());
+    assertThat(clz.newInstance().somePrivateMethod()).isEqualTo(PackagePrivateUser1.PRIVATE_EXPECTATION);
+  }
+
+  @Test
+  public void testHiddenStrategy() throws Exception {
+    assumeTrue(DefineStrategy.HIDDEN.isAvailable());
+    Class<Class1Testing> clz = PFTGen.getTestingClass(InvokeDynamicNoLambdaClass1.class, options(DefineStrategy.HIDDEN));
+
+    assertThat(clz.getName()).contains("/");     // Hidden class names are suffixed with /<address>
+    assertThat(clz.newInstance().somePrivateMethod()).isEqualTo(InvokeDynamicNoLambdaClass1.PRIVATE_EXPECTATION);
+  }
+
+  @Test
+  public void testHiddenClassesCanBeUnloaded() throws Exception {
+    assumeTrue(DefineStrategy.HIDDEN.isAvailable());
+    WeakReference<Class<?>> ref = new WeakReference<Class<?>>(PFTGen.getTestingClass(Class1.class, options(DefineStrategy.HIDDEN)));
+
+    for (int i = 0; i < 20 && ref.get() != null; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+
+    assertThat(ref.get()).isNull();
+  }
+
+  @Test
+  public void testLookupStrategyUnavailableBeforeJdk9() throws Exception {
+    assumeFalse(DefineStrategy.LOOKUP.isAvailable());
+
+    assertThatThrownBy(() -> PFTGen.getTestingClass(Class1.class, options(DefineStrategy.LOOKUP)))
+        .isInstanceOf(UnsupportedOperationException.class);
+  }
+
+  @Test
+  public void testLookupStrategiesRejectForeignLoader() throws Exception {
+    assumeTrue(DefineStrategy.LOOKUP.isAvailable());
+    URLClassLoader loader = new URLClassLoader(new URL[0], PFTGen.class.getClassLoader());
+
+    assertThatThrownBy(() -> PFTGen.getTestingClass(loader, Class1.class, null, null, options(DefineStrategy.LOOKUP)))
+        .isInstanceOf(IllegalArgumentException.class);
+    loader.close();
+  }
+}
@@ -0,0 +1,203 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.Assume.*;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.Class2;
+
+public class FuncTestPFTGenDiskCache {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  Path dir;
+  List<URLClassLoader> loaders = new ArrayList<URLClassLoader>();
+
+  @Before
+  public void setup() throws Exception {
+    dir = tmp.newFolder("cache").toPath();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    for (URLClassLoader loader : loaders) {
+      loader.close();
+    }
+  }
+
+  URLClassLoader newLoader() {
+    URLClassLoader loader = new URLClassLoader(new URL[0], PFTGen.class.getClassLoader());
+    loaders.add(loader);
+    return loader;
+  }
+
+  static File[] entries(Path dir) {
+    return dir.toFile().listFiles((d, name) -> name.endsWith(DiskCache.SUFFIX));
+  }
+
+  @Test
+  public void testSecondCacheSkipsGeneration() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    // Two caches sharing a directory stand in for two forked JVMs.
+    GenerationCache first = PFTGen.newCache(16, new DiskCache(dir, DiskCache.DEFAULT_MAX_BYTES));
+    first.get(newLoader(), Class1.class, null, null, DefineStrategy.CLASS_LOADER);
+
+    assertThat(first.misses.sum()).isEqualTo(1);
+    assertThat(first.disk.misses.sum()).isEqualTo(1);
+    assertThat(first.disk.writes.sum()).isEqualTo(1);
+    assertThat(entries(dir)).hasSize(1);
+
+    GenerationCache second = PFTGen.newCache(16, new DiskCache(dir, DiskCache.DEFAULT_MAX_BYTES));
+    @SuppressWarnings("unchecked")
+    Class<Class1Testing> clz = (Class<Class1Testing>)second.get(newLoader(), Class1.class, null, null, DefineStrategy.CLASS_LOADER);
+
+    assertThat(second.misses.sum()).isEqualTo(0);
+    assertThat(second.disk.hits.sum()).isEqualTo(1);
+    assertThat(second.bytecodeHits.sum()).isEqualTo(1);
+    assertThat(clz.newInstance().somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+  }
+
+  @Test
+  public void testDifferentConfigurationsGetDifferentEntries() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    GenerationCache cache = PFTGen.newCache(16, new DiskCache(dir, DiskCache.DEFAULT_MAX_BYTES));
+    ClassLoader loader = newLoader();
+
+    cache.get(loader, Class1.class, null, null, DefineStrategy.CLASS_LOADER);
+    cache.get(loader, Class1.class, null, java.util.Collections.<Class<?>>singleton(Runnable.class), DefineStrategy.CLASS_LOADER);
+    cache.get(loader, Class2.class, null, null, DefineStrategy.CLASS_LOADER);
+
+    assertThat(entries(dir)).hasSize(3);
+  }
+
+  @Test
+  public void testCorruptEntryIsDeletedAndRegenerated() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    GenerationCache first = PFTGen.newCache(16, new DiskCache(dir, DiskCache.DEFAULT_MAX_BYTES));
+    first.get(newLoader(), Class1.class, null, null, DefineStrategy.CLASS_LOADER);
+
+    File entry = entries(dir)[0];
+    Files.write(entry.toPath(), new byte[] { 1, 2, 3 });
+
+    GenerationCache second = PFTGen.newCache(16, new DiskCache(dir, DiskCache.DEFAULT_MAX_BYTES));
+    Class<?> clz = second.get(newLoader(), Class1.class, null, null, DefineStrategy.CLASS_LOADER);
+
+    assertThat(second.disk.hits.sum()).isEqualTo(0);
+    assertThat(second.misses.sum()).isEqualTo(1);
+    assertThat(clz.newInstance()).isInstanceOf(Class1Testing.class);
+    assertThat(entry.length()).isGreaterThan(3);
+  }
+
+  @Test
+  public void testEncodeDecodeRoundTrip() throws Exception {
+    GenerationCache.Generated generated = new GenerationCache.Generated("a/b/Cé", new byte[] { 1, 2, 3 });
+    GenerationCache.Generated decoded = DiskCache.decode(java.nio.ByteBuffer.wrap(DiskCache.encode(generated)));
+
+    assertThat(decoded.name).isEqualTo(generated.name);
+    assertThat(decoded.code).containsExactly(new byte[] { 1, 2, 3 });
+    assertThat(DiskCache.decode(java.nio.ByteBuffer.wrap(new byte[] { 0x50, 0x46, 0x54 }))).isNull();
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+    GenerationCache.Config config = new GenerationCache.Config(null, null, PFTOptions.DEFAULT);
+    GenerationCache.Generated generated = new GenerationCache.Generated("a/B", new byte[1000]);
+    int entrySize = DiskCache.encode(generated).length;
+
+    DiskCache disk = new DiskCache(dir, entrySize * 3);
+    GenerationCache.BytecodeKey[] keys = new GenerationCache.BytecodeKey[3];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = new GenerationCache.BytecodeKey("digest" + i, config);
+      disk.put(keys[i], generated);
+      Files.setLastModifiedTime(disk.file(keys[i]), FileTime.fromMillis(1000000L * (i + 1)));
+    }
+
+    // Using the oldest makes it the newest...
+    assertThat(disk.get(keys[0])).isNotNull();
+
+    // ... so adding another, which pushes us over the limit, evicts the next oldest until under 90% of it.
+    GenerationCache.BytecodeKey newest = new GenerationCache.BytecodeKey("digest3", config);
+    disk.put(newest, generated);
+
+    assertThat(disk.evictions.sum()).isEqualTo(2);
+    assertThat(Files.exists(disk.file(keys[0]))).isTrue();
+    assertThat(Files.exists(disk.file(keys[1]))).isFalse();
+    assertThat(Files.exists(disk.file(keys[2]))).isFalse();
+    assertThat(Files.exists(disk.file(newest))).isTrue();
+    assertThat(disk.size()).isEqualTo(entrySize * 2);
+  }
+
+  @Test
+  public void testAbandonedTemporaryFilesAreDeleted() throws Exception {
+    GenerationCache.Generated generated = new GenerationCache.Generated("a/B", new byte[1000]);
+    int entrySize = DiskCache.encode(generated).length;
+
+    DiskCache disk = new DiskCache(dir, entrySize * 3);
+    GenerationCache.BytecodeKey key = new GenerationCache.BytecodeKey("digest", new GenerationCache.Config(null, null, PFTOptions.DEFAULT));
+    disk.put(key, generated);
+
+    // Left behind by a writer that died...
+    Path abandoned = dir.resolve("abandoned" + DiskCache.SUFFIX + "1" + DiskCache.TMP_SUFFIX);
+    Files.write(abandoned, new byte[entrySize * 5]);
+    Files.setLastModifiedTime(abandoned, FileTime.fromMillis(System.currentTimeMillis() - DiskCache.TMP_GRACE_MILLIS * 2));
+    // ...and one still being written.
+    Path inFlight = dir.resolve("inflight" + DiskCache.SUFFIX + "2" + DiskCache.TMP_SUFFIX);
+    Files.write(inFlight, new byte[entrySize]);
+
+    disk.cleanup();
+
+    assertThat(Files.exists(abandoned)).isFalse();
+    assertThat(Files.exists(inFlight)).isTrue();
+    assertThat(Files.exists(disk.file(key))).isTrue();
+    assertThat(disk.evictions.sum()).isEqualTo(0);
+    assertThat(disk.size()).isEqualTo(entrySize * 2);
+  }
+
+  @Test
+  public void testConcurrentWritersLeaveAValidEntry() throws Exception {
+    GenerationCache.BytecodeKey key = new GenerationCache.BytecodeKey("digest", new GenerationCache.Config(null, null, PFTOptions.DEFAULT));
+    GenerationCache.Generated generated = new GenerationCache.Generated("a/B", new byte[64 * 1024]);
+
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int i = 0; i < 8; i++) {
+        DiskCache disk = new DiskCache(dir, DiskCache.DEFAULT_MAX_BYTES);
+        futures.add(pool.submit(() -> {
+          for (int j = 0; j < 20; j++) {
+            disk.put(key, generated);
+            GenerationCache.Generated read = disk.get(key);
+            assertThat(read).isNotNull();
+            assertThat(read.code).hasSize(generated.code.length);
+          }
+        }));
+      }
+      for (Future<?> f : futures) {
+        f.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    assertThat(dir.toFile().list()).hasSize(1);
+  }
+}
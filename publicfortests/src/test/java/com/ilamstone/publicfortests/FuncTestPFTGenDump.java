@@ -0,0 +1,135 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.Class2;
+
+public class FuncTestPFTGenDump {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  BytecodeDumper dumper;
+
+  BytecodeDumper install(Pattern filter, int sampleEvery) throws IOException {
+    dumper = new BytecodeDumper(tmp.getRoot().toPath(), filter, sampleEvery, 16, true);
+    PFTGen.dumper = dumper;
+    return dumper;
+  }
+
+  @After
+  public void teardown() {
+    PFTGen.dumper = null;
+    if (dumper != null) {
+      dumper.close();
+    }
+  }
+
+  @Test
+  public void testGeneratedClassesAreDumped() throws Exception {
+    install(null, 1);
+    PFTGen.invalidate(Class1.class);
+    Class<Class1Testing> clz = PFTGen.getTestingClass(Class1.class);
+
+    assertThat(dumper.awaitIdle(10, TimeUnit.SECONDS)).isTrue();
+    String internalName = clz.getName().replace('.', '/');
+    Path classFile = tmp.getRoot().toPath().resolve(internalName + ".class");
+    Path textFile = tmp.getRoot().toPath().resolve(internalName + ".txt");
+
+    assertThat(new ClassReader(Files.readAllBytes(classFile)).getClassName()).isEqualTo(internalName);
+    assertThat(new String(Files.readAllBytes(textFile), StandardCharsets.UTF_8)).contains("public somePrivateMethod()");
+    assertThat(dumper.dumped.sum()).isEqualTo(1);
+  }
+
+  @Test
+  public void testCachedClassesAreNotDumpedAgain() throws Exception {
+    PFTGen.getTestingClass(Class1.class);
+    install(null, 1);
+    PFTGen.getTestingClass(Class1.class);
+
+    assertThat(dumper.awaitIdle(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(dumper.dumped.sum()).isEqualTo(0);
+  }
+
+  @Test
+  public void testFilterMatchesOriginalClassName() throws Exception {
+    install(Pattern.compile("Class2$"), 1);
+    PFTGen.invalidate(Class1.class);
+    PFTGen.invalidate(Class2.class);
+    PFTGen.getTestingClass(Class1.class);
+    Class<?> clz = PFTGen.getTestingClass(Class2.class);
+
+    assertThat(dumper.awaitIdle(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(dumper.dumped.sum()).isEqualTo(1);
+    assertThat(tmp.getRoot().toPath().resolve(clz.getName().replace('.', '/') + ".class")).exists();
+  }
+
+  @Test
+  public void testSampling() throws Exception {
+    install(null, 3);
+    for (int i = 0; i < 7; i++) {
+      dumper.offer(Class1.class, "sampled/Class" + i, PFTGen.readClassBytes(Class1.class));
+    }
+
+    assertThat(dumper.awaitIdle(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(dumper.dumped.sum()).isEqualTo(3);
+    assertThat(tmp.getRoot().toPath().resolve("sampled/Class3.class")).exists();
+    assertThat(tmp.getRoot().toPath().resolve("sampled/Class4.class")).doesNotExist();
+  }
+
+  @Test
+  public void testFullQueueDropsInsteadOfBlocking() throws Exception {
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    dumper = new BytecodeDumper(tmp.getRoot().toPath(), null, 1, 1, false) {
+      @Override
+      void write(String internalName, byte[] code) throws IOException {
+        writing.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        super.write(internalName, code);
+      }
+    };
+    byte[] code = PFTGen.readClassBytes(Class1.class);
+
+    // The first is taken by the (stuck) writer, the second fills the queue, and the rest don't fit.
+    dumper.offer(Class1.class, "queued/Class0", code);
+    assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+    for (int i = 1; i < 5; i++) {
+      dumper.offer(Class1.class, "queued/Class" + i, code);
+    }
+    release.countDown();
+
+    assertThat(dumper.awaitIdle(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(dumper.dumped.sum()).isEqualTo(2);
+    assertThat(dumper.dropped.sum()).isEqualTo(3);
+  }
+
+  @Test
+  public void testTraceGoesToTheGivenStream() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PFTGen.getTestingClass(Class1.class, new PrintStream(out, true, "UTF-8"));
+
+    assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).contains("public somePrivateMethod()");
+  }
+}
@@ -0,0 +1,104 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.Assume.*;
+
+import java.lang.ref.WeakReference;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.ConstructedClass1;
+
+public class FuncTestPFTGenFactory {
+  public interface ConstructedFactory {
+    Class1Testing create();
+    Class1Testing create(String name, int count);
+    Object secret(long secret);
+  }
+
+  public interface Class1Supplier extends Supplier<Class1Testing> { }
+
+  public interface MissingConstructorFactory {
+    Class1Testing create(String name);
+  }
+
+  public interface WrongReturnFactory {
+    String create();
+  }
+
+  interface PackagePrivateFactory {
+    Class1Testing create();
+  }
+
+  @Test
+  public void testFactoryCallsMatchingConstructors() throws Exception {
+    ConstructedFactory factory = PFTGen.factory(ConstructedClass1.class, ConstructedFactory.class);
+
+    assertThat(factory.create().somePrivateMethod()).isEqualTo("default:0");
+    assertThat(factory.create("named", 3).somePrivateMethod()).isEqualTo("named:3");
+    assertThat(((Class1Testing)factory.secret(7)).somePrivateMethod()).isEqualTo("secret:7");
+    assertThat(factory.create().getClass()).isSameAs(PFTGen.getTestingClass(ConstructedClass1.class));
+  }
+
+  @Test
+  public void testFactoryForHiddenTestingClass() throws Exception {
+    assumeTrue(DefineStrategy.HIDDEN.isAvailable());
+    ConstructedFactory factory = PFTGen.factory(ConstructedClass1.class, ConstructedFactory.class, PFTOptions.DEFAULT.withDefineStrategy(DefineStrategy.HIDDEN));
+
+    assertThat(factory.create("hidden", 1).somePrivateMethod()).isEqualTo("hidden:1");
+  }
+
+  @Test
+  public void testFactoryIsReused() throws Exception {
+    ConstructedFactory first = PFTGen.factory(ConstructedClass1.class, ConstructedFactory.class);
+    ConstructedFactory second = PFTGen.factory(ConstructedClass1.class, ConstructedFactory.class);
+
+    assertThat(second).isSameAs(first);
+    assertThat(first.create()).isNotSameAs(first.create());
+  }
+
+  @Test
+  public void testFunctionalInterfaces() throws Exception {
+    Supplier<Class1Testing> supplier = PFTGen.factory(Class1.class, Class1Supplier.class);
+
+    assertThat(supplier.get().somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+  }
+
+  @Test
+  public void testBadFactoriesAreRejected() throws Exception {
+    assertThatThrownBy(() -> PFTGen.factory(ConstructedClass1.class, MissingConstructorFactory.class))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("No constructor matching");
+    assertThatThrownBy(() -> PFTGen.factory(ConstructedClass1.class, WrongReturnFactory.class))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("Cannot return");
+    assertThatThrownBy(() -> PFTGen.factory(ConstructedClass1.class, PackagePrivateFactory.class))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("must be public");
+    assertThatThrownBy(() -> PFTGen.factory(ConstructedClass1.class, Object.class))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("not an interface");
+  }
+
+  @Test
+  public void testScopedFactoryGoesAwayWithTheScope() throws Exception {
+    PFTScope scope = PFTGen.scope();
+    Class1Supplier supplier = scope.factory(Class1.class, Class1Supplier.class);
+    Class1Testing obj = supplier.get();
+
+    assertThat(obj.getClass().getClassLoader()).isSameAs(scope.getClassLoader());
+    assertThat(supplier.getClass().getClassLoader()).isSameAs(scope.getClassLoader());
+    assertThat(obj.somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+
+    WeakReference<Class<?>> ref = new WeakReference<Class<?>>(obj.getClass());
+    supplier = null;
+    obj = null;
+    scope.close();
+    FuncTestPFTScope.collect();
+
+    assertThat(ref.get()).isNull();
+  }
+}
@@ -0,0 +1,97 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+
+import com.ilamstone.publicfortests.PFTAgent.UnlockTransformer;
+import com.ilamstone.publicfortests.testmodel.FieldClass1;
+import com.ilamstone.publicfortests.testmodel.FieldClass1Testing;
+
+public class FuncTestPFTGenFieldAccessors {
+  @Before
+  public void setup() {
+    PFTGen.invalidateAll();
+  }
+
+  void checkAccessors(FieldClass1Testing obj) {
+    assertThat(obj.getCount()).isZero();
+    assertThat(obj.increment()).isEqualTo(1);
+    obj.setCount(41);
+    assertThat(obj.increment()).isEqualTo(42);
+    assertThat(obj.getCount()).isEqualTo(42);
+
+    assertThat(obj.getRatio()).isEqualTo(0.5);
+    obj.setRatio(Math.PI);
+    assertThat(obj.getRatio()).isEqualTo(Math.PI);
+
+    assertThat(obj.getName()).isEqualTo("initial");
+    obj.setName("changed");
+    assertThat(obj.getName()).isEqualTo("changed");
+
+    assertThat(obj.getId()).isEqualTo(42L);
+
+    assertThat(obj.getEnabled()).isFalse();
+    obj.setEnabled(true);
+    assertThat(obj.getEnabled()).isTrue();
+  }
+
+  @Test
+  public void testAccessorsReadAndWriteFields() throws Exception {
+    checkAccessors(PFTGen.<FieldClass1Testing>getTestingClass(FieldClass1.class).newInstance());
+  }
+
+  @Test
+  public void testAccessorsWhenComputingFrames() throws Exception {
+    ClassReader reader = new ClassReader(PFTGen.readClassBytes(FieldClass1.class));
+    byte[] code = PFTGen.generateBytecode(PFTGen.generateNewClassNode(FieldClass1.class, reader, PFTGen.newClassInternalName(FieldClass1.class), null, null, PFTOptions.DEFAULT), FieldClass1.class.getClassLoader());
+    String name = new ClassReader(code).getClassName();
+    Class<?> clz = PFTGen.define(DefineStrategy.AUTO, FieldClass1.class.getClassLoader(), FieldClass1.class, name, code);
+
+    checkAccessors((FieldClass1Testing)clz.newInstance());
+  }
+
+  @Test
+  public void testFinalFieldsOnlyGetAGetter() throws Exception {
+    Class<?> clz = PFTGen.getTestingClass(FieldClass1.class);
+
+    assertThat(clz.getMethod("getId").getReturnType()).isEqualTo(long.class);
+    assertThatThrownBy(() -> clz.getMethod("setId", long.class)).isInstanceOf(NoSuchMethodException.class);
+    assertThatThrownBy(() -> clz.getMethod("getNotAnnotated")).isInstanceOf(NoSuchMethodException.class);
+  }
+
+  @Test
+  public void testAnnotatedFieldsAreFoundWithoutTheRegistry() throws Exception {
+    PFTGen.PftAnnotationScanner scanner = new PFTGen.PftAnnotationScanner();
+    new ClassReader(PFTGen.readClassBytes(FieldClass1.class)).accept(scanner, ClassReader.SKIP_CODE);
+
+    assertThat(scanner.annotated).containsOnlyKeys("countI", "ratioD", "nameLjava/lang/String;", "idJ", "enabledZ");
+    assertThat(PFTGen.findPftMethodsAndInterfaces(FieldClass1.class).fields).isEqualTo(scanner.annotated.keySet());
+  }
+
+  @Test
+  public void testSlimClassesKeepAnnotatedFields() throws Exception {
+    checkAccessors(PFTGen.<FieldClass1Testing>getTestingClass(FieldClass1.class, PFTOptions.DEFAULT.withSlim(true)).newInstance());
+  }
+
+  @Test
+  public void testAgentUnlockedClassesGetAccessors() throws Exception {
+    ClassLoader loader = new FuncTestPFTAgent.UnlockingLoader(new UnlockTransformer(null), FieldClass1.class);
+    Class<?> clz = loader.loadClass(FieldClass1.class.getName());
+
+    checkAccessors((FieldClass1Testing)clz.newInstance());
+  }
+
+  @Test
+  public void testViewsAccessFields() throws Exception {
+    FieldClass1 original = new FieldClass1();
+
+    checkAccessors(PFTGen.view(original, FieldClass1Testing.class));
+    assertThat(PFTGen.view(original, FieldClass1Testing.class).getName()).isEqualTo("changed");
+    assertThat(Arrays.asList(FieldClass1.class.getDeclaredMethods())).extracting("name").doesNotContain("getCount");
+  }
+}
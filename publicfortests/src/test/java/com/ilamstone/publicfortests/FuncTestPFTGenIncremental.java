@@ -0,0 +1,233 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+
+public class FuncTestPFTGenIncremental {
+  /*
+   * `other` is of its own type, so testing classes for this need their frames computed. VALUE and EXTRA are
+   * filled in for each version.
+   */
+  static final String SOURCE = "package incremental;\n"
+      + "public class Changing {\n"
+      + "  private Changing other;\n"
+      + "  private int value() { return VALUE; }\n"
+      + "  @com.ilamstone.publicfortests.PublicForTests(\"java.util.function.IntSupplier\")\n"
+      + "  private int getAsInt() { return value() + (other == null ? base() : 0); }\n"
+      + "  private int base() { return 20; }\n"
+      + "  EXTRA\n"
+      + "}\n";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  File out;
+  URLClassLoader loader;
+  GenerationCache cache = PFTGen.newCache(16, null);
+
+  @Before
+  public void setup() throws IOException {
+    out = tmp.newFolder("classes");
+    cache.watching = true;
+  }
+
+  @After
+  public void teardown() throws IOException {
+    if (loader != null) {
+      loader.close();
+    }
+  }
+
+  /*
+   * Compile a version of `Changing`, making sure its class file looks modified if it's already there.
+   */
+  byte[] compile(String value, String extra) throws IOException {
+    File classFile = new File(out, "incremental/Changing.class");
+    long before = classFile.lastModified();
+
+    String source = SOURCE.replace("VALUE", value).replace("EXTRA", extra);
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///incremental/Changing.java"), JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return source;
+      }
+    };
+    String classpath = new File(PublicForTests.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+    // Class files newer than Java 8 are beyond what our ASM can read.
+    List<String> options = new ArrayList<String>(Arrays.asList("-d", out.getPath(), "-classpath", classpath, "-proc:none"));
+    if (compiler.isSupportedOption("--release") >= 0) {
+      options.addAll(Arrays.asList("--release", "8"));
+    } else {
+      options.addAll(Arrays.asList("-source", "1.8", "-target", "1.8"));
+    }
+    StringWriter diagnostics = new StringWriter();
+    assertThat(compiler.getTask(diagnostics, null, null, options, null, Arrays.asList(file)).call()).as(diagnostics.toString()).isTrue();
+
+    if (before != 0) {
+      assertThat(classFile.setLastModified(before + 2000)).isTrue();
+    }
+    return Files.readAllBytes(classFile.toPath());
+  }
+
+  Class<?> load() throws Exception {
+    loader = new URLClassLoader(new URL[] { out.toURI().toURL() }, PFTGen.class.getClassLoader());
+    return loader.loadClass("incremental.Changing");
+  }
+
+  /*
+   * Whichever strategy this JDK can use without `--add-opens`.
+   */
+  Class<?> get(ClassLoader loader, Class<?> original) throws IOException {
+    return cache.get(loader, original, null, null, DefineStrategy.resolve(loader, original));
+  }
+
+  int call(Class<?> original) throws Exception {
+    Class<?> testingClass = get(loader, original);
+    return ((IntSupplier)testingClass.newInstance()).getAsInt();
+  }
+
+  @Test
+  public void testFingerprintFindsChangedMethods() throws Exception {
+    Fingerprint v1 = Fingerprint.of(new ClassReader(compile("1", "")));
+    Fingerprint v2 = Fingerprint.of(new ClassReader(compile("2", "")));
+    Fingerprint v3 = Fingerprint.of(new ClassReader(compile("extra()", "private int extra() { return 5; }")));
+
+    assertThat(v1.changedMethods(v1)).isEmpty();
+    assertThat(v2.changedMethods(v1)).containsExactly("value()I");
+    assertThat(v3.changedMethods(v2)).isNull();
+  }
+
+  @Test
+  public void testChangedClassFileIsRegenerated() throws Exception {
+    compile("1", "");
+    Class<?> original = load();
+    Class<?> first = get(loader, original);
+    assertThat(call(original)).isEqualTo(21);
+    assertThat(get(loader, original)).isSameAs(first);
+
+    compile("2", "");
+
+    // The loaded original is unchanged, but its testing class follows the class file.
+    assertThat(call(original)).isEqualTo(22);
+    assertThat(get(loader, original)).isNotSameAs(first);
+    assertThat(cache.changes.sum()).isEqualTo(1);
+    assertThat(cache.regenerations.sum()).isEqualTo(1);
+    assertThat(cache.misses.sum()).isEqualTo(2);
+  }
+
+  @Test
+  public void testChangedMembersAreRegeneratedFromScratch() throws Exception {
+    compile("1", "");
+    Class<?> original = load();
+    assertThat(call(original)).isEqualTo(21);
+
+    compile("extra()", "private int extra() { return 5; }");
+
+    assertThat(call(original)).isEqualTo(25);
+    assertThat(cache.changes.sum()).isEqualTo(1);
+    assertThat(cache.regenerations.sum()).isZero();
+  }
+
+  @Test
+  public void testUnchangedBytesAreNotAChange() throws Exception {
+    compile("1", "");
+    Class<?> original = load();
+    Class<?> first = get(loader, original);
+
+    // Rebuilt, but the same.
+    compile("1", "");
+
+    assertThat(get(loader, original)).isSameAs(first);
+    assertThat(cache.changes.sum()).isZero();
+  }
+
+  @Test
+  public void testStaleRegistryIsIgnored() throws Exception {
+    compile("1", "");
+    // As if `value` was annotated when last compiled with the annotation processor, and `getAsInt` wasn't.
+    File registry = new File(out, PFTRegistry.PREFIX + "incremental.Changing");
+    registry.getParentFile().mkdirs();
+    Files.write(registry.toPath(), "value ()I java.util.function.IntSupplier\n".getBytes(StandardCharsets.UTF_8));
+    Class<?> original = load();
+
+    assertThat(PFTRegistry.lookup(original)).containsOnlyKeys("value()I");
+    assertThat(call(original)).isEqualTo(21);
+  }
+
+  @Test
+  public void testNotWatching() throws Exception {
+    cache.watching = false;
+    compile("1", "");
+    Class<?> original = load();
+    assertThat(call(original)).isEqualTo(21);
+
+    compile("2", "");
+
+    assertThat(call(original)).isEqualTo(21);
+    assertThat(cache.changes.sum()).isZero();
+  }
+
+  @Test
+  public void testOnlyChangedClassIsInvalidated() throws Exception {
+    compile("1", "");
+    Class<?> original = load();
+    call(original);
+    Class<?> other = get(PFTGen.class.getClassLoader(), Class1.class);
+
+    compile("2", "");
+    call(original);
+
+    assertThat(get(PFTGen.class.getClassLoader(), Class1.class)).isSameAs(other);
+    assertThat(cache.misses.sum()).isEqualTo(3);
+  }
+
+  @Test
+  public void testRegeneratedMatchesGeneratedFromScratch() throws Exception {
+    byte[] v1 = compile("1", "");
+    byte[] v2 = compile("2", "");
+    Class<?> original = load();
+    String name = PFTGen.newClassInternalName(original, "x");
+
+    byte[] previous = PFTGen.generateBytecode(original, new ClassReader(v1), "incremental/Previous", null, null, PFTOptions.DEFAULT);
+    byte[] regenerated = PFTGen.regenerateBytecode(original, new ClassReader(v2), name, null, null, PFTOptions.DEFAULT, new ClassReader(v1), new ClassReader(previous));
+    byte[] generated = PFTGen.generateBytecode(original, new ClassReader(v2), name, null, null, PFTOptions.DEFAULT);
+
+    assertThat(regenerated).isNotNull();
+    // Changed methods come last, so only the methods themselves are the same.
+    Map<String, long[]> expected = Fingerprint.of(new ClassReader(generated)).methods;
+    Map<String, long[]> actual = Fingerprint.of(new ClassReader(regenerated)).methods;
+    assertThat(actual.keySet()).isEqualTo(expected.keySet());
+    for (String method : expected.keySet()) {
+      assertThat(actual.get(method)).as(method).isEqualTo(expected.get(method));
+    }
+    assertThat(PFTGen.regenerateBytecode(original, new ClassReader(v2), name, null, null, PFTOptions.DEFAULT.withSlim(true), new ClassReader(v1), new ClassReader(previous))).isNull();
+  }
+}
@@ -0,0 +1,154 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.Assume.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.ProbedClass1;
+import com.ilamstone.publicfortests.testmodel.ProbedClass1Testing;
+import com.ilamstone.publicfortests.testmodel.SelfTypedClass1;
+
+public class FuncTestPFTGenProbes {
+  static final PFTOptions PROBES = PFTOptions.DEFAULT.withProbes(true);
+
+  @Before
+  public void setup() {
+    PFTGen.invalidateAll();
+  }
+
+  @Test
+  public void testCallsAreCountedAndTimed() throws Exception {
+    Class<ProbedClass1Testing> clz = PFTGen.getTestingClass(ProbedClass1.class, PROBES);
+    ProbedClass1Testing obj = clz.newInstance();
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(obj.sumTo(10)).isEqualTo(20);
+    }
+    assertThat(obj.sumTo(10L, 2.0)).isEqualTo(90L);
+    assertThat(clz.getMethod("describe", int.class).invoke(null, 3)).isEqualTo("n=3");
+
+    PFTProbes probes = PFTGen.probes(clz);
+    assertThat(probes.getMethods()).containsExactly("describe(I)Ljava/lang/String;", "fail(Ljava/lang/String;)V", "sumTo(I)I", "sumTo(JD)J");
+
+    PFTProbes.Snapshot ints = probes.get("sumTo(I)I");
+    assertThat(ints.getInvocations()).isEqualTo(100);
+    assertThat(ints.getCount()).isEqualTo(100);
+    assertThat(ints.getTotalNanos()).isGreaterThan(0);
+    assertThat(ints.getPercentileNanos(50)).isLessThanOrEqualTo(ints.getPercentileNanos(99));
+    assertThat(ints.getPercentileNanos(99)).isLessThanOrEqualTo(ints.getMaxNanos());
+    assertThat(ints.getPercentileNanos(100)).isEqualTo(ints.getMaxNanos());
+    assertThat(ints.getMeanNanos()).isEqualTo((double)ints.getTotalNanos() / 100);
+
+    assertThat(probes.get("sumTo(JD)J").getInvocations()).isEqualTo(1);
+    assertThat(probes.get("describe").getCount()).isEqualTo(1);
+    assertThat(probes.get("fail").getInvocations()).isZero();
+    assertThat(probes.get("fail").getPercentileNanos(99)).isZero();
+  }
+
+  @Test
+  public void testThrowingCallsAreTimed() throws Exception {
+    Class<ProbedClass1Testing> clz = PFTGen.getTestingClass(ProbedClass1.class, PROBES);
+
+    assertThatThrownBy(() -> clz.newInstance().fail("expected")).isInstanceOf(IllegalStateException.class).hasMessage("expected");
+
+    PFTProbes.Snapshot fail = PFTGen.probes(clz).get("fail");
+    assertThat(fail.getInvocations()).isEqualTo(1);
+    assertThat(fail.getCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testOverloadsNeedDescriptors() throws Exception {
+    PFTProbes probes = PFTGen.probes(PFTGen.getTestingClass(ProbedClass1.class, PROBES));
+
+    assertThatThrownBy(() -> probes.get("sumTo")).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("overloaded");
+    assertThatThrownBy(() -> probes.get("missing")).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testReset() throws Exception {
+    Class<ProbedClass1Testing> clz = PFTGen.getTestingClass(ProbedClass1.class, PROBES);
+    clz.newInstance().sumTo(4);
+
+    PFTGen.probes(clz).reset();
+
+    PFTProbes.Snapshot ints = PFTGen.probes(clz).get("sumTo(I)I");
+    assertThat(ints.getInvocations()).isZero();
+    assertThat(ints.getCount()).isZero();
+    assertThat(ints.getMaxNanos()).isZero();
+  }
+
+  @Test
+  public void testConcurrentCallsAreAllCounted() throws Exception {
+    Class<ProbedClass1Testing> clz = PFTGen.getTestingClass(ProbedClass1.class, PROBES);
+    ProbedClass1Testing obj = clz.newInstance();
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(pool.submit(() -> {
+          for (int i = 0; i < 10000; i++) {
+            obj.sumTo(8);
+          }
+        }));
+      }
+      for (Future<?> f : futures) {
+        f.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    assertThat(PFTGen.probes(clz).get("sumTo(I)I").getCount()).isEqualTo(40000);
+  }
+
+  @Test
+  public void testProbesWhenFramesAreComputed() throws Exception {
+    Class<Class1Testing> clz = PFTGen.getTestingClass(SelfTypedClass1.class, PROBES);
+
+    assertThat(clz.newInstance().somePrivateMethod()).isEqualTo(SelfTypedClass1.PRIVATE_EXPECTATION);
+    assertThat(PFTGen.probes(clz).get("somePrivateMethod").getCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testProbesInHiddenClasses() throws Exception {
+    assumeTrue(DefineStrategy.HIDDEN.isAvailable());
+    Class<ProbedClass1Testing> clz = PFTGen.getTestingClass(ProbedClass1.class, PROBES.withDefineStrategy(DefineStrategy.HIDDEN));
+
+    assertThat(clz.newInstance().sumTo(6)).isEqualTo(6);
+    assertThat(PFTGen.probes(clz).get("sumTo(I)I").getCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testProbedAndPlainClassesAreCachedSeparately() throws Exception {
+    Class<?> probed = PFTGen.getTestingClass(Class1.class, PROBES);
+    Class<?> plain = PFTGen.getTestingClass(Class1.class);
+
+    assertThat(probed).isNotSameAs(plain);
+    assertThat(PFTGen.getTestingClass(Class1.class, PROBES)).isSameAs(probed);
+    assertThatThrownBy(() -> PFTGen.probes(plain)).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("withProbes");
+  }
+
+  @Test
+  public void testBucketsCoverEveryLatency() {
+    for (long nanos : new long[] { 0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE }) {
+      int bucket = PFTProbes.bucket(nanos);
+      assertThat(bucket).as("%d", nanos).isBetween(0, PFTProbes.BUCKETS - 1);
+      assertThat(PFTProbes.bucketMax(bucket)).as("%d", nanos).isGreaterThanOrEqualTo(nanos);
+      assertThat(PFTProbes.bucketMax(bucket) - nanos).as("%d", nanos).isLessThanOrEqualTo(nanos / PFTProbes.SUB_BUCKETS);
+    }
+    for (int bucket = 0; bucket < PFTProbes.BUCKETS; bucket++) {
+      assertThat(PFTProbes.bucket(PFTProbes.bucketMax(bucket))).isEqualTo(bucket);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ilamstone.publicfortests.PFTGen.BulkResult;
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.Class2;
+import com.ilamstone.publicfortests.testmodel.PrivateWithoutAnnotation;
+
+/*
+ * The test model is compiled with the annotation processor, so is registered.
+ */
+public class FuncTestPFTGenRegistry {
+  @Before
+  public void setup() {
+    PFTGen.invalidateAll();
+  }
+
+  @Test
+  public void testRegisteredClassNamesIncludeAnnotatedTestModel() {
+    assertThat(PFTGen.getRegisteredClassNames(PFTGen.class.getClassLoader()))
+        .contains(Class1.class.getName(), Class2.class.getName())
+        .doesNotContain(PrivateWithoutAnnotation.class.getName());
+  }
+
+  @Test
+  public void testRegistryLookup() {
+    Map<String, String> methods = PFTRegistry.lookup(Class2.class);
+
+    assertThat(methods).containsEntry("private1()Ljava/lang/String;", "com.ilamstone.publicfortests.testmodel.Class2Testing1")
+                       .containsEntry("private2()Ljava/lang/String;", "com.ilamstone.publicfortests.testmodel.Class2Testing2")
+                       .hasSize(2);
+    assertThat(PFTRegistry.lookup(PrivateWithoutAnnotation.class)).isNull();
+  }
+
+  @Test
+  public void testGetTestingClassesForAllRegisteredClasses() throws Exception {
+    BulkResult result = PFTGen.getTestingClasses(PFTGen.class.getClassLoader(), PFTOptions.DEFAULT);
+
+    assertThat(result.isSuccessful()).as(result.getFailures().toString()).isTrue();
+    assertThat(result.getTestingClasses()).containsKeys(Class1.class, Class2.class);
+    
+    Class1Testing c1 = (Class1Testing)result.getTestingClasses().get(Class1.class).newInstance();
+    assertThat(c1.somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+  }
+}
@@ -0,0 +1,86 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.SelfTypedClass1;
+import com.ilamstone.publicfortests.testmodel.SlimClass1;
+
+public class FuncTestPFTGenSlim {
+  static final PFTOptions SLIM = PFTOptions.DEFAULT.withSlim(true);
+
+  static List<String> methodNames(Class<?> clz) {
+    return Arrays.stream(clz.getDeclaredMethods()).map(Method::getName).collect(Collectors.toList());
+  }
+
+  static List<String> fieldNames(Class<?> clz) {
+    return Arrays.stream(clz.getDeclaredFields()).map(Field::getName).collect(Collectors.toList());
+  }
+
+  @Before
+  public void setup() {
+    PFTGen.invalidateAll();
+  }
+
+  @Test
+  public void testSlimClassWorks() throws Exception {
+    Class<Class1Testing> clz = PFTGen.getTestingClass(SlimClass1.class, SLIM);
+    Class1Testing obj = clz.newInstance();
+
+    assertThat(obj.somePrivateMethod()).isEqualTo(SlimClass1.PRIVATE_EXPECTATION);
+    assertThat(obj.somePublicMethod()).isEqualTo(SlimClass1.PUBLIC_EXPECTATION);
+    assertThat(obj.toString()).isEqualTo("SlimClass1[one, two, three]");
+  }
+
+  @Test
+  public void testOnlyReachableMembersAreKept() throws Exception {
+    Class<?> slim = PFTGen.getTestingClass(SlimClass1.class, SLIM);
+
+    assertThat(methodNames(slim)).contains("somePrivateMethod", "join", "somePublicMethod", "toString")
+                                 .doesNotContain("unusedHelper", "unusedLambda", "unusedPublic");
+    assertThat(methodNames(slim).stream().filter(n -> n.startsWith("lambda$"))).hasSize(1);
+    assertThat(fieldNames(slim)).contains("separator", "words").doesNotContain("unusedCount");
+    assertThat(slim.getDeclaredConstructors()).hasSize(1);
+  }
+
+  @Test
+  public void testSlimAndFullClassesAreCachedSeparately() throws Exception {
+    Class<?> slim = PFTGen.getTestingClass(SlimClass1.class, SLIM);
+    Class<?> full = PFTGen.getTestingClass(SlimClass1.class);
+
+    assertThat(full).isNotSameAs(slim);
+    assertThat(full.getName()).isNotEqualTo(slim.getName());
+    assertThat(methodNames(full)).contains("unusedHelper", "unusedLambda", "unusedPublic");
+    assertThat(PFTGen.<Class1Testing>getTestingClass(SlimClass1.class, SLIM)).isSameAs(slim);
+  }
+
+  @Test
+  public void testSlimBytecodeIsSmaller() throws Exception {
+    ClassReader reader = new ClassReader(PFTGen.readClassBytes(SlimClass1.class));
+    String name = PFTGen.newClassInternalName(SlimClass1.class);
+
+    byte[] full = PFTGen.generateBytecode(SlimClass1.class, reader, name, null, null, PFTOptions.DEFAULT);
+    byte[] slim = PFTGen.generateBytecode(SlimClass1.class, reader, name, null, null, PFTOptions.DEFAULT.withSlim(true));
+
+    assertThat(slim.length).isLessThan(full.length);
+  }
+
+  @Test
+  public void testSlimClassReferringToItsOwnType() throws Exception {
+    // Goes through the node-based path, which computes frames.
+    Class<Class1Testing> clz = PFTGen.getTestingClass(SelfTypedClass1.class, SLIM);
+
+    assertThat(clz.newInstance().somePrivateMethod()).isEqualTo(SelfTypedClass1.PRIVATE_EXPECTATION);
+    assertThat(fieldNames(clz)).contains("other");
+  }
+}
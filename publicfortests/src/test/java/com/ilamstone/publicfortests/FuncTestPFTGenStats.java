@@ -0,0 +1,141 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.Assume.*;
+
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ilamstone.publicfortests.PFTGenStats.Stage;
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.SelfTypedClass1;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/*
+ * Other tests share the counters, so these only look at how much they change.
+ */
+public class FuncTestPFTGenStats {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  static long delta(PFTGenStats before, PFTGenStats after, Stage stage) {
+    return after.getCount(stage) - before.getCount(stage);
+  }
+
+  @Test
+  public void testGeneratingRecordsEachStage() throws Exception {
+    assumeTrue(DefineStrategy.CLASS_LOADER.isAvailable());
+    PFTGen.invalidate(Class1.class);
+    try (URLClassLoader loader = new URLClassLoader(new URL[0], PFTGen.class.getClassLoader())) {
+      PFTGenStats before = PFTGen.getStats();
+      Class<Class1Testing> clz = PFTGen.getTestingClass(loader, Class1.class);
+      PFTGenStats after = PFTGen.getStats();
+
+      assertThat(clz.newInstance().somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+      assertThat(delta(before, after, Stage.READ)).isEqualTo(1);
+      assertThat(delta(before, after, Stage.SCAN)).isEqualTo(2);
+      assertThat(delta(before, after, Stage.TRANSFORM)).isEqualTo(1);
+      assertThat(delta(before, after, Stage.FRAMES)).isEqualTo(0);
+      assertThat(delta(before, after, Stage.WRITE)).isEqualTo(1);
+      assertThat(delta(before, after, Stage.DEFINE)).isEqualTo(1);
+      assertThat(after.getTotalNanos(Stage.TRANSFORM)).isGreaterThan(before.getTotalNanos(Stage.TRANSFORM));
+      assertThat(after.getClassesGenerated() - before.getClassesGenerated()).isEqualTo(1);
+      assertThat(after.getBytesGenerated() - before.getBytesGenerated()).isGreaterThan(0);
+      assertThat(after.getClassesDefined() - before.getClassesDefined()).isEqualTo(1);
+      assertThat(after.getClassesDefinedByLoader()).containsEntry(GenerationMetrics.describe(loader), 1L);
+      assertThat(after.getCacheStats().getMisses() - before.getCacheStats().getMisses()).isEqualTo(1);
+
+      // A cache hit doesn't generate or define anything.
+      PFTGen.getTestingClass(loader, Class1.class);
+      PFTGenStats hit = PFTGen.getStats();
+      assertThat(hit.getCount(Stage.READ)).isEqualTo(after.getCount(Stage.READ));
+      assertThat(hit.getCount(Stage.DEFINE)).isEqualTo(after.getCount(Stage.DEFINE));
+      assertThat(hit.getCacheStats().getHits() - after.getCacheStats().getHits()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testComputingFramesIsRecorded() throws Exception {
+    PFTGen.invalidate(SelfTypedClass1.class);
+    PFTGenStats before = PFTGen.getStats();
+    PFTGen.getTestingClass(SelfTypedClass1.class);
+    PFTGenStats after = PFTGen.getStats();
+
+    assertThat(delta(before, after, Stage.FRAMES)).isEqualTo(1);
+    assertThat(delta(before, after, Stage.WRITE)).isEqualTo(1);
+  }
+
+  @Test
+  public void testFailuresAreCounted() throws Exception {
+    PFTOptions options = PFTOptions.DEFAULT.withClassBytesSource(ClassBytesSource.fromBytes(Collections.<String, byte[]>emptyMap()));
+    PFTGen.invalidate(Class1.class);
+
+    PFTGenStats before = PFTGen.getStats();
+    assertThatThrownBy(() -> PFTGen.getTestingClass(Class1.class, options)).isInstanceOf(RuntimeException.class);
+    PFTGen.getTestingClasses(PFTGen.class.getClassLoader(), Collections.<Class<?>>singleton(Class1.class), options);
+
+    assertThat(PFTGen.getStats().getFailures() - before.getFailures()).isEqualTo(2);
+  }
+
+  @Test
+  public void testMBeanReadsCurrentStats() throws Exception {
+    PFTGen.registerStatsMBean();
+    PFTGen.registerStatsMBean();
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(PFTGenStatsMXBean.OBJECT_NAME);
+    PFTGen.getTestingClass(Class1.class);
+    PFTGenStats stats = PFTGen.getStats();
+
+    assertThat((Long)server.getAttribute(name, "BytesGenerated")).isEqualTo(stats.getBytesGenerated());
+    assertThat((Long)server.getAttribute(name, "CacheHits")).isGreaterThanOrEqualTo(stats.getCacheStats().getHits());
+    assertThat(server.getAttribute(name, "StageCounts")).isNotNull();
+
+    PFTGenStatsMXBean proxy = JMX.newMXBeanProxy(server, name, PFTGenStatsMXBean.class);
+    assertThat(proxy.getStageCounts()).containsKeys("READ", "SCAN", "TRANSFORM", "FRAMES", "WRITE", "DEFINE");
+    assertThat(proxy.getStageCounts().get("DEFINE")).isGreaterThanOrEqualTo(stats.getCount(Stage.DEFINE));
+  }
+
+  @Test
+  public void testStagesAreRecordedAsJfrEvents() throws Exception {
+    assumeTrue(GenerationMetrics.JFR_AVAILABLE && jdk.jfr.FlightRecorder.isAvailable());
+
+    Path file = tmp.newFile("pft.jfr").toPath();
+    PFTGen.invalidate(Class1.class);
+    try (Recording recording = new Recording()) {
+      recording.enable(PFTEvents.STAGE);
+      recording.enable(PFTEvents.FAILURE);
+      recording.start();
+      PFTGen.getTestingClass(Class1.class);
+      recording.stop();
+      recording.dump(file);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+    Map<String, List<RecordedEvent>> byStage = events.stream()
+        .filter(e -> e.getEventType().getName().equals(PFTEvents.STAGE))
+        .collect(Collectors.groupingBy(e -> e.getString("stage")));
+
+    assertThat(byStage).containsKeys("READ", "SCAN", "TRANSFORM", "WRITE", "DEFINE");
+    assertThat(byStage.get("READ").get(0).getString("className")).isEqualTo(Class1.class.getName());
+    assertThat(byStage.get("WRITE").get(0).getInt("bytes")).isGreaterThan(0);
+  }
+}
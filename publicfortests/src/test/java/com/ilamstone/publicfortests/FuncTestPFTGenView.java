@@ -0,0 +1,65 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.Test;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.Class2;
+import com.ilamstone.publicfortests.testmodel.CounterClass1;
+import com.ilamstone.publicfortests.testmodel.CounterClass1Testing;
+import com.ilamstone.publicfortests.testmodel.LambdaClass1;
+import com.ilamstone.publicfortests.testmodel.SelfCallClass1;
+
+public class FuncTestPFTGenView {
+  @Test
+  public void testViewCallsPrivateMethods() {
+    Class1Testing view = PFTGen.view(new Class1(), Class1Testing.class);
+
+    assertThat(view.somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+    assertThat(view.somePublicMethod()).isEqualTo(Class1.PUBLIC_EXPECTATION);
+  }
+
+  @Test
+  public void testViewSharesStateWithInstance() {
+    CounterClass1 counter = new CounterClass1();
+    CounterClass1Testing view = PFTGen.view(counter, CounterClass1Testing.class);
+
+    assertThat(view.increment(2)).isEqualTo(2);
+    assertThat(view.increment(3)).isEqualTo(5);
+    assertThat(counter.getCount()).isEqualTo(5);
+    assertThat(view.getCount()).isEqualTo(5);
+    assertThat(view.describe(7)).isEqualTo("count=7");
+  }
+
+  @Test
+  public void testViewClassIsReused() {
+    Class1Testing first = PFTGen.view(new Class1(), Class1Testing.class);
+    Class1Testing second = PFTGen.view(new Class1(), Class1Testing.class);
+    Class1Testing other = PFTGen.view(new SelfCallClass1(), Class1Testing.class);
+
+    assertThat(first).isNotSameAs(second);
+    assertThat(first.getClass()).isSameAs(second.getClass());
+    assertThat(other.getClass()).isNotSameAs(first.getClass());
+    assertThat(other.somePublicMethod()).isEqualTo(SelfCallClass1.PUBLIC_EXPECTATION);
+  }
+
+  @Test
+  public void testViewWorksWithLambdas() {
+    assertThat(PFTGen.view(new LambdaClass1(), Class1Testing.class).somePrivateMethod()).isEqualTo(LambdaClass1.PRIVATE_EXPECTATION);
+  }
+
+  @Test
+  public void testMissingMethodIsRejected() {
+    assertThatThrownBy(() -> PFTGen.view(new Class2(), Class1Testing.class))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("No method matching");
+  }
+
+  @Test
+  public void testBadArguments() {
+    assertThatThrownBy(() -> PFTGen.view(null, Class1Testing.class)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> PFTGen.view(new Class1(), Class1.class)).isInstanceOf(IllegalArgumentException.class);
+  }
+}
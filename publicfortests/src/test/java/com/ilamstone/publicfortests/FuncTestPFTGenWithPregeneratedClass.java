@@ -0,0 +1,76 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.PackagePrivateUser1;
+
+public class FuncTestPFTGenWithPregeneratedClass {
+  private static Class<?> pregenerated;
+  
+  @BeforeClass
+  public static void pregenerate() throws Exception {
+    // Stands in for the maven plugin having written the class out to test-classes
+    byte[] code = PFTGen.generatePregeneratedClass(PackagePrivateUser1.class);
+    ClassLoader loader = PackagePrivateUser1.class.getClassLoader();
+    pregenerated = DefineStrategy.resolve(loader, PackagePrivateUser1.class).define(loader, PackagePrivateUser1.class, 
+                                                                                    PFTGen.getPregeneratedClassName(PackagePrivateUser1.class), code);
+  }
+  
+  @Test
+  public void testPregeneratedClassName() {
+    assertThat(pregenerated.getName()).isEqualTo(PackagePrivateUser1.class.getName() + "$$PublicForTests");
+  }
+  
+  @Test
+  public void testGetTestingClassReturnsPregeneratedClass() throws Exception {
+    long misses = PFTGen.getCacheStats().getMisses();
+    Class<Class1Testing> clz = PFTGen.getTestingClass(PackagePrivateUser1.class);
+    
+    assertThat(clz).isSameAs(pregenerated);
+    assertThat(clz.newInstance().somePrivateMethod()).isEqualTo(PackagePrivateUser1.PRIVATE_EXPECTATION);
+    assertThat(PFTGen.getCacheStats().getMisses()).isEqualTo(misses);
+  }
+  
+  @Test
+  public void testStalePregeneratedClassIsNotUsed() throws Exception {
+    // As if PackagePrivateUser1 had been recompiled since the class was pre-generated
+    ClassBytesSource recompiled = clz -> {
+      ClassWriter writer = new ClassWriter(0);
+      new ClassReader(PFTGen.readClassBytes(clz)).accept(writer, ClassReader.SKIP_DEBUG);
+      return writer.toByteArray();
+    };
+    PFTGen.invalidate(PackagePrivateUser1.class);
+    long pregeneratedHits = PFTGen.getCacheStats().getPregeneratedHits();
+    
+    Class<Class1Testing> clz = PFTGen.getTestingClass(PackagePrivateUser1.class, PFTOptions.DEFAULT.withClassBytesSource(recompiled));
+    PFTGen.invalidate(PackagePrivateUser1.class);
+    
+    assertThat(clz).isNotSameAs(pregenerated);
+    assertThat(clz.newInstance().somePrivateMethod()).isEqualTo(PackagePrivateUser1.PRIVATE_EXPECTATION);
+    assertThat(PFTGen.getCacheStats().getPregeneratedHits()).isEqualTo(pregeneratedHits);
+  }
+  
+  @Test
+  public void testPregeneratedClassNotUsedInScope() throws Exception {
+    try (PFTScope scope = PFTGen.scope()) {
+      Class<Class1Testing> clz = scope.getTestingClass(PackagePrivateUser1.class);
+
+      assertThat(clz).isNotSameAs(pregenerated);
+      assertThat(clz.getClassLoader()).isSameAs(scope.getClassLoader());
+    }
+  }
+  
+  @Test
+  public void testPregeneratedClassNotUsedWithExtraInterfaces() throws Exception {
+    Class<?> clz = PFTGen.getTestingClass(PackagePrivateUser1.class, null, 
+                                          java.util.Collections.<Class<?>>singleton(Runnable.class));
+    
+    assertThat(clz).isNotSameAs(pregenerated);
+  }
+}
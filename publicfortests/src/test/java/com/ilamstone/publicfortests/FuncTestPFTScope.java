@@ -0,0 +1,117 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.PackagePrivateUser1;
+
+public class FuncTestPFTScope {
+  static final int CYCLES = 10000;
+
+  static long metaspaceUsed() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getName().equals("Metaspace")) {
+        return pool.getUsage().getUsed();
+      }
+    }
+    throw new AssertionError("No Metaspace memory pool");
+  }
+
+  static void collect() throws InterruptedException {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+  }
+
+  static String generateAndClose() throws Exception {
+    try (PFTScope scope = PFTGen.scope()) {
+      Class<Class1Testing> clz = scope.getTestingClass(PackagePrivateUser1.class);
+      return clz.newInstance().somePrivateMethod();
+    }
+  }
+
+  @Test
+  public void testTestingClassesAreDefinedInTheScope() throws Exception {
+    try (PFTScope scope = PFTGen.scope(); PFTScope other = PFTGen.scope()) {
+      Class<Class1Testing> clz = scope.getTestingClass(Class1.class);
+
+      assertThat(clz.getClassLoader()).isSameAs(scope.getClassLoader());
+      assertThat(clz.newInstance().somePrivateMethod()).isEqualTo(Class1.PRIVATE_EXPECTATION);
+      assertThat(scope.<Class1Testing>getTestingClass(Class1.class)).isSameAs(clz);
+      assertThat(other.<Class1Testing>getTestingClass(Class1.class)).isNotSameAs(clz);
+      assertThat(PFTGen.<Class1Testing>getTestingClass(Class1.class)).isNotSameAs(clz);
+    }
+  }
+
+  @Test
+  public void testPackagePrivateCollaboratorsCanBeUsed() throws Exception {
+    try (PFTScope scope = PFTGen.scope()) {
+      Class<Class1Testing> clz = scope.getTestingClass(PackagePrivateUser1.class);
+      Class1Testing obj = clz.newInstance();
+
+      assertThat(obj.somePrivateMethod()).isEqualTo(PackagePrivateUser1.PRIVATE_EXPECTATION);
+      assertThat(obj.somePublicMethod()).isEqualTo(PackagePrivateUser1.PUBLIC_EXPECTATION);
+    }
+  }
+
+  @Test
+  public void testClosedScopeCannotBeUsed() throws Exception {
+    PFTScope scope = PFTGen.scope();
+    scope.close();
+    scope.close();
+
+    assertThat(scope.isClosed()).isTrue();
+    assertThatThrownBy(() -> scope.getTestingClass(Class1.class)).isInstanceOf(IllegalStateException.class);
+    assertThatThrownBy(() -> scope.getClassLoader()).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void testLookupStrategiesAreRejected() throws Exception {
+    assertThatThrownBy(() -> PFTGen.scope(PFTGen.class.getClassLoader(), PFTOptions.DEFAULT.withDefineStrategy(DefineStrategy.HIDDEN)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testClosedScopeCanBeCollected() throws Exception {
+    PFTScope scope = PFTGen.scope();
+    WeakReference<Class<?>> ref = new WeakReference<Class<?>>(scope.getTestingClass(Class1.class));
+    scope.close();
+    collect();
+
+    assertThat(ref.get()).isNull();
+  }
+
+  @Test
+  public void testMetaspaceStaysFlat() throws Exception {
+    ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+
+    // Warm up, so that PFTGen, ASM and the cache have all the classes (and bytecode) they need.
+    for (int i = 0; i < 500; i++) {
+      generateAndClose();
+    }
+    collect();
+    long metaspaceBefore = metaspaceUsed();
+    long loadedBefore = classLoading.getLoadedClassCount();
+    long unloadedBefore = classLoading.getUnloadedClassCount();
+
+    for (int i = 0; i < CYCLES; i++) {
+      assertThat(generateAndClose()).isEqualTo(PackagePrivateUser1.PRIVATE_EXPECTATION);
+    }
+    collect();
+
+    // Each cycle defines two classes (the testing class and the scope's copy of PackagePrivateClass),
+    // so a leak would leave 20k more classes, and tens of MB more metaspace.
+    assertThat(classLoading.getUnloadedClassCount() - unloadedBefore).isGreaterThanOrEqualTo(2 * CYCLES - 100);
+    assertThat(classLoading.getLoadedClassCount() - loadedBefore).isLessThan(100);
+    assertThat(metaspaceUsed() - metaspaceBefore).isLessThan(2L * 1024 * 1024);
+  }
+}
@@ -0,0 +1,120 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.Class2;
+import com.ilamstone.publicfortests.testmodel.PrivateWithoutAnnotation;
+
+public class FuncTestPFTWarmup {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  ClassLoader loader = PFTGen.class.getClassLoader();
+
+  @After
+  public void teardown() {
+    PFTWarmup.recorder = null;
+  }
+
+  @Test
+  public void testWarmedUpClassesAreCached() throws Exception {
+    PFTGen.invalidate(Class1.class);
+    PFTGen.invalidate(Class2.class);
+
+    PFTWarmup warmup = PFTWarmup.start(loader, Arrays.asList(Class1.class.getName(), Class2.class.getName(), Class1.class.getName()), 2);
+    assertThat(warmup.awaitDone(30, TimeUnit.SECONDS)).isTrue();
+    assertThat(warmup.getClassNames()).containsExactly(Class1.class.getName(), Class2.class.getName());
+    assertThat(warmup.getWarmed()).isEqualTo(2);
+    assertThat(warmup.getFailed()).isZero();
+
+    long hits = PFTGen.getCacheStats().getHits();
+    long misses = PFTGen.getCacheStats().getMisses();
+    PFTGen.getTestingClass(Class1.class);
+    PFTGen.getTestingClass(Class2.class);
+
+    assertThat(PFTGen.getCacheStats().getHits()).isEqualTo(hits + 2);
+    assertThat(PFTGen.getCacheStats().getMisses()).isEqualTo(misses);
+  }
+
+  @Test
+  public void testMissingClassesFailWithoutStoppingTheRest() throws Exception {
+    PFTWarmup warmup = PFTWarmup.start(loader, Arrays.asList("com.example.NoSuchClass", Class1.class.getName()), 1);
+
+    assertThat(warmup.awaitDone(30, TimeUnit.SECONDS)).isTrue();
+    assertThat(warmup.isDone()).isTrue();
+    assertThat(warmup.getFailed()).isEqualTo(1);
+    assertThat(warmup.getWarmed()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRequestedClassesAreRecordedInOrder() throws Exception {
+    Path file = tmp.getRoot().toPath().resolve("sub/warmup.txt");
+    PFTWarmup.recorder = new PFTWarmup.Recorder(file);
+
+    PFTGen.getTestingClass(Class2.class);
+    PFTGen.getTestingClass(Class1.class);
+    PFTGen.getTestingClass(Class2.class);
+    // Can't be warmed up, so isn't recorded
+    PFTGen.getTestingClass(PrivateWithoutAnnotation.class,
+                           Collections.singleton(PrivateWithoutAnnotation.class.getDeclaredMethod("somePrivateMethod")),
+                           Collections.<Class<?>>singleton(Class1Testing.class));
+    PFTWarmup.recorder.write();
+
+    assertThat(Files.readAllLines(file, StandardCharsets.UTF_8)).containsExactly(Class2.class.getName(), Class1.class.getName());
+  }
+
+  @Test
+  public void testWarmedUpClassesAreNotRecorded() throws Exception {
+    Path file = tmp.getRoot().toPath().resolve("warmup.txt");
+    PFTWarmup.recorder = new PFTWarmup.Recorder(file);
+    PFTGen.invalidate(Class1.class);
+    PFTGen.invalidate(Class2.class);
+
+    PFTWarmup warmup = PFTWarmup.start(loader, Arrays.asList(Class1.class.getName(), Class2.class.getName()), 2);
+    assertThat(warmup.awaitDone(30, TimeUnit.SECONDS)).isTrue();
+    assertThat(warmup.getWarmed()).isEqualTo(2);
+    PFTGen.getTestingClass(Class2.class);
+    PFTWarmup.recorder.write();
+
+    assertThat(PFTWarmup.readClassNames(file)).containsExactly(Class2.class.getName());
+  }
+
+  @Test
+  public void testRecordingKeepsEarlierClasses() throws Exception {
+    Path file = tmp.getRoot().toPath().resolve("warmup.txt");
+    Files.write(file, Arrays.asList("com.example.Earlier", Class1.class.getName()), StandardCharsets.UTF_8);
+    PFTWarmup.Recorder recorder = new PFTWarmup.Recorder(file);
+    recorder.record(Class1.class);
+    recorder.write();
+
+    assertThat(PFTWarmup.readClassNames(file)).containsExactly(Class1.class.getName(), "com.example.Earlier");
+  }
+
+  @Test
+  public void testClassNamesFromRegistryAndFiles() throws Exception {
+    Path file = tmp.getRoot().toPath().resolve("warmup.txt");
+    Files.write(file, Arrays.asList("# recorded", "", "com.example.Recorded", Class1.class.getName()), StandardCharsets.UTF_8);
+    String missing = tmp.getRoot().toPath().resolve("missing.txt").toString();
+
+    assertThat(PFTWarmup.classNames(loader, file + ", " + missing))
+        .containsExactly("com.example.Recorded", Class1.class.getName());
+    assertThat(PFTWarmup.classNames(loader, PFTWarmup.REGISTRY + "," + file))
+        .containsSubsequence(PFTGen.getRegisteredClassNames(loader).iterator().next(), "com.example.Recorded")
+        .containsAll(PFTGen.getRegisteredClassNames(loader))
+        .doesNotHaveDuplicates();
+  }
+}
@@ -0,0 +1,71 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+
+import com.ilamstone.publicfortests.ClassBytesSources.InstrumentationSource;
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.PrivateWithoutAnnotation;
+
+public class UnitTestClassBytesSources {
+  /*
+   * An `Instrumentation` that only does what InstrumentationSource needs. When retransforming is
+   * supported, retransforming a class just feeds its class file back through the source.
+   */
+  static Instrumentation instrumentation(boolean retransform, InstrumentationSource[] source) {
+    return (Instrumentation)Proxy.newProxyInstance(UnitTestClassBytesSources.class.getClassLoader(), new Class<?>[] { Instrumentation.class }, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "isRetransformClassesSupported":
+        case "isModifiableClass":
+          return retransform;
+        case "retransformClasses":
+          for (Object c : (Object[])args[0]) {
+            Class<?> clz = (Class<?>)c;
+            source[0].transform(clz.getClassLoader(), org.objectweb.asm.Type.getInternalName(clz), clz, null, PFTGen.readClassBytes(clz));
+          }
+          return null;
+        default:
+          return null;
+      }
+    });
+  }
+
+  @Test
+  public void testCapturesAnnotatedClassesAtLoad() throws Exception {
+    InstrumentationSource[] holder = new InstrumentationSource[1];
+    InstrumentationSource source = holder[0] = new InstrumentationSource(instrumentation(false, holder));
+    byte[] annotated = PFTGen.readClassBytes(Class1.class);
+    byte[] plain = PFTGen.readClassBytes(PrivateWithoutAnnotation.class);
+
+    assertThat(source.transform(Class1.class.getClassLoader(), "com/ilamstone/publicfortests/testmodel/Class1", null, null, annotated)).isNull();
+    source.transform(PrivateWithoutAnnotation.class.getClassLoader(), "com/ilamstone/publicfortests/testmodel/PrivateWithoutAnnotation", null, null, plain);
+
+    assertThat(source.getClassBytes(Class1.class)).isEqualTo(annotated).isNotSameAs(annotated);
+    assertThat(source.getClassBytes(PrivateWithoutAnnotation.class)).isNull();
+
+    source.invalidate(Class1.class);
+    assertThat(source.getClassBytes(Class1.class)).isNull();
+  }
+
+  @Test
+  public void testRetransformsOnDemand() throws Exception {
+    InstrumentationSource[] holder = new InstrumentationSource[1];
+    InstrumentationSource source = holder[0] = new InstrumentationSource(instrumentation(true, holder));
+
+    assertThat(source.getClassBytes(PrivateWithoutAnnotation.class)).isEqualTo(PFTGen.readClassBytes(PrivateWithoutAnnotation.class));
+    assertThat(source.wanted).isEmpty();
+  }
+
+  @Test
+  public void testContains() {
+    byte[] haystack = new byte[] { 1, 2, 3, 4 };
+
+    assertThat(InstrumentationSource.contains(haystack, new byte[] { 3, 4 })).isTrue();
+    assertThat(InstrumentationSource.contains(haystack, new byte[] { 4, 5 })).isFalse();
+    assertThat(InstrumentationSource.contains(new byte[] { 1 }, new byte[] { 1, 2 })).isFalse();
+  }
+}
@@ -0,0 +1,152 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.ilamstone.publicfortests.PFTGen.OwnTypeScanner;
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.LoopClass1;
+import com.ilamstone.publicfortests.testmodel.LoopClass1Testing;
+import com.ilamstone.publicfortests.testmodel.SelfTypedClass1;
+
+public class UnitTestPFTGenStreaming {
+  static OwnTypeScanner scan(Class<?> clz) throws Exception {
+    return OwnTypeScanner.scan(new ClassReader(PFTGen.readClassBytes(clz)));
+  }
+  
+  static byte[] generate(Class<?> clz) throws Exception {
+    return PFTGen.generateBytecode(clz, new ClassReader(PFTGen.readClassBytes(clz)), PFTGen.newClassInternalName(clz), null, null, PFTOptions.DEFAULT);
+  }
+  
+  static MethodNode method(ClassNode node, String name) {
+    for (Object m : node.methods) {
+      if (((MethodNode)m).name.equals(name)) {
+        return (MethodNode)m;
+      }
+    }
+    throw new AssertionError("No method " + name + " in " + node.name);
+  }
+  
+  /*
+   * The raw bytes of the named method's Code attribute, straight from the class file.
+   */
+  static byte[] codeAttribute(byte[] classFile, String name) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+    in.skipBytes(8);
+    String[] utf8 = new String[in.readUnsignedShort()];
+    for (int i = 1; i < utf8.length; i++) {
+      switch (in.readUnsignedByte()) {
+        case 1:
+          utf8[i] = in.readUTF();
+          break;
+        case 5: case 6:
+          // Longs and doubles take two entries
+          in.skipBytes(8);
+          i++;
+          break;
+        case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+          in.skipBytes(4);
+          break;
+        case 15:
+          in.skipBytes(3);
+          break;
+        default:
+          in.skipBytes(2);
+      }
+    }
+    
+    in.skipBytes(6);
+    in.skipBytes(2 * in.readUnsignedShort());
+    for (int members = 0; members < 2; members++) {
+      // Fields, then methods
+      for (int count = in.readUnsignedShort(); count > 0; count--) {
+        in.skipBytes(2);
+        String memberName = utf8[in.readUnsignedShort()];
+        in.skipBytes(2);
+        for (int attributes = in.readUnsignedShort(); attributes > 0; attributes--) {
+          String attributeName = utf8[in.readUnsignedShort()];
+          byte[] attribute = new byte[in.readInt()];
+          in.readFully(attribute);
+          if (members == 1 && memberName.equals(name) && attributeName.equals("Code")) {
+            return attribute;
+          }
+        }
+      }
+    }
+    throw new AssertionError("No code for " + name);
+  }
+  
+  @Test
+  public void testScannerFindsMethodsThatReferToOwnClass() throws Exception {
+    OwnTypeScanner scanner = scan(LoopClass1.class);
+
+    assertThat(scanner.escapes).isFalse();
+    assertThat(scanner.rewriteMethods).containsOnly("<init>()V", "sumTo(I)I");
+  }
+  
+  @Test
+  public void testScannerFindsEscapingOwnType() throws Exception {
+    assertThat(scan(Class1.class).escapes).isFalse();
+    assertThat(scan(SelfTypedClass1.class).escapes).isTrue();
+  }
+  
+  @Test
+  public void testUnchangedMethodsAreCopiedAsIs() throws Exception {
+    byte[] original = PFTGen.readClassBytes(LoopClass1.class);
+    byte[] generated = generate(LoopClass1.class);
+
+    // The generated class shares the original's constant pool, so copied code is byte for byte the same...
+    assertThat(codeAttribute(generated, "unchanged")).isEqualTo(codeAttribute(original, "unchanged"));
+    // ...while code that's been through the transform isn't.
+    assertThat(codeAttribute(generated, "sumTo")).isNotEqualTo(codeAttribute(original, "sumTo"));
+  }
+  
+  @Test
+  public void testStreamingOutputMatchesClassNodeOutput() throws Exception {
+    String name = PFTGen.newClassInternalName(LoopClass1.class);
+    ClassNode viaNode = PFTGen.generateNewClassNode(LoopClass1.class, new ClassReader(PFTGen.readClassBytes(LoopClass1.class)), name, null, null, PFTOptions.DEFAULT);
+    ClassNode viaStream = new ClassNode();
+    new ClassReader(PFTGen.generateBytecode(LoopClass1.class, new ClassReader(PFTGen.readClassBytes(LoopClass1.class)), name, null, null, PFTOptions.DEFAULT))
+        .accept(viaStream, ClassReader.SKIP_DEBUG);
+
+    @SuppressWarnings("unchecked")
+    List<String> nodeInterfaces = (List<String>)viaNode.interfaces, streamInterfaces = (List<String>)viaStream.interfaces;
+    @SuppressWarnings("unchecked")
+    List<MethodNode> nodeMethods = (List<MethodNode>)viaNode.methods, streamMethods = (List<MethodNode>)viaStream.methods;
+
+    assertThat(viaStream.name).isEqualTo(viaNode.name);
+    assertThat(streamInterfaces).containsExactlyElementsOf(nodeInterfaces);
+    assertThat(streamMethods).hasSameSizeAs(nodeMethods);
+    for (MethodNode m : nodeMethods) {
+      assertThat(method(viaStream, m.name).access).as(m.name).isEqualTo(m.access);
+    }
+  }
+  
+  @Test
+  public void testStreamedClassWithFramesVerifiesAndRuns() throws Exception {
+    Class<LoopClass1Testing> clz = PFTGen.getTestingClass(LoopClass1.class);
+    LoopClass1Testing obj = clz.newInstance();
+
+    assertThat(obj.sumTo(6)).isEqualTo(0 + 2 + 4 - 0 - 1 - 2);
+    assertThat(obj.unchanged(5)).isEqualTo(120);
+  }
+  
+  @Test
+  public void testEscapingClassFallsBackToComputedFrames() throws Exception {
+    Class<Class1Testing> clz = PFTGen.getTestingClass(SelfTypedClass1.class);
+
+    assertThat(clz.newInstance().somePrivateMethod()).isEqualTo(SelfTypedClass1.PRIVATE_EXPECTATION);
+    assertThat(Arrays.asList(clz.getInterfaces())).contains(Class1Testing.class);
+  }
+}
@@ -0,0 +1,114 @@
+package com.ilamstone.publicfortests;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+
+import com.ilamstone.publicfortests.PFTGen.PftMethodsAndInterfaces;
+import com.ilamstone.publicfortests.testmodel.Class1;
+import com.ilamstone.publicfortests.testmodel.Class1Testing;
+import com.ilamstone.publicfortests.testmodel.Class2;
+import com.ilamstone.publicfortests.testmodel.Class2Testing1;
+import com.ilamstone.publicfortests.testmodel.Class2Testing2;
+import com.ilamstone.publicfortests.testmodel.MissingInterfaceClass1;
+import com.ilamstone.publicfortests.testmodel.PrivateWithoutAnnotation;
+
+public class UnitTestPFTGenTransformer {  
+  @Test
+  public void testTransformerFindPftAndInterfacesWithOneMethodAndInterface() throws Exception {
+    PftMethodsAndInterfaces pftmi = PFTGen.findPftMethodsAndInterfaces(Class1.class);
+
+    assertThat(pftmi.methods).hasSize(1)
+                             .contains("somePrivateMethod()Ljava/lang/String;");
+    
+    assertThat(pftmi.interfaces).hasSize(1)
+                                .contains("com/ilamstone/publicfortests/testmodel/Class1Testing");
+  }  
+
+  @Test
+  public void testTransformerFindPftAndInterfacesWithTwoMethodsAndInterfaces() throws Exception {
+    PftMethodsAndInterfaces pftmi = PFTGen.findPftMethodsAndInterfaces(Class2.class);
+
+    assertThat(pftmi.methods).hasSize(2)
+                             .contains("private1()Ljava/lang/String;", "private2()Ljava/lang/String;");
+    
+    assertThat(pftmi.interfaces).hasSize(2)
+                                .contains("com/ilamstone/publicfortests/testmodel/Class2Testing1", 
+                                          "com/ilamstone/publicfortests/testmodel/Class2Testing2");
+  }  
+
+  @Test
+  public void testTransformerAddsExtraMethodsAndInterfaces() throws Exception {
+    PftMethodsAndInterfaces pftmi = PFTGen.findPftMethodsAndInterfaces(PrivateWithoutAnnotation.class, 
+        new ClassReader(PFTGen.readClassBytes(PrivateWithoutAnnotation.class)),
+        Collections.singleton(PrivateWithoutAnnotation.class.getDeclaredMethod("somePrivateMethod")),
+        Collections.<Class<?>>singleton(Class1Testing.class));
+
+    assertThat(pftmi.methods).containsExactly("somePrivateMethod()Ljava/lang/String;");
+    assertThat(pftmi.interfaces).containsExactly("com/ilamstone/publicfortests/testmodel/Class1Testing");
+  }  
+
+  @Test
+  public void testTransformerSkipsMethodsWithMissingInterface() throws Exception {
+    PftMethodsAndInterfaces pftmi = PFTGen.findPftMethodsAndInterfaces(MissingInterfaceClass1.class);
+
+    assertThat(pftmi.methods).containsExactly("found()Ljava/lang/String;");
+    assertThat(pftmi.interfaces).containsExactly("com/ilamstone/publicfortests/testmodel/NeverLoadedTesting");
+    assertThat(PFTGen.interfacesFound.get(MissingInterfaceClass1.class))
+        .containsEntry("com.ilamstone.publicfortests.testmodel.DoesNotExist", false)
+        .containsEntry("com.ilamstone.publicfortests.testmodel.NeverLoadedTesting", true);
+  }  
+
+  @Test
+  public void testTransformerDoesNotLoadInterfaces() throws Exception {
+    TestModelLoader loader = new TestModelLoader();
+    Class<?> clz = loader.loadClass(MissingInterfaceClass1.class.getName());
+
+    assertThat(PFTGen.findPftMethodsAndInterfaces(clz).interfaces).isNotEmpty();
+    assertThat(loader.isLoaded("com.ilamstone.publicfortests.testmodel.NeverLoadedTesting")).isFalse();
+  }  
+
+  /*
+   * Defines the test model classes itself, rather than leaving it to its parent, so it can tell which
+   * of them have been loaded. Resources still come from the parent.
+   */
+  static class TestModelLoader extends ClassLoader {
+    static final String PACKAGE = Class1.class.getPackage().getName() + ".";
+    
+    TestModelLoader() {
+      super(UnitTestPFTGenTransformer.class.getClassLoader());
+    }
+    
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (!name.startsWith(PACKAGE)) {
+        return super.loadClass(name, resolve);
+      }
+      
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> result = findLoadedClass(name);
+        if (result == null) {
+          byte[] code;
+          try {
+            code = PFTGen.readClassBytes(getParent(), name.replace('.', '/') + ".class");
+          } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+          }
+          result = defineClass(name, code, 0, code.length);
+        }
+        if (resolve) {
+          resolveClass(result);
+        }
+        return result;
+      }
+    }
+    
+    boolean isLoaded(String name) {
+      return findLoadedClass(name) != null;
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.ilamstone.publicfortests.testmodel;
+
+import com.ilamstone.publicfortests.PublicForTests;
+
+public class ConstructedClass1 {
+  public static final String PUBLIC_EXPECTATION = "Hello from Public";
+
+  private final String name;
+  private final int count;
+  
+  public ConstructedClass1() {
+    this("default", 0);
+  }
+  
+  public ConstructedClass1(String name, int count) {
+    this.name = name;
+    this.count = count;
+  }
+  
+  private ConstructedClass1(long secret) {
+    this("secret", (int)secret);
+  }
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.Class1Testing")
+  private String somePrivateMethod() {
+    return name + ":" + count;
+  }
+  
+  public String somePublicMethod() {
+    return PUBLIC_EXPECTATION;
+  }
+}
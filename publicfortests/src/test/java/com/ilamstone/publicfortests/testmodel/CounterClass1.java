@@ -0,0 +1,22 @@
+package com.ilamstone.publicfortests.testmodel;
+
+import com.ilamstone.publicfortests.PublicForTests;
+
+public class CounterClass1 {
+  private int count;
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.CounterClass1Testing")
+  private int increment(int by) {
+    count += by;
+    return count;
+  }
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.CounterClass1Testing")
+  private static String describe(long n) {
+    return "count=" + n;
+  }
+  
+  public int getCount() {
+    return count;
+  }
+}
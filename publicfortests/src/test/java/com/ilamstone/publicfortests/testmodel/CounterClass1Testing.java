@@ -0,0 +1,7 @@
+package com.ilamstone.publicfortests.testmodel;
+
+public interface CounterClass1Testing {
+  int increment(int by);
+  String describe(long n);
+  int getCount();
+}
@@ -0,0 +1,27 @@
+package com.ilamstone.publicfortests.testmodel;
+
+import com.ilamstone.publicfortests.PublicForTests;
+
+public class FieldClass1 {
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.FieldClass1Testing")
+  private int count;
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.FieldClass1Testing")
+  private double ratio = 0.5;
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.FieldClass1Testing")
+  private String name = "initial";
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.FieldClass1Testing")
+  private final long id = System.nanoTime() == 0 ? 0 : 42;
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.FieldClass1Testing")
+  private static boolean enabled;
+
+  private int notAnnotated;
+
+  public int increment() {
+    notAnnotated++;
+    return ++count;
+  }
+}
@@ -0,0 +1,14 @@
+package com.ilamstone.publicfortests.testmodel;
+
+public interface FieldClass1Testing {
+  int getCount();
+  void setCount(int count);
+  double getRatio();
+  void setRatio(double ratio);
+  String getName();
+  void setName(String name);
+  long getId();
+  boolean getEnabled();
+  void setEnabled(boolean enabled);
+  int increment();
+}
@@ -0,0 +1,32 @@
+package com.ilamstone.publicfortests.testmodel;
+
+import com.ilamstone.publicfortests.PublicForTests;
+
+public class LoopClass1 {
+  private int step = 2;
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.LoopClass1Testing")
+  private int sumTo(int n) {
+    int total = 0;
+    for (int i = 0; i < n; i++) {
+      if (i % step == 0) {
+        total += i;
+      } else {
+        total -= half(i);
+      }
+    }
+    return total;
+  }
+
+  private int half(int i) {
+    return i / 2;
+  }
+  
+  public int unchanged(int n) {
+    int total = 1;
+    while (n > 0) {
+      total *= n--;
+    }
+    return total;
+  }
+}
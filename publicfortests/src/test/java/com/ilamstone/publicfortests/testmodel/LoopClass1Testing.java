@@ -0,0 +1,6 @@
+package com.ilamstone.publicfortests.testmodel;
+
+public interface LoopClass1Testing {
+  int sumTo(int n);
+  int unchanged(int n);
+}
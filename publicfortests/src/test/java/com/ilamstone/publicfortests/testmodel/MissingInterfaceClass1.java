@@ -0,0 +1,15 @@
+package com.ilamstone.publicfortests.testmodel;
+
+import com.ilamstone.publicfortests.PublicForTests;
+
+public class MissingInterfaceClass1 {
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.NeverLoadedTesting")
+  private String found() {
+    return "found";
+  }
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.DoesNotExist")
+  private String notFound() {
+    return "not found";
+  }
+}
@@ -0,0 +1,8 @@
+package com.ilamstone.publicfortests.testmodel;
+
+/*
+ * Only ever referred to by name, so tests can check it hasn't been loaded.
+ */
+public interface NeverLoadedTesting {
+  String found();
+}
@@ -0,0 +1,32 @@
+package com.ilamstone.publicfortests.testmodel;
+
+import com.ilamstone.publicfortests.PublicForTests;
+
+public class ProbedClass1 {
+  private int step = 2;
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.ProbedClass1Testing")
+  private int sumTo(int n) {
+    int total = 0;
+    for (int i = 0; i < n; i += step) {
+      total += i;
+    }
+    return total;
+  }
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.ProbedClass1Testing")
+  private long sumTo(long n, double scale) {
+    return (long)(n * (n - 1) / 2 * scale);
+  }
+
+  // Static, so can only be called reflectively; no interface can declare it.
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.ProbedClass1Testing")
+  private static String describe(int n) {
+    return "n=" + n;
+  }
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.ProbedClass1Testing")
+  private synchronized void fail(String message) {
+    throw new IllegalStateException(message);
+  }
+}
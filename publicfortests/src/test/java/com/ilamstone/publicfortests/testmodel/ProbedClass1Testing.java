@@ -0,0 +1,7 @@
+package com.ilamstone.publicfortests.testmodel;
+
+public interface ProbedClass1Testing {
+  int sumTo(int n);
+  long sumTo(long n, double scale);
+  void fail(String message);
+}
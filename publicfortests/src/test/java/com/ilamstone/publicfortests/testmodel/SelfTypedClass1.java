@@ -0,0 +1,19 @@
+package com.ilamstone.publicfortests.testmodel;
+
+import com.ilamstone.publicfortests.PublicForTests;
+
+public class SelfTypedClass1 {
+  public static final String PUBLIC_EXPECTATION = "Hello from Public";
+  public static final String PRIVATE_EXPECTATION = "Hello from Private";
+
+  private SelfTypedClass1 other;
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.Class1Testing")
+  private String somePrivateMethod() {
+    return other == null ? PRIVATE_EXPECTATION : other.toString();
+  }
+  
+  public String somePublicMethod() {
+    return PUBLIC_EXPECTATION;
+  }
+}
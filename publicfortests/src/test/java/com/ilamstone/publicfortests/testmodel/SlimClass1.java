@@ -0,0 +1,50 @@
+package com.ilamstone.publicfortests.testmodel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.ilamstone.publicfortests.PublicForTests;
+
+public class SlimClass1 {
+  public static final String PUBLIC_EXPECTATION = "Hello from Public";
+  public static final String PRIVATE_EXPECTATION = "ONE,TWO,THREE";
+
+  private static String separator = ",";
+  
+  private final List<String> words = Arrays.asList("one", "two", "three");
+  private int unusedCount;
+
+  @PublicForTests("com.ilamstone.publicfortests.testmodel.Class1Testing")
+  private String somePrivateMethod() {
+    return join(words.stream().map(w -> w.toUpperCase()));
+  }
+  
+  private String join(Stream<String> strings) {
+    return strings.collect(Collectors.joining(separator));
+  }
+  
+  public String somePublicMethod() {
+    return PUBLIC_EXPECTATION;
+  }
+  
+  @Override
+  public String toString() {
+    return "SlimClass1" + words;
+  }
+  
+  // Nothing below is reachable from the annotated method, the constructor, or an override.
+  
+  private int unusedHelper() {
+    return unusedCount++ + unusedLambda();
+  }
+  
+  private int unusedLambda() {
+    return words.stream().mapToInt(w -> w.length()).sum();
+  }
+  
+  public void unusedPublic() {
+    unusedCount = unusedHelper();
+  }
+}